@@ -0,0 +1,117 @@
+package com.diplomat.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * SQLite allows one writer at a time, so writes get exactly one pooled connection and
+ * reads get a separate pool of read-only connections. With WAL journaling, readers never
+ * wait on the writer. Read-only transactions (repository finders, @Transactional(readOnly = true))
+ * are routed to the reader pool; everything else goes to the writer.
+ *
+ * <p>Every connection also attaches the search index of archived sessions, a separate file
+ * in the archive directory, as {@code archive_search} (see {@code MessageSearchIndex}).
+ */
+@Configuration
+public class DataSourceConfig {
+
+    @Value("${spring.datasource.url:jdbc:sqlite:diplomat.db}")
+    private String url;
+
+    @Value("${diplomat.sqlite.read-pool-size:4}")
+    private int readPoolSize;
+
+    @Value("${diplomat.sqlite.synchronous:NORMAL}")
+    private String synchronous;
+
+    @Value("${diplomat.sqlite.cache-size-kb:16384}")
+    private int cacheSizeKb;
+
+    @Value("${diplomat.sqlite.mmap-size-mb:256}")
+    private long mmapSizeMb;
+
+    @Value("${diplomat.sqlite.busy-timeout-ms:5000}")
+    private int busyTimeoutMs;
+
+    @Value("${diplomat.archive.dir:archive}")
+    private String archiveDir;
+
+    /**
+     * The only connection that writes. Opened eagerly so the database file exists and is
+     * switched to WAL before any reader connects.
+     */
+    @Bean(destroyMethod = "close")
+    public HikariDataSource sqliteWriterDataSource() throws IOException {
+        // The writer creates the archive search file; read-only connections can only attach it
+        Files.createDirectories(Path.of(archiveDir));
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("sqlite-writer");
+        config.setDataSource(sqliteDataSource(false));
+        config.setConnectionInitSql(attachArchiveSearch());
+        config.setMaximumPoolSize(1);
+        config.setMinimumIdle(1);
+        return new HikariDataSource(config);
+    }
+
+    @Bean(destroyMethod = "close")
+    public HikariDataSource sqliteReaderDataSource(@Qualifier("sqliteWriterDataSource") HikariDataSource writer) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("sqlite-reader");
+        config.setDataSource(sqliteDataSource(true));
+        config.setConnectionInitSql(attachArchiveSearch());
+        config.setMaximumPoolSize(readPoolSize);
+        config.setMinimumIdle(1);
+        return new HikariDataSource(config);
+    }
+
+    /**
+     * The data source JPA and JDBC see. The physical connection is picked lazily, after the
+     * transaction has declared whether it is read-only.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("sqliteWriterDataSource") HikariDataSource writer,
+                                 @Qualifier("sqliteReaderDataSource") HikariDataSource reader) {
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(writer);
+        proxy.setReadOnlyDataSource(reader);
+        return proxy;
+    }
+
+    private String attachArchiveSearch() {
+        String file = Path.of(archiveDir, "search.db").toString().replace("'", "''");
+        return "ATTACH DATABASE '" + file + "' AS archive_search";
+    }
+
+    private SQLiteDataSource sqliteDataSource(boolean readOnly) {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setSynchronous(SQLiteConfig.SynchronousMode.valueOf(synchronous.toUpperCase()));
+        config.setCacheSize(-cacheSizeKb); // negative = KiB rather than pages
+        config.setBusyTimeout(busyTimeoutMs);
+        config.setTempStore(SQLiteConfig.TempStore.MEMORY);
+        config.setPragma(SQLiteConfig.Pragma.MMAP_SIZE, String.valueOf(mmapSizeMb * 1024 * 1024));
+        if (readOnly) {
+            config.setReadOnly(true);
+            // Tolerate the setReadOnly() calls Spring makes around transactions
+            config.setExplicitReadOnly(true);
+        } else {
+            config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        }
+
+        SQLiteDataSource dataSource = new SQLiteDataSource(config);
+        dataSource.setUrl(url);
+        return dataSource;
+    }
+}
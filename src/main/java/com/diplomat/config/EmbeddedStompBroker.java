@@ -0,0 +1,53 @@
+package com.diplomat.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.activemq.artemis.core.config.Configuration;
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-process Artemis broker speaking STOMP, for running the relay broker mode without
+ * outside services (profile {@code embedded-broker}). Non-persistent and without security:
+ * frames are live chat traffic that clients resync over REST after a reconnect.
+ * {@code /topic/} destinations are routed multicast, so every subscribed node receives
+ * each frame, as with the simple broker on a single node.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "diplomat.broker.embedded.enabled", havingValue = "true")
+public class EmbeddedStompBroker {
+
+    @Value("${diplomat.broker.embedded.host:localhost}")
+    private String host;
+
+    @Value("${diplomat.broker.relay.port:61613}")
+    private int port;
+
+    private EmbeddedActiveMQ broker;
+
+    /**
+     * Started before the relay's lifecycle begins, so its first connect attempt succeeds.
+     */
+    @PostConstruct
+    void start() throws Exception {
+        Configuration config = new ConfigurationImpl()
+                .setPersistenceEnabled(false)
+                .setSecurityEnabled(false)
+                .setJMXManagementEnabled(false)
+                .addAcceptorConfiguration("stomp",
+                        "tcp://%s:%d?protocols=STOMP;multicastPrefix=/topic/".formatted(host, port));
+        broker = new EmbeddedActiveMQ().setConfiguration(config);
+        broker.start();
+        log.info("Embedded STOMP broker listening on {}:{}", host, port);
+    }
+
+    @PreDestroy
+    void stop() throws Exception {
+        broker.stop();
+    }
+}
@@ -1,8 +1,11 @@
 package com.diplomat.config;
 
 import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
 import dev.langchain4j.model.ollama.OllamaChatModel;
+import dev.langchain4j.model.ollama.OllamaStreamingChatModel;
 import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -27,6 +30,9 @@ public class LlmConfig {
     @Value("${diplomat.llm.ollama.timeout-seconds:120}")
     private int ollamaTimeout;
 
+    @Value("${diplomat.llm.ollama.context-tokens:8192}")
+    private int ollamaContextTokens;
+
     @Value("${diplomat.llm.openai.api-key:}")
     private String openaiApiKey;
 
@@ -49,6 +55,29 @@ public class LlmConfig {
                     .modelName(ollamaModel)
                     .temperature(ollamaTemperature)
                     .timeout(Duration.ofSeconds(ollamaTimeout))
+                    .numCtx(ollamaContextTokens)
+                    .build();
+        };
+    }
+
+    /**
+     * Token-streaming variant of the same provider, used to push partial
+     * Diplomat responses to the browser while the model is still generating.
+     */
+    @Bean
+    public StreamingChatLanguageModel streamingChatLanguageModel() {
+        return switch (provider.toLowerCase()) {
+            case "openai" -> OpenAiStreamingChatModel.builder()
+                    .apiKey(openaiApiKey)
+                    .modelName(openaiModel)
+                    .temperature(openaiTemperature)
+                    .build();
+            default -> OllamaStreamingChatModel.builder()
+                    .baseUrl(ollamaBaseUrl)
+                    .modelName(ollamaModel)
+                    .temperature(ollamaTemperature)
+                    .timeout(Duration.ofSeconds(ollamaTimeout))
+                    .numCtx(ollamaContextTokens)
                     .build();
         };
     }
@@ -0,0 +1,240 @@
+package com.diplomat.config;
+
+import com.diplomat.model.CodedEnum;
+import com.diplomat.model.ConversationMode;
+import com.diplomat.model.ConversationStatus;
+import com.diplomat.model.MessageType;
+import com.diplomat.model.ParticipantRole;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Brings databases from earlier versions up to date. Runs once, before Hibernate updates
+ * the schema, and only does the steps a database still needs; fresh or current databases
+ * are left alone.
+ *
+ * <ul>
+ *   <li>Enums become integer codes: the {@code messages} table is rebuilt with sender and
+ *   recipient roles instead of names and a numeric message type, the search index is rebuilt
+ *   to match, and conversation status and mode become codes. Senders that are neither
+ *   participant, nor DIPLOMAT, map to SYSTEM; unknown message types map to OBSERVATION, as
+ *   {@link MessageType#parse} does for new messages.</li>
+ *   <li>Messages get their per-session {@code seq}, numbered in id order and continuing
+ *   after the messages already moved to the archive.</li>
+ *   <li>{@code seq} becomes unique per session. Sessions that two nodes numbered at once are
+ *   renumbered from their first seq, in seq then id order, and the old non-unique index goes;
+ *   {@link com.diplomat.service.MessageWriter} creates the unique one.</li>
+ * </ul>
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class SchemaMigration {
+
+    /**
+     * Makes the JPA entity manager factory (and with it the schema update) wait for the migration.
+     */
+    @Component
+    static class JpaDependsOnMigration extends EntityManagerFactoryDependsOnPostProcessor {
+        JpaDependsOnMigration() {
+            super("schemaMigration");
+        }
+    }
+
+    private final DataSource dataSource;
+
+    @PostConstruct
+    void migrate() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            boolean legacyMessages = hasColumn(connection, "messages", "sender");
+            boolean legacyIndex = hasColumn(connection, "messages_fts", "sender");
+            boolean legacyConversations = hasColumn(connection, "conversations", "status")
+                    && !isInteger(connection, "conversations", "status");
+            // The rebuilt messages table has no seq column either
+            boolean missingSeq = legacyMessages
+                    || (hasTable(connection, "messages") && !hasColumn(connection, "messages", "seq"));
+            boolean duplicateSeq = !missingSeq && hasColumn(connection, "messages", "seq") && hasDuplicateSeq(connection);
+            boolean nonUniqueSeqIndex = hasIndex(connection, "idx_messages_conversation_seq");
+            if (!legacyMessages && !legacyIndex && !legacyConversations && !missingSeq
+                    && !duplicateSeq && !nonUniqueSeqIndex) return;
+
+            long start = System.nanoTime();
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                if (legacyMessages) migrateMessages(statement);
+                if (legacyIndex) migrateSearchIndex(statement);
+                if (legacyConversations) migrateConversations(statement);
+                if (missingSeq) addMessageSeq(statement, hasTable(connection, "archived_sessions"));
+                if (duplicateSeq) renumberDuplicateSeq(statement);
+                if (nonUniqueSeqIndex) statement.execute("DROP INDEX idx_messages_conversation_seq");
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+            log.info("Migrated the database in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * One copy into a table with the new layout, rather than a rewrite per added and dropped
+     * column. Dropping the old table takes its indexes and search trigger with it; both are
+     * recreated at startup.
+     */
+    private void migrateMessages(Statement statement) throws SQLException {
+        statement.execute("""
+                CREATE TABLE messages_migrated (
+                    id integer,
+                    content varchar(4000) not null,
+                    fallacy_type varchar(255),
+                    message_type integer not null,
+                    recipient_role integer,
+                    sender_role integer not null,
+                    timestamp timestamp not null,
+                    conversation_id bigint not null,
+                    primary key (id)
+                )""");
+        statement.execute("""
+                INSERT INTO messages_migrated
+                    (id, content, fallacy_type, message_type, recipient_role, sender_role, timestamp, conversation_id)
+                SELECT m.id, m.content, m.fallacy_type, %s,
+                       CASE WHEN m.recipient IS NULL THEN NULL ELSE %s END,
+                       %s, m.timestamp, m.conversation_id
+                FROM messages m LEFT JOIN conversations c ON c.id = m.conversation_id"""
+                .formatted(messageTypeCode("m.message_type"), roleCode("m.recipient"), roleCode("m.sender")));
+        statement.execute("DROP TABLE messages");
+        statement.execute("ALTER TABLE messages_migrated RENAME TO messages");
+    }
+
+    private void migrateSearchIndex(Statement statement) throws SQLException {
+        statement.execute("""
+                CREATE VIRTUAL TABLE messages_fts_migrated USING fts5(
+                    content, sender_role UNINDEXED, conversation_id UNINDEXED, timestamp UNINDEXED,
+                    tokenize = 'porter unicode61 remove_diacritics 2')""");
+        statement.execute("""
+                INSERT INTO messages_fts_migrated (rowid, content, sender_role, conversation_id, timestamp)
+                SELECT f.rowid, f.content, %s, f.conversation_id, f.timestamp
+                FROM messages_fts f LEFT JOIN conversations c ON c.id = f.conversation_id"""
+                .formatted(roleCode("f.sender")));
+        statement.execute("DROP TABLE messages_fts");
+        statement.execute("ALTER TABLE messages_fts_migrated RENAME TO messages_fts");
+    }
+
+    private void migrateConversations(Statement statement) throws SQLException {
+        convertColumn(statement, "status", ConversationStatus.values(), ConversationStatus.ACTIVE);
+        convertColumn(statement, "mode", ConversationMode.values(), ConversationMode.FREE_TALK);
+    }
+
+    /**
+     * Number every conversation's messages in id order. Archived conversations continue
+     * after their archived messages, which the archive reader numbers 1..message_count.
+     */
+    private void addMessageSeq(Statement statement, boolean hasArchive) throws SQLException {
+        statement.execute("ALTER TABLE messages ADD COLUMN seq integer not null default 0");
+        String offset = hasArchive
+                ? "COALESCE((SELECT a.message_count FROM archived_sessions a WHERE a.conversation_id = messages.conversation_id), 0)"
+                : "0";
+        statement.execute("""
+                UPDATE messages SET seq = s.rn + %s
+                FROM (SELECT id, row_number() OVER (PARTITION BY conversation_id ORDER BY id) AS rn FROM messages) s
+                WHERE messages.id = s.id""".formatted(offset));
+    }
+
+    /**
+     * Renumber the sessions that hold a seq twice. Each keeps its first seq, so numbering still
+     * continues after what is archived.
+     */
+    private void renumberDuplicateSeq(Statement statement) throws SQLException {
+        statement.execute("""
+                UPDATE messages SET seq = s.renumbered
+                FROM (SELECT id, MIN(seq) OVER (PARTITION BY conversation_id)
+                                 + row_number() OVER (PARTITION BY conversation_id ORDER BY seq, id) - 1 AS renumbered
+                      FROM messages
+                      WHERE conversation_id IN (SELECT conversation_id FROM messages GROUP BY conversation_id, seq HAVING COUNT(*) > 1)) s
+                WHERE messages.id = s.id""");
+    }
+
+    private static <E extends Enum<E> & CodedEnum> void convertColumn(Statement statement, String column,
+                                                                       E[] values, E fallback) throws SQLException {
+        statement.execute("ALTER TABLE conversations RENAME COLUMN %s TO %s_name".formatted(column, column));
+        statement.execute("ALTER TABLE conversations ADD COLUMN %s integer not null default %d"
+                .formatted(column, fallback.getCode()));
+        statement.execute("UPDATE conversations SET %s = %s".formatted(column, enumCode(column + "_name", values, fallback)));
+        statement.execute("ALTER TABLE conversations DROP COLUMN %s_name".formatted(column));
+    }
+
+    private static String roleCode(String nameColumn) {
+        return """
+                CASE %1$s WHEN c.participanta THEN %2$d WHEN c.participantb THEN %3$d WHEN 'DIPLOMAT' THEN %4$d ELSE %5$d END"""
+                .formatted(nameColumn, ParticipantRole.PARTICIPANT_A.getCode(), ParticipantRole.PARTICIPANT_B.getCode(),
+                        ParticipantRole.DIPLOMAT.getCode(), ParticipantRole.SYSTEM.getCode());
+    }
+
+    /**
+     * Early versions stored Diplomat types with a DIPLOMAT_ prefix (DIPLOMAT_REFRAME).
+     */
+    private static String messageTypeCode(String nameColumn) {
+        return enumCode("REPLACE(UPPER(%s), 'DIPLOMAT_', '')".formatted(nameColumn), MessageType.values(), MessageType.OBSERVATION);
+    }
+
+    private static <E extends Enum<E> & CodedEnum> String enumCode(String nameExpression, E[] values, E fallback) {
+        StringBuilder sql = new StringBuilder("CASE ").append(nameExpression);
+        for (E value : values) {
+            sql.append(" WHEN '").append(value.name()).append("' THEN ").append(value.getCode());
+        }
+        return sql.append(" ELSE ").append(fallback.getCode()).append(" END").toString();
+    }
+
+    private static boolean hasColumn(Connection connection, String table, String column) throws SQLException {
+        return columnType(connection, table, column) != null;
+    }
+
+    private static boolean hasTable(Connection connection, String table) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet columns = statement.executeQuery("SELECT 1 FROM pragma_table_info('" + table + "')")) {
+            return columns.next();
+        }
+    }
+
+    private static boolean hasDuplicateSeq(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet duplicates = statement.executeQuery(
+                     "SELECT 1 FROM messages GROUP BY conversation_id, seq HAVING COUNT(*) > 1 LIMIT 1")) {
+            return duplicates.next();
+        }
+    }
+
+    private static boolean hasIndex(Connection connection, String index) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet indexes = statement.executeQuery(
+                     "SELECT 1 FROM sqlite_master WHERE type = 'index' AND name = '" + index + "'")) {
+            return indexes.next();
+        }
+    }
+
+    private static boolean isInteger(Connection connection, String table, String column) throws SQLException {
+        return "integer".equalsIgnoreCase(columnType(connection, table, column));
+    }
+
+    private static String columnType(Connection connection, String table, String column) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet columns = statement.executeQuery("SELECT name, type FROM pragma_table_info('" + table + "')")) {
+            while (columns.next()) {
+                if (column.equalsIgnoreCase(columns.getString(1))) return columns.getString(2);
+            }
+            return null;
+        }
+    }
+}
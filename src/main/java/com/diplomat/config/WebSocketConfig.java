@@ -1,21 +1,75 @@
 package com.diplomat.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 
+/**
+ * STOMP over SockJS. Server-to-client frames go to {@code /topic/*} through one of two brokers:
+ * <ul>
+ *   <li>{@code simple} (default): the in-memory broker; both partners must be connected to this node.</li>
+ *   <li>{@code relay}: frames are relayed through an external STOMP broker, so every node serving
+ *   the session receives them. The {@code embedded-broker} profile runs one in process (see
+ *   {@link EmbeddedStompBroker}) for trying this out locally.</li>
+ * </ul>
+ * Destinations are the same in both modes ({@code /topic/chat/{code}}, {@code /topic/private/{code}/{name}}).
+ */
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    @Value("${diplomat.broker.mode:simple}")
+    private String mode;
+
+    @Value("${diplomat.broker.relay.host:localhost}")
+    private String relayHost;
+
+    @Value("${diplomat.broker.relay.port:61613}")
+    private int relayPort;
+
+    @Value("${diplomat.broker.relay.client-login:}")
+    private String clientLogin;
+
+    @Value("${diplomat.broker.relay.client-passcode:}")
+    private String clientPasscode;
+
+    @Value("${diplomat.broker.relay.system-login:}")
+    private String systemLogin;
+
+    @Value("${diplomat.broker.relay.system-passcode:}")
+    private String systemPasscode;
+
+    @Value("${diplomat.broker.relay.virtual-host:}")
+    private String virtualHost;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         // Messages from server to clients go to /topic/*
-        config.enableSimpleBroker("/topic");
+        switch (mode.toLowerCase()) {
+            case "relay" -> {
+                if (clientLogin.isBlank() || clientPasscode.isBlank() || systemLogin.isBlank() || systemPasscode.isBlank()) {
+                    // No built-in fallback: a shared broker must not be reachable with well-known credentials
+                    throw new IllegalStateException("diplomat.broker.relay client-login, client-passcode, system-login "
+                            + "and system-passcode must be set in relay mode");
+                }
+                var relay = config.enableStompBrokerRelay("/topic")
+                        .setRelayHost(relayHost)
+                        .setRelayPort(relayPort)
+                        .setClientLogin(clientLogin)
+                        .setClientPasscode(clientPasscode)
+                        .setSystemLogin(systemLogin)
+                        .setSystemPasscode(systemPasscode);
+                if (!virtualHost.isBlank()) relay.setVirtualHost(virtualHost);
+            }
+            default -> config.enableSimpleBroker("/topic");
+        }
         // Messages from clients to server go to /app/*
         config.setApplicationDestinationPrefixes("/app");
+        // Deliver frames to each client in the order they were sent (SessionPipeline DISPATCH order)
+        config.setPreservePublishOrder(true);
     }
 
     @Override
@@ -24,5 +78,7 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
+        // Hand each client's frames to the handlers in the order they arrived
+        registry.setPreserveReceiveOrder(true);
     }
 }
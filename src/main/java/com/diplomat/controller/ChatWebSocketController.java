@@ -2,16 +2,37 @@ package com.diplomat.controller;
 
 import com.diplomat.dto.ChatMessage;
 import com.diplomat.dto.DiplomatResponse;
+import com.diplomat.model.Message;
+import com.diplomat.service.AnalysisCoordinator;
+import com.diplomat.service.ClusterForwarder;
 import com.diplomat.service.ConversationService;
 import com.diplomat.service.DiplomatService;
+import com.diplomat.service.DiplomatStreamListener;
+import com.diplomat.service.LlmScheduler;
+import com.diplomat.service.MessageDeduplicator;
+import com.diplomat.service.MessageTriage;
+import com.diplomat.service.SessionPipeline;
+import com.diplomat.service.SessionPipeline.Stage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
-import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * STOMP entry points. Handlers only validate and queue: storing, model calls and sending
+ * run in the session's {@link SessionPipeline} stages, so frames of a session go out in
+ * the order their messages were stored, and a slow session never holds an inbound thread.
+ * With clustering on, frames that store or analyze messages are handled by the node that
+ * owns the session; other nodes forward them through {@link ClusterForwarder} from the
+ * session's ROUTE stage.
+ */
 @Controller
 @RequiredArgsConstructor
 @Slf4j
@@ -19,32 +40,97 @@ public class ChatWebSocketController {
 
     private final ConversationService conversationService;
     private final DiplomatService diplomatService;
+    private final AnalysisCoordinator analysisCoordinator;
     private final SimpMessagingTemplate messagingTemplate;
+    private final SessionPipeline pipeline;
+    private final MessageDeduplicator messageDeduplicator;
+    private final ClusterForwarder clusterForwarder;
+
+    @Value("${diplomat.llm.streaming:true}")
+    private boolean streaming;
+
+    @Value("${diplomat.pipeline.stream-timeout-seconds:180}")
+    private long streamTimeoutSeconds;
 
     /**
      * Handle incoming chat messages. Messages sent to /app/chat/{sessionCode}
      * are broadcast to /topic/chat/{sessionCode} and then analyzed by The Diplomat.
      */
     @MessageMapping("/chat/{sessionCode}")
-    @SendTo("/topic/chat/{sessionCode}")
-    public ChatMessage handleMessage(@DestinationVariable String sessionCode, ChatMessage message) {
-        log.info("[{}] {} says: {}", sessionCode, message.getSender(), message.getContent());
+    public void handleMessage(@DestinationVariable String sessionCode, ChatMessage message) {
+        route("chat", sessionCode, message, () -> acceptMessage(sessionCode, message));
+    }
 
-        // Persist the message
-        conversationService.saveMessage(sessionCode, message.getSender(), message.getContent(), "CHAT");
+    private void acceptMessage(String sessionCode, ChatMessage message) {
+        log.info("[{}] {} says: {}", sessionCode, message.getSender(), message.getContent());
+        if (!fromParticipant(sessionCode, message) || isRepeat(sessionCode, message)) return;
+
+        boolean accepted = pipeline.submit(sessionCode, Stage.PERSIST, () -> {
+            if (alreadyStored(sessionCode, message)) return;
+            Message saved = conversationService.saveMessage(sessionCode, message.getSender(), message.getContent(),
+                    "CHAT", null, message.getClientMessageId());
+            message.setSeq(saved.getSeq());
+            broadcast(sessionCode, message);
+
+            // Analyze asynchronously and send Diplomat's response if needed,
+            // unless local triage says there is clearly nothing to say at this level
+            if (diplomatService.triage(sessionCode, message.getContent()) == MessageTriage.Decision.ESCALATE) {
+                analyzeInBackground(sessionCode, message.getSender(), message.getContent());
+            }
+        });
+        if (!accepted) messageDeduplicator.release(sessionCode, message.getClientMessageId());
+    }
 
-        // Analyze asynchronously and send Diplomat's response if needed
-        analyzeInBackground(sessionCode, message.getSender(), message.getContent());
+    /**
+     * Handle the frame here, or with clustering on, from the session's ROUTE stage: there it
+     * goes to the owning node, or is handled here once this node holds the session's lease.
+     * Frames of a session keep their order either way. A frame no node could take (the owner
+     * is unreachable, or the session is moving between nodes) is answered with a NACK, and the
+     * client sends it again.
+     */
+    private void route(String kind, String sessionCode, ChatMessage message, Runnable accept) {
+        if (!clusterForwarder.enabled()) {
+            accept.run();
+            return;
+        }
+        pipeline.submit(sessionCode, Stage.ROUTE, () -> {
+            switch (clusterForwarder.forward(kind, sessionCode, message)) {
+                case LOCAL -> accept.run();
+                case REJECTED -> {
+                    if (message.getClientMessageId() != null && message.getSender() != null) {
+                        dispatch(sessionCode, destinationFor(sessionCode, message.getSender()), nack(sessionCode, message));
+                    }
+                }
+                case FORWARDED -> {
+                }
+            }
+        });
+    }
 
-        return message;
+    /**
+     * Handle a frame another node forwarded here because this node owns its session.
+     * Returns false for an unknown kind.
+     */
+    boolean acceptForwarded(String kind, String sessionCode, ChatMessage message) {
+        switch (kind) {
+            case "chat" -> acceptMessage(sessionCode, message);
+            case "rewind" -> acceptRewind(sessionCode, message);
+            case "tempcheck" -> acceptTempCheck(sessionCode, message);
+            case "translate" -> acceptTranslate(sessionCode, message);
+            case "parking-lot" -> acceptParkingLot(sessionCode, message);
+            case "private" -> acceptPrivateMessage(sessionCode, message);
+            default -> {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
      * Handle join events.
      */
     @MessageMapping("/join/{sessionCode}")
-    @SendTo("/topic/chat/{sessionCode}")
-    public ChatMessage handleJoin(@DestinationVariable String sessionCode, ChatMessage message) {
+    public void handleJoin(@DestinationVariable String sessionCode, ChatMessage message) {
         log.info("[{}] {} joined the conversation", sessionCode, message.getSender());
 
         ChatMessage joinNotice = ChatMessage.builder()
@@ -54,15 +140,18 @@ public class ChatWebSocketController {
                 .type("JOIN")
                 .build();
 
-        return joinNotice;
+        pipeline.submit(sessionCode, Stage.DISPATCH, () -> send("/topic/chat/" + sessionCode, joinNotice));
     }
 
     /**
      * Handle rewind requests — lets someone rephrase their last message.
      */
     @MessageMapping("/rewind/{sessionCode}")
-    @SendTo("/topic/chat/{sessionCode}")
-    public ChatMessage handleRewind(@DestinationVariable String sessionCode, ChatMessage message) {
+    public void handleRewind(@DestinationVariable String sessionCode, ChatMessage message) {
+        route("rewind", sessionCode, message, () -> acceptRewind(sessionCode, message));
+    }
+
+    private void acceptRewind(String sessionCode, ChatMessage message) {
         log.info("[{}] {} requested a rewind", sessionCode, message.getSender());
 
         ChatMessage rewindNotice = ChatMessage.builder()
@@ -72,16 +161,22 @@ public class ChatWebSocketController {
                 .type("REWIND")
                 .build();
 
-        conversationService.saveMessage(sessionCode, "SYSTEM", rewindNotice.getContent(), "SYSTEM");
-        return rewindNotice;
+        pipeline.submit(sessionCode, Stage.PERSIST, () -> {
+            Message saved = conversationService.saveMessage(sessionCode, "SYSTEM", rewindNotice.getContent(), "SYSTEM");
+            rewindNotice.setSeq(saved.getSeq());
+            broadcast(sessionCode, rewindNotice);
+        });
     }
 
     /**
      * Handle temperature check requests.
      */
     @MessageMapping("/tempcheck/{sessionCode}")
-    @SendTo("/topic/chat/{sessionCode}")
-    public ChatMessage handleTempCheck(@DestinationVariable String sessionCode, ChatMessage message) {
+    public void handleTempCheck(@DestinationVariable String sessionCode, ChatMessage message) {
+        route("tempcheck", sessionCode, message, () -> acceptTempCheck(sessionCode, message));
+    }
+
+    private void acceptTempCheck(String sessionCode, ChatMessage message) {
         ChatMessage tempNotice = ChatMessage.builder()
                 .sessionCode(sessionCode)
                 .sender("DIPLOMAT")
@@ -89,8 +184,11 @@ public class ChatWebSocketController {
                 .type("TEMPERATURE_CHECK")
                 .build();
 
-        conversationService.saveDiplomatMessage(sessionCode, tempNotice.getContent(), "TEMPERATURE_CHECK", null);
-        return tempNotice;
+        pipeline.submit(sessionCode, Stage.PERSIST, () -> {
+            Message saved = conversationService.saveDiplomatMessage(sessionCode, tempNotice.getContent(), "TEMPERATURE_CHECK", null);
+            tempNotice.setSeq(saved.getSeq());
+            broadcast(sessionCode, tempNotice);
+        });
     }
 
     /**
@@ -98,17 +196,25 @@ public class ChatWebSocketController {
      */
     @MessageMapping("/translate/{sessionCode}")
     public void handleTranslate(@DestinationVariable String sessionCode, ChatMessage message) {
+        route("translate", sessionCode, message, () -> acceptTranslate(sessionCode, message));
+    }
+
+    private void acceptTranslate(String sessionCode, ChatMessage message) {
         log.info("[{}] {} requested translation of: {}", sessionCode, message.getSender(), message.getContent());
+        if (isRepeat(sessionCode, message)) return;
 
-        Thread.startVirtualThread(() -> {
+        boolean accepted = pipeline.submit(sessionCode, Stage.INTERACTIVE, () -> {
             try {
                 // message.content = the text to translate, message.sender = who originally said it
+                if (streaming) {
+                    StompStreamListener listener = new StompStreamListener(sessionCode);
+                    listener.await(diplomatService.streamTranslation(
+                            sessionCode, message.getSender(), message.getContent(), listener));
+                    return;
+                }
                 DiplomatResponse response = diplomatService.translateMessage(
                         sessionCode, message.getSender(), message.getContent());
 
-                conversationService.saveDiplomatMessage(
-                        sessionCode, response.getContent(), "TRANSLATION", null);
-
                 ChatMessage diplomatMsg = ChatMessage.builder()
                         .sessionCode(sessionCode)
                         .sender("DIPLOMAT")
@@ -116,19 +222,28 @@ public class ChatWebSocketController {
                         .type("TRANSLATION")
                         .build();
 
-                messagingTemplate.convertAndSend("/topic/chat/" + sessionCode, diplomatMsg);
+                pipeline.handOff(sessionCode, Stage.PERSIST, () -> {
+                    Message saved = conversationService.saveDiplomatMessage(
+                            sessionCode, response.getContent(), "TRANSLATION", null);
+                    diplomatMsg.setSeq(saved.getSeq());
+                    broadcast(sessionCode, diplomatMsg);
+                });
             } catch (Exception e) {
                 log.error("Translation failed for session {}: {}", sessionCode, e.getMessage());
             }
         });
+        if (!accepted) messageDeduplicator.release(sessionCode, message.getClientMessageId());
     }
 
     /**
      * Handle parking lot — park a topic for later discussion.
      */
     @MessageMapping("/parking-lot/{sessionCode}")
-    @SendTo("/topic/chat/{sessionCode}")
-    public ChatMessage handleParkingLot(@DestinationVariable String sessionCode, ChatMessage message) {
+    public void handleParkingLot(@DestinationVariable String sessionCode, ChatMessage message) {
+        route("parking-lot", sessionCode, message, () -> acceptParkingLot(sessionCode, message));
+    }
+
+    private void acceptParkingLot(String sessionCode, ChatMessage message) {
         log.info("[{}] {} parked topic: {}", sessionCode, message.getSender(), message.getContent());
 
         ChatMessage notice = ChatMessage.builder()
@@ -138,8 +253,11 @@ public class ChatWebSocketController {
                 .type("PARKING_LOT")
                 .build();
 
-        conversationService.saveDiplomatMessage(sessionCode, notice.getContent(), "PARKING_LOT", null);
-        return notice;
+        pipeline.submit(sessionCode, Stage.PERSIST, () -> {
+            Message saved = conversationService.saveDiplomatMessage(sessionCode, notice.getContent(), "PARKING_LOT", null);
+            notice.setSeq(saved.getSeq());
+            broadcast(sessionCode, notice);
+        });
     }
 
     /**
@@ -148,11 +266,12 @@ public class ChatWebSocketController {
      */
     @MessageMapping("/private/{sessionCode}")
     public void handlePrivateMessage(@DestinationVariable String sessionCode, ChatMessage message) {
-        log.info("[{}] PRIVATE from {}: {}", sessionCode, message.getSender(), message.getContent());
+        route("private", sessionCode, message, () -> acceptPrivateMessage(sessionCode, message));
+    }
 
-        // Save the participant's private message
-        conversationService.saveMessage(
-                sessionCode, message.getSender(), message.getContent(), "PRIVATE", message.getSender());
+    private void acceptPrivateMessage(String sessionCode, ChatMessage message) {
+        log.info("[{}] PRIVATE from {}: {}", sessionCode, message.getSender(), message.getContent());
+        if (!fromParticipant(sessionCode, message) || isRepeat(sessionCode, message)) return;
 
         // Echo back their own message so it appears in their private panel
         ChatMessage echo = ChatMessage.builder()
@@ -161,56 +280,75 @@ public class ChatWebSocketController {
                 .content(message.getContent())
                 .type("PRIVATE")
                 .recipient(message.getSender())
+                .clientMessageId(message.getClientMessageId())
                 .build();
-        messagingTemplate.convertAndSend(
-                "/topic/private/" + sessionCode + "/" + message.getSender(), echo);
 
-        // Generate private coaching response in background
-        Thread.startVirtualThread(() -> {
-            try {
-                DiplomatResponse response = diplomatService.respondToPrivateMessage(
-                        sessionCode, message.getSender(), message.getContent());
+        boolean accepted = pipeline.submit(sessionCode, Stage.PERSIST, () -> {
+            if (alreadyStored(sessionCode, message)) return;
+            // Save the participant's private message
+            Message saved = conversationService.saveMessage(sessionCode, message.getSender(), message.getContent(),
+                    "PRIVATE", message.getSender(), message.getClientMessageId());
+            echo.setSeq(saved.getSeq());
+            dispatch(sessionCode, destinationFor(sessionCode, message.getSender()), echo);
 
+            // Generate private coaching response in the background
+            pipeline.submit(sessionCode, Stage.INTERACTIVE, () -> coachPrivately(sessionCode, message));
+        });
+        if (!accepted) messageDeduplicator.release(sessionCode, message.getClientMessageId());
+    }
+
+    private void coachPrivately(String sessionCode, ChatMessage message) {
+        try {
+            if (streaming) {
+                StompStreamListener listener = new StompStreamListener(sessionCode);
+                listener.await(diplomatService.streamPrivateResponse(
+                        sessionCode, message.getSender(), message.getContent(), listener));
+                return;
+            }
+            DiplomatResponse response = diplomatService.respondToPrivateMessage(
+                    sessionCode, message.getSender(), message.getContent());
+
+            ChatMessage diplomatMsg = ChatMessage.builder()
+                    .sessionCode(sessionCode)
+                    .sender("DIPLOMAT")
+                    .content(response.getContent())
+                    .type("PRIVATE_COACHING")
+                    .recipient(message.getSender())
+                    .build();
+
+            pipeline.handOff(sessionCode, Stage.PERSIST, () -> {
                 // Save the diplomat's private response
-                conversationService.saveDiplomatMessage(
+                Message saved = conversationService.saveDiplomatMessage(
                         sessionCode, response.getContent(), "PRIVATE_COACHING",
                         null, message.getSender());
-
-                ChatMessage diplomatMsg = ChatMessage.builder()
-                        .sessionCode(sessionCode)
-                        .sender("DIPLOMAT")
-                        .content(response.getContent())
-                        .type("PRIVATE_COACHING")
-                        .recipient(message.getSender())
-                        .build();
-
-                messagingTemplate.convertAndSend(
-                        "/topic/private/" + sessionCode + "/" + message.getSender(), diplomatMsg);
-            } catch (Exception e) {
-                log.error("Private coaching failed for session {} user {}: {}", 
-                        sessionCode, message.getSender(), e.getMessage());
-            }
-        });
+                diplomatMsg.setSeq(saved.getSeq());
+                dispatch(sessionCode, destinationFor(sessionCode, message.getSender()), diplomatMsg);
+            });
+        } catch (Exception e) {
+            log.error("Private coaching failed for session {} user {}: {}",
+                    sessionCode, message.getSender(), e.getMessage());
+        }
     }
 
     /**
-     * Run The Diplomat's analysis in a separate virtual thread so it doesn't block chat message delivery.
+     * Hand the message to the per-session analysis coordinator so it doesn't block chat message delivery.
+     * Bursts are coalesced into one run on the latest message; results of superseded runs are dropped.
      * If the response has a recipient set (private coaching), route to the private channel instead.
      */
     private void analyzeInBackground(String sessionCode, String sender, String content) {
-        Thread.startVirtualThread(() -> {
+        analysisCoordinator.submit(sessionCode, sender, content, ticket -> {
+            if (streaming) {
+                StompStreamListener listener = new StompStreamListener(sessionCode, ticket);
+                listener.await(diplomatService.streamAnalysis(
+                        sessionCode, ticket.getSender(), ticket.getContent(), listener));
+                return;
+            }
             try {
-                DiplomatResponse response = diplomatService.analyzeAndRespond(sessionCode, sender, content);
-                if (response != null) {
+                DiplomatResponse response = diplomatService.analyzeAndRespond(
+                        sessionCode, ticket.getSender(), ticket.getContent());
+                if (response != null && ticket.isCurrent()) {
                     String recipient = response.getRecipient();
 
-                    // Persist the Diplomat's message (with recipient if private)
-                    conversationService.saveDiplomatMessage(
-                            sessionCode, response.getContent(),
-                            response.getResponseType(), response.getFallacyType(),
-                            recipient
-                    );
-
                     ChatMessage diplomatMsg = ChatMessage.builder()
                             .sessionCode(sessionCode)
                             .sender("DIPLOMAT")
@@ -219,19 +357,226 @@ public class ChatWebSocketController {
                             .recipient(recipient)
                             .build();
 
-                    if (recipient != null) {
-                        // Route to participant's private channel
-                        messagingTemplate.convertAndSend(
-                                "/topic/private/" + sessionCode + "/" + recipient, diplomatMsg);
-                    } else {
-                        // Broadcast to the shared chat
-                        messagingTemplate.convertAndSend(
-                                "/topic/chat/" + sessionCode, diplomatMsg);
+                    // Persist the Diplomat's message (with recipient if private), then route it
+                    // to the participant's private channel or the shared chat
+                    pipeline.handOff(sessionCode, Stage.PERSIST, () -> {
+                        Message saved = conversationService.saveDiplomatMessage(
+                                sessionCode, response.getContent(),
+                                response.getResponseType(), response.getFallacyType(),
+                                recipient
+                        );
+                        diplomatMsg.setSeq(saved.getSeq());
+                        dispatch(sessionCode, destinationFor(sessionCode, recipient), diplomatMsg);
+                    });
+                }
+            } finally {
+                ticket.done();
+            }
+        });
+    }
+
+    /**
+     * True if the frame's sender takes part in the session. Anything else is dropped here,
+     * before its client message id is recorded or a job is queued that could not store it.
+     */
+    private boolean fromParticipant(String sessionCode, ChatMessage message) {
+        boolean participant = conversationService.findSession(sessionCode)
+                .map(session -> session.isParticipant(message.getSender()))
+                .orElse(false);
+        if (!participant) {
+            log.warn("[{}] Dropping {} from {}, who is not a participant of this session",
+                    sessionCode, message.getType(), message.getSender());
+        }
+        return participant;
+    }
+
+    /**
+     * True if the client recently sent this frame (same client message id). The repeat is only
+     * acknowledged to its sender, so nothing is saved, analyzed or broadcast a second time.
+     * In memory only; older repeats are caught by {@link #alreadyStored} in the PERSIST stage.
+     */
+    private boolean isRepeat(String sessionCode, ChatMessage message) {
+        if (messageDeduplicator.firstDelivery(sessionCode, message.getClientMessageId())) return false;
+        log.info("[{}] Ignoring resent {} {} from {}", sessionCode, message.getType(),
+                message.getClientMessageId(), message.getSender());
+        pipeline.submit(sessionCode, Stage.DISPATCH, () -> send(destinationFor(sessionCode, message.getSender()), ack(sessionCode, message)));
+        return true;
+    }
+
+    /**
+     * True if a stored message already carries the frame's client message id, i.e. it is a
+     * resend from before the deduplicator's window. Runs in the PERSIST stage, since it reads
+     * the database; the repeat is acknowledged like any other.
+     */
+    private boolean alreadyStored(String sessionCode, ChatMessage message) {
+        if (!messageDeduplicator.stored(sessionCode, message.getClientMessageId())) return false;
+        log.info("[{}] Ignoring resent {} {} from {}, already stored", sessionCode, message.getType(),
+                message.getClientMessageId(), message.getSender());
+        dispatch(sessionCode, destinationFor(sessionCode, message.getSender()), ack(sessionCode, message));
+        return true;
+    }
+
+    private static ChatMessage ack(String sessionCode, ChatMessage message) {
+        return ChatMessage.builder()
+                .sessionCode(sessionCode)
+                .sender("SYSTEM")
+                .type("ACK")
+                .recipient(message.getSender())
+                .clientMessageId(message.getClientMessageId())
+                .build();
+    }
+
+    private static ChatMessage nack(String sessionCode, ChatMessage message) {
+        return ChatMessage.builder()
+                .sessionCode(sessionCode)
+                .sender("SYSTEM")
+                .type("NACK")
+                .recipient(message.getSender())
+                .clientMessageId(message.getClientMessageId())
+                .build();
+    }
+
+    /**
+     * Send to the shared chat from the DISPATCH stage, after everything queued before it.
+     */
+    private void broadcast(String sessionCode, ChatMessage message) {
+        dispatch(sessionCode, "/topic/chat/" + sessionCode, message);
+    }
+
+    private void dispatch(String sessionCode, String destination, ChatMessage message) {
+        pipeline.handOff(sessionCode, Stage.DISPATCH, () -> send(destination, message));
+    }
+
+    private void send(String destination, ChatMessage message) {
+        messagingTemplate.convertAndSend(destination, message);
+    }
+
+    private String destinationFor(String sessionCode, String recipient) {
+        return recipient != null
+                ? "/topic/private/" + sessionCode + "/" + recipient
+                : "/topic/chat/" + sessionCode;
+    }
+
+    /**
+     * Pushes streamed tokens as DIPLOMAT_STREAM frames, then persists the finished response once
+     * and sends it as a normal Diplomat frame carrying the same responseId. If the response is
+     * dropped after tokens went out, a STREAM_ABORTED frame tells the client to discard them.
+     * When bound to an analysis ticket, output stops as soon as the ticket is superseded.
+     * Frames go through the DISPATCH stage; {@link #await} holds the ANALYZE (or INTERACTIVE)
+     * stage until the stream has finished, and gives the model slot back if it never does.
+     */
+    private class StompStreamListener implements DiplomatStreamListener {
+
+        private final String sessionCode;
+        private final AnalysisCoordinator.Ticket ticket;
+        private final CompletableFuture<Void> finished = new CompletableFuture<>();
+        private volatile String streamedTo;
+        private volatile String streamedId;
+        private volatile boolean abandoned;
+
+        StompStreamListener(String sessionCode) {
+            this(sessionCode, null);
+        }
+
+        StompStreamListener(String sessionCode, AnalysisCoordinator.Ticket ticket) {
+            this.sessionCode = sessionCode;
+            this.ticket = ticket;
+        }
+
+        private boolean superseded() {
+            return abandoned || (ticket != null && !ticket.isCurrent());
+        }
+
+        void await(LlmScheduler.StreamSlot slot) {
+            try {
+                finished.get(streamTimeoutSeconds, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                log.warn("Stream for session {} still running after {}s; moving on", sessionCode, streamTimeoutSeconds);
+                abandon(slot);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Interrupted waiting for stream of session {}", sessionCode);
+                abandon(slot);
+            } catch (Exception e) {
+                log.warn("Stream for session {} failed: {}", sessionCode, e.getMessage());
+                abandon(slot);
+            }
+        }
+
+        /**
+         * Stop waiting for a stream that has not completed: later tokens and the final response
+         * are dropped, the client discards what it got, the model slot goes to the next queued
+         * call, and the ticket is released so the session's next analysis can start.
+         */
+        private void abandon(LlmScheduler.StreamSlot slot) {
+            abandoned = true;
+            slot.release();
+            if (streamedTo != null) {
+                dispatch(sessionCode, streamedTo, ChatMessage.builder()
+                        .sessionCode(sessionCode)
+                        .sender("DIPLOMAT")
+                        .type("STREAM_ABORTED")
+                        .responseId(streamedId)
+                        .build());
+            }
+            if (ticket != null) ticket.abandon();
+        }
+
+        @Override
+        public void onToken(String responseId, String recipient, String token) {
+            if (superseded()) return;
+            streamedTo = destinationFor(sessionCode, recipient);
+            streamedId = responseId;
+            ChatMessage chunk = ChatMessage.builder()
+                    .sessionCode(sessionCode)
+                    .sender("DIPLOMAT")
+                    .content(token)
+                    .type("DIPLOMAT_STREAM")
+                    .recipient(recipient)
+                    .responseId(responseId)
+                    .build();
+            dispatch(sessionCode, streamedTo, chunk);
+        }
+
+        @Override
+        public void onComplete(String responseId, DiplomatResponse response) {
+            try {
+                if (abandoned) return; // await already gave up and told the client
+                if (response == null || superseded()) {
+                    if (streamedTo != null) {
+                        dispatch(sessionCode, streamedTo, ChatMessage.builder()
+                                .sessionCode(sessionCode)
+                                .sender("DIPLOMAT")
+                                .type("STREAM_ABORTED")
+                                .responseId(responseId)
+                                .build());
                     }
+                    return;
                 }
+
+                ChatMessage diplomatMsg = ChatMessage.builder()
+                        .sessionCode(sessionCode)
+                        .sender("DIPLOMAT")
+                        .content(response.getContent())
+                        .type(response.getResponseType())
+                        .recipient(response.getRecipient())
+                        .responseId(responseId)
+                        .build();
+                pipeline.handOff(sessionCode, Stage.PERSIST, () -> {
+                    Message saved = conversationService.saveDiplomatMessage(
+                            sessionCode, response.getContent(),
+                            response.getResponseType(), response.getFallacyType(),
+                            response.getRecipient()
+                    );
+                    diplomatMsg.setSeq(saved.getSeq());
+                    dispatch(sessionCode, destinationFor(sessionCode, response.getRecipient()), diplomatMsg);
+                });
             } catch (Exception e) {
-                log.error("Diplomat analysis failed for session {}: {}", sessionCode, e.getMessage());
+                log.error("Failed to finish streamed response for session {}: {}", sessionCode, e.getMessage());
+            } finally {
+                finished.complete(null);
+                if (ticket != null) ticket.done();
             }
-        });
+        }
     }
 }
@@ -0,0 +1,74 @@
+package com.diplomat.controller;
+
+import com.diplomat.dto.ChatMessage;
+import com.diplomat.service.ClusterForwarder;
+import com.diplomat.service.SessionOwnership;
+import com.diplomat.service.SessionRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Node-to-node endpoints: frames forwarded by the node a client is connected to, handled
+ * here because this node owns the session, and notices that another node changed session
+ * settings. Only served with clustering on; callers must present the shared
+ * {@code diplomat.cluster.secret}.
+ */
+@RestController
+@RequestMapping("/internal/cluster")
+@RequiredArgsConstructor
+public class ClusterController {
+
+    private final ChatWebSocketController chatController;
+    private final ClusterForwarder clusterForwarder;
+    private final SessionOwnership sessionOwnership;
+    private final SessionRegistry sessionRegistry;
+
+    @Value("${diplomat.cluster.enabled:false}")
+    private boolean enabled;
+
+    @PostMapping("/frames/{kind}/{sessionCode}")
+    public ResponseEntity<Void> acceptFrame(
+            @PathVariable String kind, @PathVariable String sessionCode,
+            @RequestHeader(name = ClusterForwarder.SECRET_HEADER, required = false) String secret,
+            @RequestBody ChatMessage message) {
+        if (!enabled) return ResponseEntity.notFound().build();
+        if (!clusterForwarder.acceptsSecret(secret)) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+
+        // Another node holds the lease: the sender re-resolves the owner
+        if (!sessionOwnership.claim(sessionCode)) return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        return chatController.acceptForwarded(kind, sessionCode, message)
+                ? ResponseEntity.accepted().build()
+                : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Another node changed the session's settings; reload them on next use.
+     */
+    @PostMapping("/sessions/{sessionCode}/changed")
+    public ResponseEntity<Void> sessionChanged(
+            @PathVariable String sessionCode,
+            @RequestHeader(name = ClusterForwarder.SECRET_HEADER, required = false) String secret) {
+        if (!enabled) return ResponseEntity.notFound().build();
+        if (!clusterForwarder.acceptsSecret(secret)) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+
+        sessionRegistry.evict(sessionCode);
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Another node changed a constitution; sessions using it reload on next use.
+     */
+    @PostMapping("/constitutions/{id}/changed")
+    public ResponseEntity<Void> constitutionChanged(
+            @PathVariable Long id,
+            @RequestHeader(name = ClusterForwarder.SECRET_HEADER, required = false) String secret) {
+        if (!enabled) return ResponseEntity.notFound().build();
+        if (!clusterForwarder.acceptsSecret(secret)) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+
+        sessionRegistry.constitutionChanged(id);
+        return ResponseEntity.noContent().build();
+    }
+}
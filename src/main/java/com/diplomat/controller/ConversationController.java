@@ -1,17 +1,24 @@
 package com.diplomat.controller;
 
 import com.diplomat.dto.DiplomatResponse;
+import com.diplomat.dto.FrameBatch;
 import com.diplomat.dto.JoinRequest;
+import com.diplomat.dto.MessagePage;
 import com.diplomat.model.Conversation;
-import com.diplomat.model.Message;
+import com.diplomat.service.ConversationHistoryBuffer;
 import com.diplomat.service.ConversationService;
 import com.diplomat.service.DiplomatService;
+import com.diplomat.service.MessageDeduplicator;
+import com.diplomat.service.MessageTriage;
+import com.diplomat.service.SessionInfo;
+import com.diplomat.service.SessionPipeline;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/conversations")
@@ -20,6 +27,10 @@ public class ConversationController {
 
     private final ConversationService conversationService;
     private final DiplomatService diplomatService;
+    private final MessageTriage messageTriage;
+    private final ConversationHistoryBuffer historyBuffer;
+    private final SessionPipeline sessionPipeline;
+    private final MessageDeduplicator messageDeduplicator;
 
     /**
      * Create a new conversation session.
@@ -53,25 +64,50 @@ public class ConversationController {
      */
     @GetMapping("/{sessionCode}")
     public ResponseEntity<Map<String, Object>> getSession(@PathVariable String sessionCode) {
-        Conversation conv = conversationService.findBySessionCode(sessionCode)
-                .orElseThrow(() -> new RuntimeException("Session not found"));
+        SessionInfo session = conversationService.getSession(sessionCode);
         return ResponseEntity.ok(Map.of(
-                "sessionCode", conv.getSessionCode(),
-                "participantA", conv.getParticipantA(),
-                "participantB", conv.getParticipantB() != null ? conv.getParticipantB() : "",
-                "status", conv.getStatus(),
-                "mode", conv.getMode(),
-                "interactionLevelA", conv.getInteractionLevelA(),
-                "interactionLevelB", conv.getInteractionLevelB()
+                "sessionCode", session.sessionCode(),
+                "participantA", session.participantA(),
+                "participantB", session.participantB() != null ? session.participantB() : "",
+                "status", session.status(),
+                "mode", session.mode(),
+                "interactionLevelA", session.interactionLevelA(),
+                "interactionLevelB", session.interactionLevelB()
         ));
     }
 
     /**
-     * Get message history.
+     * Get message history, a page at a time. Without cursors this returns the newest page;
+     * {@code before} pages further back and {@code after} fetches only newer messages.
+     * The ETag changes whenever a message is added, so unchanged polls get a 304.
      */
     @GetMapping("/{sessionCode}/messages")
-    public ResponseEntity<List<Message>> getMessages(@PathVariable String sessionCode) {
-        return ResponseEntity.ok(conversationService.getAllMessages(sessionCode));
+    public ResponseEntity<MessagePage> getMessages(@PathVariable String sessionCode,
+                                                   @RequestParam(required = false) Long before,
+                                                   @RequestParam(required = false) Long after,
+                                                   @RequestParam(defaultValue = "50") int limit,
+                                                   WebRequest request) {
+        long latestId = conversationService.getLatestMessageId(sessionCode);
+        String etag = "\"" + latestId + "\"";
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .body(conversationService.getMessagePage(sessionCode, before, after, limit, latestId));
+    }
+
+    /**
+     * Frames a reconnecting client missed since {@code after}, the last seq it saw: shared
+     * messages plus the participant's private ones. Without {@code after} it only returns
+     * {@code latestSeq}, the starting point for a fresh connection.
+     */
+    @GetMapping("/{sessionCode}/resync")
+    public FrameBatch resync(@PathVariable String sessionCode,
+                             @RequestParam String participant,
+                             @RequestParam(required = false) Long after,
+                             @RequestParam(defaultValue = "200") int limit) {
+        return conversationService.getFramesAfter(sessionCode, participant, after, limit);
     }
 
     /**
@@ -88,10 +124,11 @@ public class ConversationController {
      * Request a debrief summary.
      */
     @PostMapping("/{sessionCode}/debrief")
-    public ResponseEntity<DiplomatResponse> debrief(@PathVariable String sessionCode) {
-        DiplomatResponse response = diplomatService.generateDebrief(sessionCode);
-        conversationService.saveDiplomatMessage(sessionCode, response.getContent(), "SUMMARY", null);
-        return ResponseEntity.ok(response);
+    public CompletableFuture<ResponseEntity<DiplomatResponse>> debrief(@PathVariable String sessionCode) {
+        return diplomatService.generateDebriefAsync(sessionCode).thenApply(response -> {
+            conversationService.saveDiplomatMessage(sessionCode, response.getContent(), "SUMMARY", null);
+            return ResponseEntity.ok(response);
+        });
     }
 
     /**
@@ -102,12 +139,12 @@ public class ConversationController {
             @PathVariable String sessionCode, @RequestBody Map<String, Object> body) {
         String participant = (String) body.get("participant");
         int level = ((Number) body.get("level")).intValue();
-        Conversation conv = conversationService.setInteractionLevel(sessionCode, participant, level);
+        SessionInfo session = conversationService.setInteractionLevel(sessionCode, participant, level);
         return ResponseEntity.ok(Map.of(
                 "participant", participant,
                 "level", level,
-                "interactionLevelA", conv.getInteractionLevelA(),
-                "interactionLevelB", conv.getInteractionLevelB()
+                "interactionLevelA", session.interactionLevelA(),
+                "interactionLevelB", session.interactionLevelB()
         ));
     }
 
@@ -117,6 +154,10 @@ public class ConversationController {
     @PostMapping("/{sessionCode}/end")
     public ResponseEntity<Map<String, String>> endSession(@PathVariable String sessionCode) {
         conversationService.endSession(sessionCode);
+        messageTriage.forget(sessionCode);
+        historyBuffer.evict(sessionCode);
+        sessionPipeline.forget(sessionCode);
+        messageDeduplicator.forget(sessionCode);
         return ResponseEntity.ok(Map.of("status", "ENDED"));
     }
 }
@@ -0,0 +1,26 @@
+package com.diplomat.controller;
+
+import com.diplomat.model.PatternNote;
+import com.diplomat.service.PatternAggregator;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/patterns")
+@RequiredArgsConstructor
+public class PatternController {
+
+    private final PatternAggregator patternAggregator;
+
+    /**
+     * Recurring patterns for a couple across all their sessions, from the rollup table.
+     */
+    @GetMapping
+    public ResponseEntity<List<PatternNote>> getPatterns(@RequestParam String participantA,
+                                                         @RequestParam String participantB) {
+        return ResponseEntity.ok(patternAggregator.patternsFor(participantA, participantB));
+    }
+}
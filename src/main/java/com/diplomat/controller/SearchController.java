@@ -0,0 +1,40 @@
+package com.diplomat.controller;
+
+import com.diplomat.dto.MessageSearchHit;
+import com.diplomat.service.MessageSearchIndex;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/search")
+@RequiredArgsConstructor
+public class SearchController {
+
+    private final MessageSearchIndex messageSearchIndex;
+
+    /**
+     * Search public messages across sessions, e.g. {@code ?q=money&participant=Alice&participant=Bob}.
+     * {@code from} and {@code to} are inclusive dates. Results are newest first unless
+     * {@code sort=relevance}.
+     */
+    @GetMapping("/messages")
+    public ResponseEntity<List<MessageSearchHit>> searchMessages(
+            @RequestParam String q,
+            @RequestParam(name = "participant", required = false) List<String> participants,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "newest") String sort,
+            @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(messageSearchIndex.search(q,
+                participants != null ? participants : List.of(),
+                from != null ? from.atStartOfDay() : null,
+                to != null ? to.plusDays(1).atStartOfDay() : null,
+                "relevance".equalsIgnoreCase(sort),
+                limit));
+    }
+}
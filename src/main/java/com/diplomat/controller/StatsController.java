@@ -0,0 +1,69 @@
+package com.diplomat.controller;
+
+import com.diplomat.service.AnalysisCoordinator;
+import com.diplomat.service.ClusterForwarder;
+import com.diplomat.service.ContextAssembler;
+import com.diplomat.service.DebriefPipeline;
+import com.diplomat.service.InteractionLevelWriter;
+import com.diplomat.service.LlmResponseCache;
+import com.diplomat.service.LlmScheduler;
+import com.diplomat.service.MessageArchive;
+import com.diplomat.service.MessageDeduplicator;
+import com.diplomat.service.MessageSearchIndex;
+import com.diplomat.service.MessageTriage;
+import com.diplomat.service.MessageWriter;
+import com.diplomat.service.PatternAggregator;
+import com.diplomat.service.SessionPipeline;
+import com.diplomat.service.SessionRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/stats")
+@RequiredArgsConstructor
+public class StatsController {
+
+    private final AnalysisCoordinator analysisCoordinator;
+    private final LlmScheduler llmScheduler;
+    private final MessageTriage messageTriage;
+    private final DebriefPipeline debriefPipeline;
+    private final LlmResponseCache responseCache;
+    private final ContextAssembler contextAssembler;
+    private final SessionRegistry sessionRegistry;
+    private final InteractionLevelWriter interactionLevelWriter;
+    private final MessageWriter messageWriter;
+    private final MessageArchive messageArchive;
+    private final MessageSearchIndex messageSearchIndex;
+    private final PatternAggregator patternAggregator;
+    private final SessionPipeline sessionPipeline;
+    private final MessageDeduplicator messageDeduplicator;
+    private final ClusterForwarder clusterForwarder;
+
+    /**
+     * Runtime counters for the Diplomat pipeline.
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sessions", sessionRegistry.stats());
+        stats.put("interactionLevels", interactionLevelWriter.stats());
+        stats.put("persistence", messageWriter.stats());
+        stats.put("archive", messageArchive.stats());
+        stats.put("search", messageSearchIndex.stats());
+        stats.put("patterns", patternAggregator.stats());
+        stats.put("pipeline", sessionPipeline.stats());
+        stats.put("dedup", messageDeduplicator.stats());
+        stats.put("cluster", clusterForwarder.stats());
+        stats.put("triage", messageTriage.stats());
+        stats.put("analysis", analysisCoordinator.stats());
+        stats.put("llm", llmScheduler.stats());
+        stats.put("context", contextAssembler.stats());
+        stats.put("debrief", debriefPipeline.stats());
+        stats.put("responseCache", responseCache.stats());
+        return ResponseEntity.ok(stats);
+    }
+}
@@ -7,7 +7,10 @@ public class ChatMessage {
     private String sessionCode;
     private String sender;
     private String content;
-    private String type; // CHAT, JOIN, LEAVE, REWIND, TRANSLATE, PARKING_LOT, PRIVATE
+    private String type; // CHAT, JOIN, LEAVE, REWIND, TRANSLATE, PARKING_LOT, PRIVATE, DIPLOMAT_STREAM, STREAM_ABORTED, ACK
     private Integer interactionLevel; // 1-10, sent with slider changes
     private String recipient; // null = public, participant name = private coaching message
+    private String responseId; // set on streamed Diplomat frames; the final frame reuses the same id
+    private Long seq; // per-session order of stored messages; null on frames that are not stored (JOIN, stream chunks)
+    private String clientMessageId; // optional, chosen by the sending client; a resend with a seen id is acknowledged, not redone
 }
@@ -11,4 +11,5 @@ public class DiplomatResponse {
     private String fallacyType;  // null unless FALLACY_ALERT
     private String recipient;    // null = public, participant name = private coaching
     private LocalDateTime timestamp;
+    private String responseId;   // stable id shared by streamed chunks and the final frame
 }
@@ -0,0 +1,11 @@
+package com.diplomat.dto;
+
+import lombok.*;
+import java.util.List;
+
+@Data @NoArgsConstructor @AllArgsConstructor @Builder
+public class FrameBatch {
+    private List<ChatMessage> frames; // oldest first, as they were sent live
+    private boolean hasMore;          // more frames follow; ask again after the last seq
+    private long latestSeq;           // newest seq in the session when this was read
+}
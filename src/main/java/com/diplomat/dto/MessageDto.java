@@ -0,0 +1,30 @@
+package com.diplomat.dto;
+
+import com.diplomat.model.MessageType;
+import com.diplomat.model.ParticipantRole;
+import lombok.*;
+import java.time.LocalDateTime;
+
+/**
+ * Read-only view of a stored message, selected directly in JPQL (no entity or association loading).
+ */
+@Data @NoArgsConstructor @AllArgsConstructor @Builder
+public class MessageDto {
+    private Long id;             // also the cursor for paging
+    private Long seq;            // per-session sequence, as on live frames
+    private String sender;
+    private String content;
+    private String messageType;
+    private String fallacyType;
+    private String recipient;
+    private LocalDateTime timestamp;
+
+    /**
+     * JPQL projection constructor: resolves stored roles to the conversation's participant names.
+     */
+    public MessageDto(Long id, long seq, ParticipantRole senderRole, String content, MessageType messageType, String fallacyType,
+                      ParticipantRole recipientRole, LocalDateTime timestamp, String participantA, String participantB) {
+        this(id, seq, senderRole.nameIn(participantA, participantB), content, messageType.name(), fallacyType,
+                recipientRole != null ? recipientRole.nameIn(participantA, participantB) : null, timestamp);
+    }
+}
@@ -0,0 +1,11 @@
+package com.diplomat.dto;
+
+import lombok.*;
+import java.util.List;
+
+@Data @NoArgsConstructor @AllArgsConstructor @Builder
+public class MessagePage {
+    private List<MessageDto> messages; // oldest first
+    private boolean hasMore;           // older messages exist (newer, when paging with "after")
+    private Long latestId;             // newest message in the session; pass as "after" to fetch deltas
+}
@@ -0,0 +1,13 @@
+package com.diplomat.dto;
+
+import lombok.*;
+import java.time.LocalDateTime;
+
+@Data @NoArgsConstructor @AllArgsConstructor @Builder
+public class MessageSearchHit {
+    private Long messageId;
+    private String sessionCode;
+    private String sender;
+    private String snippet;      // matched terms wrapped in [ ]
+    private LocalDateTime timestamp;
+}
@@ -0,0 +1,35 @@
+package com.diplomat.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.LocalDateTime;
+
+/**
+ * Where an ended conversation's messages live in the archive segment files.
+ */
+@Entity
+@Table(name = "archived_sessions")
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class ArchivedSession {
+
+    @Id
+    private Long conversationId;
+
+    @Column(nullable = false)
+    private int segment; // segment-NNNNNN.dat
+
+    @Column(name = "record_offset", nullable = false)
+    private long offset;
+
+    @Column(name = "record_length", nullable = false)
+    private int length;
+
+    @Column(nullable = false)
+    private int messageCount;
+
+    @Column(nullable = false)
+    private long lastMessageId;
+
+    @Column(nullable = false)
+    private LocalDateTime archivedAt;
+}
@@ -0,0 +1,17 @@
+package com.diplomat.model;
+
+/**
+ * An enum persisted as a small integer code. Codes are fixed per constant, so constants
+ * can be reordered or added without rewriting stored rows.
+ */
+public interface CodedEnum {
+
+    int getCode();
+
+    static <E extends Enum<E> & CodedEnum> E fromCode(Class<E> type, int code) {
+        for (E constant : type.getEnumConstants()) {
+            if (constant.getCode() == code) return constant;
+        }
+        throw new IllegalArgumentException("Unknown " + type.getSimpleName() + " code: " + code);
+    }
+}
@@ -0,0 +1,25 @@
+package com.diplomat.model;
+
+import jakarta.persistence.AttributeConverter;
+
+/**
+ * Stores a {@link CodedEnum} as its integer code.
+ */
+public abstract class CodedEnumConverter<E extends Enum<E> & CodedEnum> implements AttributeConverter<E, Integer> {
+
+    private final Class<E> type;
+
+    protected CodedEnumConverter(Class<E> type) {
+        this.type = type;
+    }
+
+    @Override
+    public Integer convertToDatabaseColumn(E value) {
+        return value != null ? value.getCode() : null;
+    }
+
+    @Override
+    public E convertToEntityAttribute(Integer code) {
+        return code != null ? CodedEnum.fromCode(type, code) : null;
+    }
+}
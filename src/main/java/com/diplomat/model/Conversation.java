@@ -25,10 +25,10 @@ public class Conversation {
     private String participantB;
 
     @Column(nullable = false)
-    private String status; // ACTIVE, PAUSED, ENDED
+    private ConversationStatus status;
 
     @Column(nullable = false)
-    private String mode; // FREE_TALK, GUIDED, DEBRIEF
+    private ConversationMode mode;
 
     @Column(nullable = false)
     @Builder.Default
@@ -55,10 +55,20 @@ public class Conversation {
     @Column
     private LocalDateTime endedAt;
 
+    /**
+     * Bumped by every write, including the single-column updates in ConversationRepository,
+     * so a full-entity save of a stale copy fails instead of overwriting them.
+     */
+    @Version
+    @Column(nullable = false)
+    @Builder.Default
+    @org.hibernate.annotations.ColumnDefault("0")
+    private long version = 0;
+
     @PrePersist
     protected void onCreate() {
         if (createdAt == null) createdAt = LocalDateTime.now();
-        if (status == null) status = "ACTIVE";
-        if (mode == null) mode = "FREE_TALK";
+        if (status == null) status = ConversationStatus.ACTIVE;
+        if (mode == null) mode = ConversationMode.FREE_TALK;
     }
 }
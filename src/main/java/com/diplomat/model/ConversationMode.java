@@ -0,0 +1,21 @@
+package com.diplomat.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public enum ConversationMode implements CodedEnum {
+    FREE_TALK(0),
+    GUIDED(1),
+    DEBRIEF(2);
+
+    private final int code;
+
+    @jakarta.persistence.Converter(autoApply = true)
+    public static class JpaConverter extends CodedEnumConverter<ConversationMode> {
+        public JpaConverter() {
+            super(ConversationMode.class);
+        }
+    }
+}
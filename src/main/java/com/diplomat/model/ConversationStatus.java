@@ -0,0 +1,22 @@
+package com.diplomat.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public enum ConversationStatus implements CodedEnum {
+    WAITING(0),
+    ACTIVE(1),
+    PAUSED(2),
+    ENDED(3);
+
+    private final int code;
+
+    @jakarta.persistence.Converter(autoApply = true)
+    public static class JpaConverter extends CodedEnumConverter<ConversationStatus> {
+        public JpaConverter() {
+            super(ConversationStatus.class);
+        }
+    }
+}
@@ -5,7 +5,13 @@ import lombok.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+        @Index(name = "idx_messages_conversation_id", columnList = "conversation_id, id"),
+        @Index(name = "idx_messages_conversation_timestamp", columnList = "conversation_id, timestamp"),
+        @Index(name = "idx_messages_conversation_recipient", columnList = "conversation_id, recipientRole"),
+        @Index(name = "ux_messages_conversation_seq", columnList = "conversation_id, seq", unique = true),
+        @Index(name = "ux_messages_conversation_client_id", columnList = "conversation_id, client_message_id", unique = true)
+})
 @Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
 public class Message {
 
@@ -18,19 +24,37 @@ public class Message {
     private Conversation conversation;
 
     @Column(nullable = false)
-    private String sender; // participant name or "DIPLOMAT"
+    private long seq; // 1, 2, 3... within the conversation, in id order; assigned by MessageSequencer
+
+    @Column(nullable = false)
+    private ParticipantRole senderRole;
 
     @Column(nullable = false, length = 4000)
     private String content;
 
     @Column(nullable = false)
-    private String messageType; // CHAT, DIPLOMAT_OBSERVATION, DIPLOMAT_REFRAME, FALLACY_ALERT, TEMPERATURE_CHECK, SYSTEM
+    private MessageType messageType;
 
     @Column
     private String fallacyType; // null unless messageType is FALLACY_ALERT
 
     @Column
-    private String recipient; // null = public message, participant name = private to that person
+    private ParticipantRole recipientRole; // null = public message, otherwise private to that participant
+
+    @Column(name = "client_message_id", length = 64)
+    private String clientMessageId; // id the sending client gave the message, if any; unique within the conversation
+
+    /**
+     * Sender name (participant name, "DIPLOMAT" or "SYSTEM"), resolved from the role; not stored.
+     */
+    @Transient
+    private String sender;
+
+    /**
+     * Recipient name for private messages, resolved from the role; not stored.
+     */
+    @Transient
+    private String recipient;
 
     @Column(nullable = false)
     private LocalDateTime timestamp;
@@ -0,0 +1,46 @@
+package com.diplomat.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Locale;
+
+@Getter
+@RequiredArgsConstructor
+public enum MessageType implements CodedEnum {
+    CHAT(0),
+    PRIVATE(1),
+    SYSTEM(2),
+    OBSERVATION(3),
+    REFRAME(4),
+    FALLACY_ALERT(5),
+    TEMPERATURE_CHECK(6),
+    CONSTITUTION_REMINDER(7),
+    REFLECTION(8),
+    APPRECIATION_PROMPT(9),
+    SUMMARY(10),
+    PRIVATE_COACHING(11),
+    TRANSLATION(12),
+    PARKING_LOT(13);
+
+    private final int code;
+
+    /**
+     * Lenient parse for types that come from model output; anything unrecognized is an observation.
+     */
+    public static MessageType parse(String value) {
+        if (value == null || value.isBlank()) return OBSERVATION;
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return OBSERVATION;
+        }
+    }
+
+    @jakarta.persistence.Converter(autoApply = true)
+    public static class JpaConverter extends CodedEnumConverter<MessageType> {
+        public JpaConverter() {
+            super(MessageType.class);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.diplomat.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Who sent or receives a message. Participant names are stored once on the conversation
+ * and resolved from the role.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum ParticipantRole implements CodedEnum {
+    PARTICIPANT_A(0),
+    PARTICIPANT_B(1),
+    DIPLOMAT(2),
+    SYSTEM(3);
+
+    private final int code;
+
+    public String nameIn(String participantA, String participantB) {
+        return switch (this) {
+            case PARTICIPANT_A -> participantA;
+            case PARTICIPANT_B -> participantB;
+            default -> name();
+        };
+    }
+
+    @jakarta.persistence.Converter(autoApply = true)
+    public static class JpaConverter extends CodedEnumConverter<ParticipantRole> {
+        public JpaConverter() {
+            super(ParticipantRole.class);
+        }
+    }
+}
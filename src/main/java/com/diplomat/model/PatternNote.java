@@ -14,7 +14,7 @@ public class PatternNote {
     private Long id;
 
     @Column(nullable = false)
-    private String participantA;
+    private String participantA; // the couple's names in alphabetical order, whoever created the session
 
     @Column(nullable = false)
     private String participantB;
@@ -0,0 +1,11 @@
+package com.diplomat.repository;
+
+import com.diplomat.model.ArchivedSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+@Transactional(readOnly = true)
+public interface ArchivedSessionRepository extends JpaRepository<ArchivedSession, Long> {
+}
@@ -3,9 +3,11 @@ package com.diplomat.repository;
 import com.diplomat.model.Constitution;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import java.util.List;
 
 @Repository
+@Transactional(readOnly = true)
 public interface ConstitutionRepository extends JpaRepository<Constitution, Long> {
     List<Constitution> findByFinalizedTrue();
     List<Constitution> findByCreatedByOrderByCreatedAtDesc(String createdBy);
@@ -1,14 +1,76 @@
 package com.diplomat.repository;
 
 import com.diplomat.model.Conversation;
+import com.diplomat.model.ConversationMode;
+import com.diplomat.model.ConversationStatus;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
 import java.util.Optional;
 import java.util.List;
 
 @Repository
+@Transactional(readOnly = true)
 public interface ConversationRepository extends JpaRepository<Conversation, Long> {
     Optional<Conversation> findBySessionCode(String sessionCode);
     List<Conversation> findByParticipantAAndParticipantBOrderByCreatedAtDesc(String a, String b);
-    List<Conversation> findByStatus(String status);
+    List<Conversation> findByStatus(ConversationStatus status);
+
+    @Query("SELECT c FROM Conversation c LEFT JOIN FETCH c.constitution WHERE c.sessionCode = :sessionCode")
+    Optional<Conversation> findWithConstitutionBySessionCode(@Param("sessionCode") String sessionCode);
+
+    /**
+     * Sessions ended before the cutoff that still have messages in the hot table.
+     */
+    @Query("""
+            SELECT c.id FROM Conversation c
+            WHERE c.status = com.diplomat.model.ConversationStatus.ENDED AND c.endedAt < :cutoff
+              AND EXISTS (SELECT 1 FROM Message m WHERE m.conversation.id = c.id)
+            ORDER BY c.endedAt
+            """)
+    List<Long> findIdsToArchive(@Param("cutoff") LocalDateTime cutoff, Limit limit);
+
+    // Single-field updates, so concurrent changes to different settings never overwrite each other
+
+    /**
+     * Fill the second seat of a waiting session; 0 if it is unknown or no longer waiting.
+     */
+    @Modifying
+    @Transactional
+    @Query("""
+            UPDATE Conversation c
+            SET c.participantB = :participantB, c.status = com.diplomat.model.ConversationStatus.ACTIVE,
+                c.version = c.version + 1
+            WHERE c.sessionCode = :sessionCode AND c.status = com.diplomat.model.ConversationStatus.WAITING
+            """)
+    int join(@Param("sessionCode") String sessionCode, @Param("participantB") String participantB);
+
+    @Modifying
+    @Transactional
+    @Query("""
+            UPDATE Conversation c
+            SET c.status = com.diplomat.model.ConversationStatus.ENDED, c.endedAt = :endedAt, c.version = c.version + 1
+            WHERE c.sessionCode = :sessionCode AND c.status <> com.diplomat.model.ConversationStatus.ENDED
+            """)
+    int end(@Param("sessionCode") String sessionCode, @Param("endedAt") LocalDateTime endedAt);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Conversation c SET c.mode = :mode, c.version = c.version + 1 WHERE c.sessionCode = :sessionCode")
+    int updateMode(@Param("sessionCode") String sessionCode, @Param("mode") ConversationMode mode);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Conversation c SET c.interactionLevelA = :level, c.version = c.version + 1 WHERE c.sessionCode = :sessionCode")
+    int updateInteractionLevelA(@Param("sessionCode") String sessionCode, @Param("level") int level);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Conversation c SET c.interactionLevelB = :level, c.version = c.version + 1 WHERE c.sessionCode = :sessionCode")
+    int updateInteractionLevelB(@Param("sessionCode") String sessionCode, @Param("level") int level);
 }
@@ -1,13 +1,125 @@
 package com.diplomat.repository;
 
+import com.diplomat.dto.MessageDto;
 import com.diplomat.model.Message;
+import com.diplomat.model.ParticipantRole;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import java.util.List;
 
 @Repository
+@Transactional(readOnly = true)
 public interface MessageRepository extends JpaRepository<Message, Long> {
     List<Message> findByConversationIdOrderByTimestampAsc(Long conversationId);
     List<Message> findByConversationSessionCodeOrderByTimestampAsc(String sessionCode);
-    long countByConversationIdAndSender(Long conversationId, String sender);
+
+    /**
+     * Newest first; served from the (conversation_id, timestamp) index.
+     */
+    List<Message> findByConversationIdOrderByTimestampDescIdDesc(Long conversationId, Limit limit);
+
+    /**
+     * Newest messages a participant can see: public ones plus their own private exchanges.
+     */
+    @Query("""
+            SELECT m FROM Message m
+            WHERE m.conversation.id = :conversationId
+              AND (m.recipientRole IS NULL OR m.recipientRole = :role OR m.senderRole = :role)
+            ORDER BY m.timestamp DESC, m.id DESC
+            """)
+    List<Message> findRecentVisibleTo(@Param("conversationId") Long conversationId,
+                                      @Param("role") ParticipantRole role, Limit limit);
+
+    /**
+     * Private messages to or from a participant, oldest first.
+     */
+    @Query("""
+            SELECT m FROM Message m
+            WHERE m.conversation.id = :conversationId
+              AND (m.recipientRole = :role OR (m.senderRole = :role AND m.recipientRole IS NOT NULL))
+            ORDER BY m.timestamp ASC, m.id ASC
+            """)
+    List<Message> findPrivateFor(@Param("conversationId") Long conversationId,
+                                 @Param("role") ParticipantRole role);
+
+    /**
+     * Id of the newest message, or null; answered from the (conversation_id, id) index alone.
+     */
+    @Query("SELECT MAX(m.id) FROM Message m WHERE m.conversation.id = :conversationId")
+    Long findLatestId(@Param("conversationId") Long conversationId);
+
+    /**
+     * Page of messages older than {@code beforeId}, newest first.
+     */
+    @Query("""
+            SELECT new com.diplomat.dto.MessageDto(m.id, m.seq, m.senderRole, m.content, m.messageType, m.fallacyType, m.recipientRole,
+                   m.timestamp, m.conversation.participantA, m.conversation.participantB)
+            FROM Message m
+            WHERE m.conversation.id = :conversationId AND m.id < :beforeId
+            ORDER BY m.id DESC
+            """)
+    List<MessageDto> findPageBefore(@Param("conversationId") Long conversationId,
+                                    @Param("beforeId") long beforeId, Limit limit);
+
+    /**
+     * Page of messages newer than {@code afterId}, oldest first.
+     */
+    @Query("""
+            SELECT new com.diplomat.dto.MessageDto(m.id, m.seq, m.senderRole, m.content, m.messageType, m.fallacyType, m.recipientRole,
+                   m.timestamp, m.conversation.participantA, m.conversation.participantB)
+            FROM Message m
+            WHERE m.conversation.id = :conversationId AND m.id > :afterId
+            ORDER BY m.id ASC
+            """)
+    List<MessageDto> findPageAfter(@Param("conversationId") Long conversationId,
+                                   @Param("afterId") long afterId, Limit limit);
+
+    /**
+     * Every message in a conversation with an id above {@code afterId}, oldest first.
+     */
+    @Query("""
+            SELECT new com.diplomat.dto.MessageDto(m.id, m.seq, m.senderRole, m.content, m.messageType, m.fallacyType, m.recipientRole,
+                   m.timestamp, m.conversation.participantA, m.conversation.participantB)
+            FROM Message m
+            WHERE m.conversation.id = :conversationId AND m.id > :afterId
+            ORDER BY m.id ASC
+            """)
+    List<MessageDto> findAllAfter(@Param("conversationId") Long conversationId, @Param("afterId") long afterId);
+
+    /**
+     * Whether a message with this client-chosen id was already stored in the conversation.
+     */
+    @Query("SELECT COUNT(m) > 0 FROM Message m WHERE m.conversation.id = :conversationId AND m.clientMessageId = :clientMessageId")
+    boolean existsByClientMessageId(@Param("conversationId") Long conversationId,
+                                    @Param("clientMessageId") String clientMessageId);
+
+    /**
+     * Newest sequence number in a conversation, or null; served from the (conversation_id, seq) index.
+     */
+    @Query("SELECT MAX(m.seq) FROM Message m WHERE m.conversation.id = :conversationId")
+    Long findLatestSeq(@Param("conversationId") Long conversationId);
+
+    /**
+     * Messages after {@code afterSeq} that the participant in {@code role} was sent, oldest first.
+     */
+    @Query("""
+            SELECT new com.diplomat.dto.MessageDto(m.id, m.seq, m.senderRole, m.content, m.messageType, m.fallacyType, m.recipientRole,
+                   m.timestamp, m.conversation.participantA, m.conversation.participantB)
+            FROM Message m
+            WHERE m.conversation.id = :conversationId AND m.seq > :afterSeq
+              AND (m.recipientRole IS NULL OR m.recipientRole = :role OR m.senderRole = :role)
+            ORDER BY m.seq ASC
+            """)
+    List<MessageDto> findVisibleAfterSeq(@Param("conversationId") Long conversationId, @Param("afterSeq") long afterSeq,
+                                         @Param("role") ParticipantRole role, Limit limit);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM Message m WHERE m.conversation.id = :conversationId AND m.id <= :throughId")
+    int deleteArchived(@Param("conversationId") Long conversationId, @Param("throughId") long throughId);
 }
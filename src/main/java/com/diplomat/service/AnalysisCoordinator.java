@@ -0,0 +1,208 @@
+package com.diplomat.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces chat-message analysis per session. A burst of messages is debounced
+ * within a quiet window and analyzed once on the latest message, with at most one
+ * analysis in flight per session. When a newer message arrives, the in-flight
+ * analysis is marked superseded so its result can be dropped. Runs execute in the
+ * session's ANALYZE stage of the {@link SessionPipeline}.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class AnalysisCoordinator {
+
+    /**
+     * The work to run for a session. Implementations must call {@link Ticket#done()}
+     * once the analysis has fully finished (including any streamed output).
+     */
+    @FunctionalInterface
+    public interface AnalysisTask {
+        void run(Ticket ticket);
+    }
+
+    /**
+     * One scheduled analysis run, carrying the latest message it was started for.
+     */
+    public final class Ticket {
+        private final String sessionCode;
+        private final long generation;
+        private final String sender;
+        private final String content;
+        private final AnalysisTask task;
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile boolean superseded;
+
+        private Ticket(String sessionCode, long generation, String sender, String content, AnalysisTask task) {
+            this.sessionCode = sessionCode;
+            this.generation = generation;
+            this.sender = sender;
+            this.content = content;
+            this.task = task;
+        }
+
+        public String getSender() {
+            return sender;
+        }
+
+        public String getContent() {
+            return content;
+        }
+
+        /**
+         * False once a newer message arrived for the session; the result should then be dropped.
+         */
+        public boolean isCurrent() {
+            return !superseded;
+        }
+
+        public void done() {
+            if (finished.compareAndSet(false, true)) {
+                finish(this);
+            }
+        }
+
+        /**
+         * Give up on a run that did not finish in time: drop whatever it still produces and
+         * free the session for the next analysis.
+         */
+        public void abandon() {
+            superseded = true;
+            done();
+        }
+    }
+
+    private static class SessionState {
+        long generation;
+        String sender;
+        String content;
+        AnalysisTask task;
+        ScheduledFuture<?> pending;
+        Ticket inFlight;
+    }
+
+    private final SessionPipeline sessionPipeline;
+
+    @Value("${diplomat.analysis.quiet-window-ms:1500}")
+    private long quietWindowMs;
+
+    private final Map<String, SessionState> sessions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("analysis-debounce").daemon().factory());
+
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong superseded = new AtomicLong();
+    private final AtomicLong executed = new AtomicLong();
+
+    /**
+     * Register a new message for analysis. The task runs after the quiet window
+     * unless another message for the same session arrives first.
+     */
+    public void submit(String sessionCode, String sender, String content, AnalysisTask task) {
+        requested.incrementAndGet();
+        sessions.compute(sessionCode, (code, state) -> {
+            if (state == null) state = new SessionState();
+            state.generation++;
+            state.sender = sender;
+            state.content = content;
+            state.task = task;
+
+            if (state.pending != null && state.pending.cancel(false)) {
+                coalesced.incrementAndGet();
+            }
+            if (state.inFlight != null && !state.inFlight.superseded) {
+                state.inFlight.superseded = true;
+                superseded.incrementAndGet();
+            }
+            long generation = state.generation;
+            state.pending = scheduler.schedule(() -> fire(code, generation), quietWindowMs, TimeUnit.MILLISECONDS);
+            return state;
+        });
+    }
+
+    /**
+     * Counters for observability: messages submitted, runs coalesced away during the
+     * quiet window, in-flight runs whose result was dropped, and runs actually started.
+     */
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("requested", requested.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("superseded", superseded.get());
+        stats.put("executed", executed.get());
+        stats.put("activeSessions", (long) sessions.size());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void fire(String sessionCode, long generation) {
+        Ticket[] toRun = new Ticket[1];
+        sessions.computeIfPresent(sessionCode, (code, state) -> {
+            // A newer message raced the cancel and has its own timer scheduled
+            if (state.generation != generation) return state;
+            state.pending = null;
+            // If a run is still in flight, finish() picks up the latest message afterwards
+            if (state.inFlight == null) {
+                toRun[0] = start(code, state);
+            }
+            return state;
+        });
+        launch(toRun[0]);
+    }
+
+    private void finish(Ticket ticket) {
+        Ticket[] toRun = new Ticket[1];
+        sessions.computeIfPresent(ticket.sessionCode, (code, state) -> {
+            if (state.inFlight != ticket) return state;
+            state.inFlight = null;
+            if (state.pending != null) return state;
+            if (state.generation != ticket.generation) {
+                toRun[0] = start(code, state);
+                return state;
+            }
+            return null; // idle — forget the session
+        });
+        launch(toRun[0]);
+    }
+
+    private Ticket start(String sessionCode, SessionState state) {
+        Ticket ticket = new Ticket(sessionCode, state.generation, state.sender, state.content, state.task);
+        state.inFlight = ticket;
+        return ticket;
+    }
+
+    private void launch(Ticket ticket) {
+        if (ticket == null) return;
+        executed.incrementAndGet();
+        boolean queued = sessionPipeline.submit(ticket.sessionCode, SessionPipeline.Stage.ANALYZE, () -> {
+            try {
+                ticket.task.run(ticket);
+            } catch (Exception e) {
+                log.error("Diplomat analysis failed for session {}: {}", ticket.sessionCode, e.getMessage());
+                ticket.done();
+            }
+        });
+        if (!queued) ticket.done();
+    }
+}
@@ -0,0 +1,187 @@
+package com.diplomat.service;
+
+import com.diplomat.dto.ChatMessage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands an inbound STOMP frame to the node that owns its session (see {@link SessionOwnership}).
+ * The owner only queues the frame, so the call is short. A frame is handled here only once
+ * this node holds the session's lease; if the owner can't be reached and still holds it, the
+ * frame is turned away and the client sends it again.
+ *
+ * <p>Settings written through the REST API on any node are stored at once, but every node
+ * caches {@link SessionInfo}. After such a write this tells the other live nodes to drop
+ * their cached copy, so the owner's chat path picks the change up.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class ClusterForwarder {
+
+    public static final String SECRET_HEADER = "X-Diplomat-Cluster-Secret";
+
+    private static final int MAX_REDIRECTS = 2;
+
+    public enum Route {
+        /** Queued on the owning node. */
+        FORWARDED,
+        /** This node holds the lease and handles the frame. */
+        LOCAL,
+        /** Another node holds the lease but did not take the frame; nobody handles it. */
+        REJECTED
+    }
+
+    private final SessionOwnership sessionOwnership;
+
+    @Value("${diplomat.cluster.enabled:false}")
+    private boolean enabled;
+
+    @Value("${diplomat.cluster.secret:}")
+    private String secret;
+
+    @Value("${diplomat.cluster.forward-timeout-ms:2000}")
+    private long timeoutMs;
+
+    private RestClient restClient;
+    private final ExecutorService notices = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("cluster-notice-", 0).factory());
+    private final AtomicLong forwarded = new AtomicLong();
+    private final AtomicLong redirected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong noticesSent = new AtomicLong();
+    private final AtomicLong noticeFailures = new AtomicLong();
+
+    @PostConstruct
+    void start() {
+        if (enabled && secret.isBlank()) {
+            // A blank secret would let any caller that omits the header inject frames
+            throw new IllegalStateException("diplomat.cluster.secret (DIPLOMAT_CLUSTER_SECRET) must be set when clustering is enabled");
+        }
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(Duration.ofMillis(timeoutMs));
+        requestFactory.setReadTimeout(Duration.ofMillis(timeoutMs));
+        restClient = RestClient.builder().requestFactory(requestFactory).build();
+    }
+
+    /**
+     * Send the frame to the session's owner, or handle it here if this node can take the lease.
+     * A node that turns the frame down (409: another node holds the lease) makes this look
+     * the owner up again. When no owner takes the frame and the lease can't be taken here
+     * either, the frame is rejected.
+     */
+    public Route forward(String kind, String sessionCode, ChatMessage message) {
+        for (int attempt = 1; attempt <= MAX_REDIRECTS + 1; attempt++) {
+            Optional<SessionOwnership.Node> owner = sessionOwnership.remoteOwner(sessionCode);
+            if (owner.isEmpty()) return here(kind, sessionCode);
+            try {
+                restClient.post()
+                        .uri(owner.get().url() + "/internal/cluster/frames/{kind}/{sessionCode}", kind, sessionCode)
+                        .header(SECRET_HEADER, secret)
+                        .body(message)
+                        .retrieve()
+                        .toBodilessEntity();
+                forwarded.incrementAndGet();
+                return Route.FORWARDED;
+            } catch (HttpClientErrorException.Conflict e) {
+                redirected.incrementAndGet();
+                log.info("[{}] Node {} does not hold the session, looking up its owner again", sessionCode, owner.get().id());
+                sessionOwnership.forgetOwner(sessionCode);
+            } catch (RestClientException e) {
+                failed.incrementAndGet();
+                log.warn("[{}] Could not forward {} to node {}: {}", sessionCode, kind, owner.get().id(), e.getMessage());
+                sessionOwnership.forgetOwner(sessionCode);
+                return here(kind, sessionCode);
+            }
+        }
+        failed.incrementAndGet();
+        log.warn("[{}] No node would take {}", sessionCode, kind);
+        return here(kind, sessionCode);
+    }
+
+    private Route here(String kind, String sessionCode) {
+        if (sessionOwnership.claim(sessionCode)) return Route.LOCAL;
+        rejected.incrementAndGet();
+        log.warn("[{}] Another node holds the lease, turning {} away", sessionCode, kind);
+        return Route.REJECTED;
+    }
+
+    @PreDestroy
+    void stop() {
+        notices.shutdownNow();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSessionChanged(SessionChangedEvent event) {
+        notifyOthers("/internal/cluster/sessions/{sessionCode}/changed", event.sessionCode());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onConstitutionChanged(ConstitutionChangedEvent event) {
+        notifyOthers("/internal/cluster/constitutions/{id}/changed", event.constitutionId());
+    }
+
+    /**
+     * Post a change notice to every other live node, off the caller's thread. A node that
+     * misses it serves its cached copy until that is evicted or the lease moves.
+     */
+    private void notifyOthers(String path, Object id) {
+        if (!enabled || notices.isShutdown()) return;
+        for (SessionOwnership.Node node : sessionOwnership.otherNodes()) {
+            notices.execute(() -> {
+                try {
+                    restClient.post()
+                            .uri(node.url() + path, id)
+                            .header(SECRET_HEADER, secret)
+                            .retrieve()
+                            .toBodilessEntity();
+                    noticesSent.incrementAndGet();
+                } catch (RestClientException e) {
+                    noticeFailures.incrementAndGet();
+                    log.warn("Could not tell node {} about change {} {}: {}", node.id(), path, id, e.getMessage());
+                }
+            });
+        }
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    public boolean acceptsSecret(String presented) {
+        if (secret.isBlank()) return false;
+        byte[] given = (presented != null ? presented : "").getBytes(StandardCharsets.UTF_8);
+        return MessageDigest.isEqual(secret.getBytes(StandardCharsets.UTF_8), given);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>(sessionOwnership.stats());
+        stats.put("forwarded", forwarded.get());
+        stats.put("forwardRedirects", redirected.get());
+        stats.put("forwardFailures", failed.get());
+        stats.put("forwardRejected", rejected.get());
+        stats.put("changeNoticesSent", noticesSent.get());
+        stats.put("changeNoticeFailures", noticeFailures.get());
+        return stats;
+    }
+}
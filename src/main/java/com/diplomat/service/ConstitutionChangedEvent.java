@@ -0,0 +1,7 @@
+package com.diplomat.service;
+
+/**
+ * Published by {@link ConstitutionService} after a constitution's text or status changed.
+ */
+public record ConstitutionChangedEvent(Long constitutionId) {
+}
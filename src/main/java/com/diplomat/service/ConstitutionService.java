@@ -4,12 +4,10 @@ import com.diplomat.model.Constitution;
 import com.diplomat.repository.ConstitutionRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.io.ClassPathResource;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -19,18 +17,15 @@ import java.util.List;
 public class ConstitutionService {
 
     private final ConstitutionRepository constitutionRepository;
+    private final PromptTemplateRegistry prompts;
+    private final SessionRegistry sessionRegistry;
+    private final ApplicationEventPublisher eventPublisher;
 
     /**
-     * Load the default constitution template from classpath.
+     * The default constitution template, loaded once at startup.
      */
     public String getTemplate() {
-        try {
-            ClassPathResource resource = new ClassPathResource("prompts/constitution-template.txt");
-            return new String(resource.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
-        } catch (IOException e) {
-            log.error("Failed to load constitution template", e);
-            return getHardcodedTemplate();
-        }
+        return prompts.get("constitution-template").text();
     }
 
     /**
@@ -61,6 +56,8 @@ public class ConstitutionService {
         Constitution constitution = constitutionRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Constitution not found: " + id));
         constitution.setContent(content);
+        sessionRegistry.constitutionChanged(id);
+        eventPublisher.publishEvent(new ConstitutionChangedEvent(id));
         return constitutionRepository.save(constitution);
     }
 
@@ -69,6 +66,8 @@ public class ConstitutionService {
         Constitution constitution = constitutionRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Constitution not found: " + id));
         constitution.setFinalized(true);
+        sessionRegistry.constitutionChanged(id);
+        eventPublisher.publishEvent(new ConstitutionChangedEvent(id));
         return constitutionRepository.save(constitution);
     }
 
@@ -80,26 +79,4 @@ public class ConstitutionService {
     public List<Constitution> getAll() {
         return constitutionRepository.findAll();
     }
-
-    private String getHardcodedTemplate() {
-        return """
-                # Our Communication Constitution
-                
-                ## Core Principles
-                1. We assume good intent in each other's words.
-                2. We speak for ourselves using "I feel..." statements.
-                3. We listen to understand, not to respond.
-                
-                ## Ground Rules
-                - No name-calling or personal attacks
-                - No bringing up past resolved issues
-                - Either person can call a timeout at any time
-                - We address one topic at a time
-                
-                ## When Things Escalate
-                - Take a 5-minute break if either person feels overwhelmed
-                - Return to the conversation after the break
-                - Start the return with something you appreciate about the other person
-                """;
-    }
 }
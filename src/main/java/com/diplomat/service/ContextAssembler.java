@@ -0,0 +1,157 @@
+package com.diplomat.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fits prompt context into the model's token budget instead of a fixed message count.
+ * Parts are admitted in priority order — the fixed scaffold (system prompt, instructions),
+ * the constitution, the new message, then as many recent turns as fit, newest first.
+ * The rolling summary of older turns is only kept when every buffered turn fits, since
+ * otherwise it would not connect to the turns that are shown.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class ContextAssembler {
+
+    /**
+     * The parts that fit, and what they cost.
+     */
+    public record Assembly(String constitution, String message, ConversationHistoryBuffer.View history,
+                           int tokens, int budget, int droppedTurns) {
+    }
+
+    private static class PurposeStats {
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong tokens = new AtomicLong();
+        final AtomicLong maxTokens = new AtomicLong();
+        final AtomicLong trimmedCalls = new AtomicLong();
+        final AtomicLong droppedTurns = new AtomicLong();
+    }
+
+    private final TokenEstimator tokenEstimator;
+
+    @Value("${diplomat.llm.provider:ollama}")
+    private String provider;
+
+    @Value("${diplomat.llm.ollama.context-tokens:8192}")
+    private int ollamaContextTokens;
+
+    @Value("${diplomat.llm.openai.context-tokens:32000}")
+    private int openaiContextTokens;
+
+    @Value("${diplomat.llm.context.reserve-tokens:512}")
+    private int reserveTokens;
+
+    private final Map<String, PurposeStats> purposeStats = new ConcurrentHashMap<>();
+
+    /**
+     * Prompt tokens available once room for the reply is set aside.
+     */
+    public int budget() {
+        int context = "openai".equalsIgnoreCase(provider) ? openaiContextTokens : ollamaContextTokens;
+        return Math.max(0, context - reserveTokens);
+    }
+
+    /**
+     * Choose what goes into a prompt.
+     *
+     * @param purpose     label for logging and stats, e.g. "analysis"
+     * @param scaffold    every fixed part of the prompt, rendered with the other parts left empty
+     * @param constitution constitution text; trimmed if it alone would overflow the budget
+     * @param message     the new message; trimmed only as a last resort
+     * @param history     buffered turns, oldest first, plus the rolling summary
+     */
+    public Assembly assemble(String purpose, String scaffold, String constitution, String message,
+                             ConversationHistoryBuffer.View history) {
+        int budget = budget();
+        int scaffoldTokens = tokenEstimator.estimate(scaffold);
+        int used = scaffoldTokens;
+        if (scaffoldTokens > budget) {
+            log.warn("Fixed {} prompt ({} tokens) exceeds the context budget of {} tokens; raise context-tokens",
+                    purpose, scaffoldTokens, budget);
+        }
+
+        int constitutionTokens = tokenEstimator.estimate(constitution);
+        if (used + constitutionTokens > budget) {
+            constitution = tokenEstimator.truncate(constitution, budget - used);
+            constitutionTokens = tokenEstimator.estimate(constitution);
+        }
+        used += constitutionTokens;
+
+        int messageTokens = tokenEstimator.estimate(message);
+        if (used + messageTokens > budget) {
+            message = tokenEstimator.truncate(message, budget - used);
+            messageTokens = tokenEstimator.estimate(message);
+        }
+        used += messageTokens;
+
+        List<String> lines = history.lines();
+        List<String> kept = new ArrayList<>();
+        for (int i = lines.size() - 1; i >= 0; i--) {
+            int cost = tokenEstimator.estimate(lines.get(i)) + TokenEstimator.MESSAGE_OVERHEAD;
+            if (used + cost > budget) break;
+            kept.add(lines.get(i));
+            used += cost;
+        }
+        Collections.reverse(kept);
+        int dropped = lines.size() - kept.size();
+
+        String summary = null;
+        if (dropped == 0 && history.summary() != null) {
+            int cost = tokenEstimator.estimate(history.summary()) + TokenEstimator.MESSAGE_OVERHEAD;
+            if (used + cost <= budget) {
+                summary = history.summary();
+                used += cost;
+            }
+        }
+
+        Assembly assembly = new Assembly(constitution, message, new ConversationHistoryBuffer.View(kept, summary),
+                used, budget, dropped);
+        record(purpose, assembly, scaffoldTokens, constitutionTokens, messageTokens);
+        return assembly;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("model", tokenEstimator.getModel());
+        stats.put("budget", budget());
+        purposeStats.forEach((purpose, s) -> {
+            long calls = s.calls.get();
+            Map<String, Object> purposeMap = new LinkedHashMap<>();
+            purposeMap.put("calls", calls);
+            purposeMap.put("avgTokens", calls == 0 ? 0 : s.tokens.get() / calls);
+            purposeMap.put("maxTokens", s.maxTokens.get());
+            purposeMap.put("trimmedCalls", s.trimmedCalls.get());
+            purposeMap.put("droppedTurns", s.droppedTurns.get());
+            stats.put(purpose, purposeMap);
+        });
+        return stats;
+    }
+
+    private void record(String purpose, Assembly assembly, int scaffoldTokens, int constitutionTokens, int messageTokens) {
+        PurposeStats s = purposeStats.computeIfAbsent(purpose, p -> new PurposeStats());
+        s.calls.incrementAndGet();
+        s.tokens.addAndGet(assembly.tokens());
+        s.maxTokens.accumulateAndGet(assembly.tokens(), Math::max);
+        if (assembly.droppedTurns() > 0) {
+            s.trimmedCalls.incrementAndGet();
+            s.droppedTurns.addAndGet(assembly.droppedTurns());
+        }
+        log.debug("Context for {}: {}/{} tokens (scaffold {}, constitution {}, message {}, {} turns, {} dropped, summary {})",
+                purpose, assembly.tokens(), assembly.budget(), scaffoldTokens, constitutionTokens,
+                messageTokens, assembly.history().lines().size(), assembly.droppedTurns(),
+                assembly.history().summary() != null ? "kept" : "omitted");
+    }
+}
@@ -0,0 +1,273 @@
+package com.diplomat.service;
+
+import com.diplomat.model.Message;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory, append-only conversation history per active session. Each message is
+ * formatted into its prompt line once, when it is saved, and kept in bounded windows:
+ * one for analysis (every message, private ones marked confidential) and one per
+ * participant (shared messages plus that participant's private ones).
+ *
+ * <p>Every saved message is recorded here as it is saved, so prompts never wait for the
+ * {@link MessageWriter}: a window is topped up once from committed rows, and anything
+ * still queued for writing is already in memory.
+ *
+ * <p>Public lines that fall out of the analysis window are condensed in the background
+ * into a short running summary, so long sessions keep their earlier context at a fixed
+ * prompt size. Private lines are never summarized, which keeps the summary safe to
+ * show in either participant's coaching prompt. A failed summary is retried on a later
+ * append once a doubling back-off has passed; after {@code summary-max-attempts} the
+ * batch is dropped from the summary rather than retried forever.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class ConversationHistoryBuffer {
+
+    /**
+     * A rendered history window plus the running summary of older turns (null if none yet).
+     */
+    public record View(List<String> lines, String summary) {
+
+        public String render() {
+            StringBuilder sb = new StringBuilder();
+            if (summary != null) {
+                sb.append("(Earlier in this conversation: ").append(summary).append(")\n");
+            }
+            if (lines.isEmpty()) {
+                return sb.append("(conversation just started)").toString();
+            }
+            for (int i = 0; i < lines.size(); i++) {
+                if (i > 0) sb.append('\n');
+                sb.append(lines.get(i));
+            }
+            return sb.toString();
+        }
+    }
+
+    private record Entry(long id, String line, String sender, String recipient) {
+
+        boolean visibleTo(String participant) {
+            return recipient == null || participant.equals(recipient) || participant.equals(sender);
+        }
+    }
+
+    private static class Window {
+        final Deque<Entry> entries = new ArrayDeque<>();
+        boolean seeded; // older committed rows merged in
+    }
+
+    private static class SessionHistory {
+        final Window analysis = new Window();
+        final Map<String, Window> participants = new HashMap<>();
+        final List<String> unsummarized = new ArrayList<>();
+        String summary;
+        boolean summarizing;
+        int failedAttempts;
+        long retryAfter;
+        long lastAccess;
+    }
+
+    private final ConversationService conversationService;
+    private final LlmScheduler llmScheduler;
+    private final PromptTemplateRegistry prompts;
+
+    @Value("${diplomat.history.window:60}")
+    private int windowSize;
+
+    @Value("${diplomat.history.summary-batch:10}")
+    private int summaryBatch;
+
+    @Value("${diplomat.history.summary-retry-ms:5000}")
+    private long summaryRetryMs;
+
+    @Value("${diplomat.history.summary-max-attempts:5}")
+    private int summaryMaxAttempts;
+
+    @Value("${diplomat.history.idle-evict-minutes:30}")
+    private long idleEvictMinutes;
+
+    private final Map<String, SessionHistory> sessions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("history-sweeper").daemon().factory());
+
+    @PostConstruct
+    void startSweeper() {
+        sweeper.scheduleWithFixedDelay(this::evictIdle, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    void stopSweeper() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * Format a stored message as a history line, the same way for every view.
+     */
+    public static String format(Message m) {
+        if (m.getRecipient() != null) {
+            return "[CONFIDENTIAL — PRIVATE TO %s] %s [%s]: %s".formatted(
+                    m.getRecipient(), m.getSender(), m.getMessageType(), m.getContent());
+        }
+        return "%s [%s]: %s".formatted(m.getSender(), m.getMessageType(), m.getContent());
+    }
+
+    /**
+     * The last N messages of the session, including private ones, for the analysis prompt.
+     */
+    public View analysisView(String sessionCode) {
+        SessionHistory history = touch(sessionCode);
+        synchronized (history) {
+            if (!history.analysis.seeded) {
+                seed(history.analysis, conversationService.getRecentMessages(sessionCode, windowSize));
+            }
+            return view(history, history.analysis);
+        }
+    }
+
+    /**
+     * The last N messages visible to one participant, for their private coaching prompt.
+     */
+    public View participantView(String sessionCode, String participant) {
+        SessionHistory history = touch(sessionCode);
+        synchronized (history) {
+            Window window = history.participants.get(participant);
+            if (window == null) {
+                window = new Window();
+                for (Entry e : history.analysis.entries) {
+                    if (e.visibleTo(participant)) window.entries.addLast(e);
+                }
+                seed(window, conversationService.getRecentMessagesForParticipant(sessionCode, participant, windowSize));
+                history.participants.put(participant, window);
+            }
+            return view(history, window);
+        }
+    }
+
+    /**
+     * Record a freshly saved message in the analysis window and every participant view that
+     * can see it, before the message writer has stored it.
+     */
+    @EventListener
+    public void onMessageSaved(MessageSavedEvent event) {
+        String sessionCode = event.sessionCode();
+        SessionHistory history = touch(sessionCode);
+
+        Entry entry = entry(event.message());
+        synchronized (history) {
+            Entry evicted = push(history.analysis, entry);
+            if (evicted != null && evicted.recipient() == null) {
+                history.unsummarized.add(evicted.line());
+                maybeSummarize(sessionCode, history);
+            }
+            history.participants.forEach((participant, window) -> {
+                if (entry.visibleTo(participant)) push(window, entry);
+            });
+        }
+    }
+
+    public void evict(String sessionCode) {
+        sessions.remove(sessionCode);
+    }
+
+    private SessionHistory touch(String sessionCode) {
+        SessionHistory history = sessions.computeIfAbsent(sessionCode, k -> new SessionHistory());
+        history.lastAccess = System.currentTimeMillis();
+        return history;
+    }
+
+    private static Entry entry(Message m) {
+        return new Entry(m.getId(), format(m), m.getSender(), m.getRecipient());
+    }
+
+    /**
+     * Merge committed rows under what the window already holds, in id order, keeping the newest.
+     * Rows may overlap the in-memory entries (already written) or miss some (still queued).
+     */
+    private void seed(Window window, List<Message> stored) {
+        Map<Long, Entry> byId = new TreeMap<>();
+        for (Message m : stored) byId.put(m.getId(), entry(m));
+        for (Entry e : window.entries) byId.put(e.id(), e);
+        window.entries.clear();
+        window.entries.addAll(byId.values());
+        while (window.entries.size() > windowSize) window.entries.pollFirst();
+        window.seeded = true;
+    }
+
+    /**
+     * Append to a window; returns the entry that fell out of it, if any.
+     */
+    private Entry push(Window window, Entry entry) {
+        window.entries.addLast(entry);
+        return window.entries.size() > windowSize ? window.entries.pollFirst() : null;
+    }
+
+    private View view(SessionHistory history, Window window) {
+        List<String> lines = new ArrayList<>(window.entries.size());
+        for (Entry e : window.entries) lines.add(e.line());
+        return new View(lines, history.summary);
+    }
+
+    private void maybeSummarize(String sessionCode, SessionHistory history) {
+        if (history.summarizing || history.unsummarized.size() < summaryBatch) return;
+        if (System.currentTimeMillis() < history.retryAfter) return;
+
+        List<String> batch = new ArrayList<>(history.unsummarized);
+        history.unsummarized.clear();
+        history.summarizing = true;
+        String previous = history.summary;
+
+        Thread.startVirtualThread(() -> {
+            String updated = null;
+            try {
+                updated = llmScheduler.generate(LlmScheduler.Lane.BACKGROUND, prompts.render("history-summary", Map.of(
+                        "summary", previous != null ? previous : "(none yet)",
+                        "turns", String.join("\n", batch))));
+            } catch (Exception e) {
+                log.warn("Rolling summary failed for session {}: {}", sessionCode, e.getMessage());
+            }
+            synchronized (history) {
+                history.summarizing = false;
+                if (updated != null && !updated.isBlank()) {
+                    history.summary = updated.trim();
+                    history.failedAttempts = 0;
+                    history.retryAfter = 0;
+                    maybeSummarize(sessionCode, history);
+                } else if (++history.failedAttempts >= summaryMaxAttempts) {
+                    log.warn("Giving up on summarizing {} turns of session {} after {} attempts",
+                            batch.size(), sessionCode, history.failedAttempts);
+                    history.failedAttempts = 0;
+                    history.retryAfter = 0;
+                } else {
+                    // Keep the turns; the next append after the back-off tries again
+                    history.unsummarized.addAll(0, batch);
+                    history.retryAfter = System.currentTimeMillis() + (summaryRetryMs << (history.failedAttempts - 1));
+                }
+            }
+        });
+    }
+
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(idleEvictMinutes);
+        sessions.entrySet().removeIf(e -> e.getValue().lastAccess < cutoff);
+    }
+}
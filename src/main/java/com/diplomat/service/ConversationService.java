@@ -1,15 +1,28 @@
 package com.diplomat.service;
 
+import com.diplomat.dto.ChatMessage;
+import com.diplomat.dto.FrameBatch;
+import com.diplomat.dto.MessageDto;
+import com.diplomat.dto.MessagePage;
 import com.diplomat.model.Conversation;
+import com.diplomat.model.ConversationMode;
+import com.diplomat.model.ConversationStatus;
 import com.diplomat.model.Message;
+import com.diplomat.model.MessageType;
+import com.diplomat.model.ParticipantRole;
 import com.diplomat.repository.ConversationRepository;
 import com.diplomat.repository.MessageRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -21,6 +34,15 @@ public class ConversationService {
 
     private final ConversationRepository conversationRepository;
     private final MessageRepository messageRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SessionRegistry sessionRegistry;
+    private final MessageWriter messageWriter;
+    private final MessageArchive messageArchive;
+    private final InteractionLevelWriter interactionLevelWriter;
+    private final MessageSequencer messageSequencer;
+
+    @Value("${diplomat.history.max-page-size:200}")
+    private int maxPageSize;
 
     /**
      * Create a new conversation session. Returns the session code.
@@ -32,11 +54,11 @@ public class ConversationService {
                 .sessionCode(code)
                 .participantA(participantA)
                 .participantB("") // filled when second person joins
-                .status("WAITING")
-                .mode("FREE_TALK")
+                .status(ConversationStatus.WAITING)
+                .mode(ConversationMode.FREE_TALK)
                 .createdAt(LocalDateTime.now())
                 .build();
-        return conversationRepository.save(conv);
+        return refreshed(conversationRepository.save(conv));
     }
 
     /**
@@ -44,16 +66,13 @@ public class ConversationService {
      */
     @Transactional
     public Conversation joinSession(String sessionCode, String participantB) {
-        Conversation conv = conversationRepository.findBySessionCode(sessionCode)
-                .orElseThrow(() -> new RuntimeException("Session not found: " + sessionCode));
-
-        if ("ACTIVE".equals(conv.getStatus())) {
+        if (conversationRepository.join(sessionCode, participantB) == 0) {
+            conversationRepository.findBySessionCode(sessionCode)
+                    .orElseThrow(() -> new RuntimeException("Session not found: " + sessionCode));
             throw new RuntimeException("Session already has two participants");
         }
-
-        conv.setParticipantB(participantB);
-        conv.setStatus("ACTIVE");
-        return conversationRepository.save(conv);
+        interactionLevelWriter.flush(sessionCode); // A may have moved their slider while waiting
+        return refreshed(conversationRepository.findWithConstitutionBySessionCode(sessionCode).orElseThrow());
     }
 
     public Optional<Conversation> findBySessionCode(String sessionCode) {
@@ -61,9 +80,20 @@ public class ConversationService {
     }
 
     /**
-     * Save a message to the conversation.
+     * Cached session metadata; no database access while the session is live.
+     */
+    public SessionInfo getSession(String sessionCode) {
+        return sessionRegistry.get(sessionCode);
+    }
+
+    public Optional<SessionInfo> findSession(String sessionCode) {
+        return sessionRegistry.find(sessionCode);
+    }
+
+    /**
+     * Save a message to the conversation. The message is visible to history readers at once
+     * and written to the database shortly after by the {@link MessageWriter}.
      */
-    @Transactional
     public Message saveMessage(String sessionCode, String sender, String content, String messageType) {
         return saveMessage(sessionCode, sender, content, messageType, null);
     }
@@ -71,26 +101,33 @@ public class ConversationService {
     /**
      * Save a message to the conversation with optional recipient for private messages.
      */
-    @Transactional
     public Message saveMessage(String sessionCode, String sender, String content, String messageType, String recipient) {
-        Conversation conv = conversationRepository.findBySessionCode(sessionCode)
-                .orElseThrow(() -> new RuntimeException("Session not found: " + sessionCode));
+        return saveMessage(sessionCode, sender, content, messageType, recipient, null);
+    }
 
+    /**
+     * Save a message that carries the id its client gave it, so a resend can be recognized later.
+     */
+    public Message saveMessage(String sessionCode, String sender, String content, String messageType, String recipient,
+                               String clientMessageId) {
+        SessionInfo session = sessionRegistry.get(sessionCode);
         Message message = Message.builder()
-                .conversation(conv)
+                .conversation(conversationRef(session))
+                .senderRole(session.roleOf(sender))
                 .sender(sender)
                 .content(content)
-                .messageType(messageType)
+                .messageType(MessageType.parse(messageType))
+                .recipientRole(session.roleOf(recipient))
                 .recipient(recipient)
+                .clientMessageId(clientMessageId)
                 .timestamp(LocalDateTime.now())
                 .build();
-        return messageRepository.save(message);
+        return publishSaved(sessionCode, messageSequencer.enqueue(message));
     }
 
     /**
      * Save a Diplomat message (with optional fallacy type).
      */
-    @Transactional
     public Message saveDiplomatMessage(String sessionCode, String content, String messageType, String fallacyType) {
         return saveDiplomatMessage(sessionCode, content, messageType, fallacyType, null);
     }
@@ -98,97 +135,257 @@ public class ConversationService {
     /**
      * Save a Diplomat message with optional recipient for private coaching.
      */
-    @Transactional
     public Message saveDiplomatMessage(String sessionCode, String content, String messageType, String fallacyType, String recipient) {
-        Conversation conv = conversationRepository.findBySessionCode(sessionCode)
-                .orElseThrow(() -> new RuntimeException("Session not found: " + sessionCode));
-
+        SessionInfo session = sessionRegistry.get(sessionCode);
         Message message = Message.builder()
-                .conversation(conv)
-                .sender("DIPLOMAT")
+                .conversation(conversationRef(session))
+                .senderRole(ParticipantRole.DIPLOMAT)
+                .sender(ParticipantRole.DIPLOMAT.name())
                 .content(content)
-                .messageType(messageType)
+                .messageType(MessageType.parse(messageType))
                 .fallacyType(fallacyType)
+                .recipientRole(session.roleOf(recipient))
                 .recipient(recipient)
                 .timestamp(LocalDateTime.now())
                 .build();
-        return messageRepository.save(message);
+        return publishSaved(sessionCode, messageSequencer.enqueue(message));
+    }
+
+    private Message publishSaved(String sessionCode, Message saved) {
+        eventPublisher.publishEvent(new MessageSavedEvent(sessionCode, saved));
+        return saved;
     }
 
     /**
-     * Get recent messages for context window (last N messages).
+     * Get recent messages for context window (last N messages), oldest first. Reads committed
+     * rows only, without waiting for the message writer; {@link ConversationHistoryBuffer}
+     * already holds whatever is still queued.
      */
     public List<Message> getRecentMessages(String sessionCode, int limit) {
-        List<Message> all = messageRepository.findByConversationSessionCodeOrderByTimestampAsc(sessionCode);
-        if (all.size() <= limit) return all;
-        return all.subList(all.size() - limit, all.size());
+        SessionInfo session = sessionRegistry.get(sessionCode);
+        List<Message> recent = messageRepository.findByConversationIdOrderByTimestampDescIdDesc(
+                session.id(), Limit.of(limit));
+        return named(session, oldestFirst(recent));
     }
 
+    /**
+     * Full history, oldest first, read from the archive for archived sessions.
+     */
     public List<Message> getAllMessages(String sessionCode) {
-        return messageRepository.findByConversationSessionCodeOrderByTimestampAsc(sessionCode);
+        messageWriter.awaitPersisted();
+        SessionInfo session = sessionRegistry.get(sessionCode);
+        Optional<List<MessageDto>> archived = archivedHistory(session);
+        if (archived.isEmpty()) {
+            return named(session, messageRepository.findByConversationIdOrderByTimestampAsc(session.id()));
+        }
+
+        Conversation ref = conversationRef(session);
+        return archived.get().stream()
+                .map(m -> Message.builder()
+                        .id(m.getId())
+                        .conversation(ref)
+                        .sender(m.getSender())
+                        .content(m.getContent())
+                        .messageType(MessageType.parse(m.getMessageType()))
+                        .fallacyType(m.getFallacyType())
+                        .recipient(m.getRecipient())
+                        .timestamp(m.getTimestamp())
+                        .build())
+                .toList();
+    }
+
+    /**
+     * Id of the newest stored message in the session, 0 if there are none.
+     */
+    public long getLatestMessageId(String sessionCode) {
+        messageWriter.awaitPersisted();
+        SessionInfo session = sessionRegistry.get(sessionCode);
+        Long latest = messageRepository.findLatestId(session.id());
+        if (latest == null && session.isEnded()) {
+            return messageArchive.lastMessageId(session.id()).orElse(0);
+        }
+        return latest != null ? latest : 0;
+    }
+
+    /**
+     * One page of history, oldest first. With {@code afterId} the page holds the messages that
+     * followed it (deltas); otherwise it holds the newest messages before {@code beforeId}, or
+     * the newest messages overall when neither cursor is given. {@code latestId} comes from
+     * {@link #getLatestMessageId} and is echoed back so it matches the caller's ETag.
+     */
+    public MessagePage getMessagePage(String sessionCode, Long beforeId, Long afterId, int limit, long latestId) {
+        SessionInfo session = sessionRegistry.get(sessionCode);
+        Optional<List<MessageDto>> archived = archivedHistory(session);
+        int size = Math.max(1, Math.min(limit, maxPageSize));
+
+        List<MessageDto> messages;
+        if (afterId != null) {
+            messages = new ArrayList<>(archived
+                    .map(all -> all.stream().filter(m -> m.getId() > afterId).limit(size + 1).toList())
+                    .orElseGet(() -> messageRepository.findPageAfter(session.id(), afterId, Limit.of(size + 1))));
+        } else {
+            long before = beforeId != null ? beforeId : Long.MAX_VALUE;
+            messages = archived.<List<MessageDto>>map(all -> {
+                List<MessageDto> older = all.stream().filter(m -> m.getId() < before).toList();
+                return new ArrayList<>(older.subList(Math.max(0, older.size() - size - 1), older.size()));
+            }).orElseGet(() -> oldestFirst(messageRepository.findPageBefore(session.id(), before, Limit.of(size + 1))));
+        }
+
+        boolean hasMore = messages.size() > size;
+        if (hasMore) {
+            // The extra row only signals that another page exists; drop the one furthest from the cursor
+            messages.remove(afterId != null ? messages.size() - 1 : 0);
+        }
+        return MessagePage.builder()
+                .messages(messages)
+                .hasMore(hasMore)
+                .latestId(latestId)
+                .build();
+    }
+
+    /**
+     * Frames a participant missed: every message after {@code afterSeq} that was broadcast to
+     * the session or sent privately to them, oldest first. Without {@code afterSeq} it returns
+     * no frames, only the current sequence to start from.
+     */
+    public FrameBatch getFramesAfter(String sessionCode, String participant, Long afterSeq, int limit) {
+        SessionInfo session = sessionRegistry.get(sessionCode);
+        ParticipantRole role = session.roleOf(participant); // throws for strangers
+        long latestSeq = messageSequencer.latest(session.id());
+        if (afterSeq == null || afterSeq >= latestSeq) {
+            return FrameBatch.builder().frames(List.of()).latestSeq(latestSeq).build();
+        }
+
+        messageWriter.awaitPersisted();
+        int size = Math.max(1, Math.min(limit, maxPageSize));
+        List<MessageDto> messages = archivedHistory(session)
+                .map(all -> all.stream()
+                        .filter(m -> m.getSeq() > afterSeq)
+                        .filter(m -> m.getRecipient() == null || m.getRecipient().equals(participant)
+                                || m.getSender().equals(participant))
+                        .limit(size + 1)
+                        .toList())
+                .orElseGet(() -> messageRepository.findVisibleAfterSeq(
+                        session.id(), afterSeq, role, Limit.of(size + 1)));
+
+        boolean hasMore = messages.size() > size;
+        return FrameBatch.builder()
+                .frames(messages.stream().limit(size).map(m -> toFrame(sessionCode, m)).toList())
+                .hasMore(hasMore)
+                .latestSeq(latestSeq)
+                .build();
+    }
+
+    private static ChatMessage toFrame(String sessionCode, MessageDto m) {
+        return ChatMessage.builder()
+                .sessionCode(sessionCode)
+                .sender(m.getSender())
+                .content(m.getContent())
+                .type(m.getMessageType())
+                .recipient(m.getRecipient())
+                .seq(m.getSeq())
+                .build();
     }
 
     /**
      * Get private coaching messages between The Diplomat and a specific participant.
      */
     public List<Message> getPrivateMessages(String sessionCode, String participant) {
-        return messageRepository.findByConversationSessionCodeOrderByTimestampAsc(sessionCode)
-                .stream()
-                .filter(m -> participant.equals(m.getRecipient()) || 
-                        (participant.equals(m.getSender()) && m.getRecipient() != null))
-                .toList();
+        messageWriter.awaitPersisted();
+        SessionInfo session = sessionRegistry.get(sessionCode);
+        return named(session, messageRepository.findPrivateFor(session.id(), session.roleOf(participant)));
     }
 
     /**
      * Get recent messages for context, including only public messages and private messages
-     * visible to the specified participant (for private coaching context).
+     * visible to the specified participant (for private coaching context). Like
+     * {@link #getRecentMessages}, committed rows only.
      */
     public List<Message> getRecentMessagesForParticipant(String sessionCode, String participant, int limit) {
-        List<Message> all = messageRepository.findByConversationSessionCodeOrderByTimestampAsc(sessionCode)
-                .stream()
-                .filter(m -> m.getRecipient() == null || 
-                        participant.equals(m.getRecipient()) || 
-                        participant.equals(m.getSender()))
-                .toList();
-        if (all.size() <= limit) return all;
-        return all.subList(all.size() - limit, all.size());
+        SessionInfo session = sessionRegistry.get(sessionCode);
+        List<Message> recent = messageRepository.findRecentVisibleTo(
+                session.id(), session.roleOf(participant), Limit.of(limit));
+        return named(session, oldestFirst(recent));
+    }
+
+    /**
+     * Archived messages plus anything stored after them, or empty if the session has not
+     * been archived. Only ended sessions are ever archived, so live ones skip the lookup.
+     */
+    private Optional<List<MessageDto>> archivedHistory(SessionInfo session) {
+        if (!session.isEnded()) return Optional.empty();
+        return messageArchive.read(session.id()).map(archived -> {
+            List<MessageDto> all = new ArrayList<>(archived);
+            long lastArchivedId = archived.isEmpty() ? 0 : archived.get(archived.size() - 1).getId();
+            all.addAll(messageRepository.findAllAfter(session.id(), lastArchivedId));
+            return all;
+        });
+    }
+
+    /**
+     * Id-only stand-in for the conversation; the message writer needs nothing else.
+     */
+    private Conversation conversationRef(SessionInfo session) {
+        return Conversation.builder().id(session.id()).sessionCode(session.sessionCode()).build();
+    }
+
+    /**
+     * Fill in participant names for the roles stored on each message.
+     */
+    private static List<Message> named(SessionInfo session, List<Message> messages) {
+        for (Message m : messages) {
+            m.setSender(session.nameOf(m.getSenderRole()));
+            m.setRecipient(session.nameOf(m.getRecipientRole()));
+        }
+        return messages;
+    }
+
+    private Conversation refreshed(Conversation conv) {
+        sessionRegistry.refresh(conv);
+        eventPublisher.publishEvent(new SessionChangedEvent(conv.getSessionCode()));
+        return conv;
+    }
+
+    private static <T> List<T> oldestFirst(List<T> newestFirst) {
+        List<T> ordered = new ArrayList<>(newestFirst);
+        Collections.reverse(ordered);
+        return ordered;
     }
 
     @Transactional
     public void endSession(String sessionCode) {
-        Conversation conv = conversationRepository.findBySessionCode(sessionCode)
-                .orElseThrow(() -> new RuntimeException("Session not found: " + sessionCode));
-        conv.setStatus("ENDED");
-        conv.setEndedAt(LocalDateTime.now());
-        conversationRepository.save(conv);
+        Long conversationId = sessionRegistry.get(sessionCode).id(); // throws if unknown
+        interactionLevelWriter.flush(sessionCode);
+        conversationRepository.end(sessionCode, LocalDateTime.now()); // no-op if already ended
+        sessionRegistry.evict(sessionCode);
+        eventPublisher.publishEvent(new SessionChangedEvent(sessionCode));
+        messageSequencer.forget(conversationId);
     }
 
     @Transactional
     public void setMode(String sessionCode, String mode) {
-        Conversation conv = conversationRepository.findBySessionCode(sessionCode)
-                .orElseThrow(() -> new RuntimeException("Session not found: " + sessionCode));
-        conv.setMode(mode);
-        conversationRepository.save(conv);
+        ConversationMode parsed = ConversationMode.valueOf(mode.toUpperCase());
+        if (conversationRepository.updateMode(sessionCode, parsed) == 0) {
+            throw new RuntimeException("Session not found: " + sessionCode);
+        }
+        sessionRegistry.update(sessionCode, session -> session.withMode(parsed));
+        eventPublisher.publishEvent(new SessionChangedEvent(sessionCode));
     }
 
     /**
-     * Set the interaction level (1-10) for a specific participant.
+     * Set the interaction level (1-10) for a specific participant. Takes effect at once;
+     * the database write is debounced by {@link InteractionLevelWriter}.
      */
-    @Transactional
-    public Conversation setInteractionLevel(String sessionCode, String participant, int level) {
-        Conversation conv = conversationRepository.findBySessionCode(sessionCode)
-                .orElseThrow(() -> new RuntimeException("Session not found: " + sessionCode));
-
-        int clamped = Math.max(1, Math.min(10, level));
-
-        if (participant.equals(conv.getParticipantA())) {
-            conv.setInteractionLevelA(clamped);
-        } else if (participant.equals(conv.getParticipantB())) {
-            conv.setInteractionLevelB(clamped);
-        } else {
-            throw new RuntimeException("Participant not found in session: " + participant);
+    public SessionInfo setInteractionLevel(String sessionCode, String participant, int level) {
+        SessionInfo session = sessionRegistry.get(sessionCode);
+        ParticipantRole role = session.roleOf(participant);
+        if (role != ParticipantRole.PARTICIPANT_A && role != ParticipantRole.PARTICIPANT_B) {
+            throw new UnknownParticipantException(sessionCode, participant);
         }
 
-        return conversationRepository.save(conv);
+        int clamped = Math.max(1, Math.min(10, level));
+        sessionRegistry.update(sessionCode, s -> s.withInteractionLevel(role, clamped));
+        interactionLevelWriter.submit(sessionCode, role, clamped);
+        return sessionRegistry.get(sessionCode);
     }
 }
@@ -0,0 +1,197 @@
+package com.diplomat.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Map-reduce debrief for long transcripts. The transcript is cut into token-bounded
+ * segments, each segment is condensed into notes (concurrently, on the BACKGROUND lane),
+ * and a final reduce call turns the notes into the four-section debrief.
+ *
+ * <p>Segments are cut greedily from the start, so earlier segments stay identical as a
+ * conversation grows. Their notes are cached by a hash of the segment prompt, which means
+ * a repeated debrief only pays for the newest segment plus the reduce step.
+ *
+ * <p>Debriefs are background work: at most as many segment calls are in flight as the
+ * BACKGROUND lane can queue, and a call the lane rejects as overloaded is retried with
+ * backoff instead of failing the debrief.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class DebriefPipeline {
+
+    private final LlmScheduler llmScheduler;
+    private final PromptTemplateRegistry prompts;
+    private final TokenEstimator tokenEstimator;
+
+    @Value("${diplomat.debrief.segment-tokens:1500}")
+    private int segmentTokens;
+
+    @Value("${diplomat.debrief.parallelism:3}")
+    private int parallelism;
+
+    @Value("${diplomat.debrief.cache-size:1000}")
+    private int cacheSize;
+
+    @Value("${diplomat.debrief.overload-retries:5}")
+    private int overloadRetries;
+
+    @Value("${diplomat.debrief.overload-backoff-ms:1000}")
+    private long overloadBackoffMs;
+
+    private final Map<String, String> segmentNotes = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > cacheSize;
+        }
+    };
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong segmentsSeen = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong overloadRetriesMade = new AtomicLong();
+
+    /**
+     * Produce a debrief for the given history lines. Short transcripts that fit in a single
+     * segment go straight to the one-shot debrief prompt.
+     */
+    public String debrief(List<String> lines) {
+        runs.incrementAndGet();
+        List<String> segments = split(lines);
+        if (segments.size() <= 1) {
+            String history = segments.isEmpty() ? "(conversation just started)" : segments.get(0);
+            return generate(prompts.render("debrief", Map.of("history", history)));
+        }
+
+        List<String> notes = summarizeSegments(segments);
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < notes.size(); i++) {
+            if (i > 0) joined.append("\n\n");
+            joined.append("Part ").append(i + 1).append(" of ").append(notes.size()).append(":\n").append(notes.get(i));
+        }
+        return generate(prompts.render("debrief-reduce", Map.of("notes", joined)));
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long seen = segmentsSeen.get();
+        stats.put("runs", runs.get());
+        stats.put("segments", seen);
+        stats.put("segmentCacheHits", cacheHits.get());
+        stats.put("segmentCacheHitRate", seen == 0 ? 0.0 : (double) cacheHits.get() / seen);
+        stats.put("overloadRetries", overloadRetriesMade.get());
+        synchronized (segmentNotes) {
+            stats.put("cachedSegments", segmentNotes.size());
+        }
+        return stats;
+    }
+
+    /**
+     * Greedy split into segments of at most {@code segment-tokens} estimated tokens.
+     * A single line longer than the budget becomes a segment of its own.
+     */
+    private List<String> split(List<String> lines) {
+        List<String> segments = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        int currentTokens = 0;
+        for (String line : lines) {
+            int tokens = tokenEstimator.estimate(line) + 1;
+            if (current.length() > 0 && currentTokens + tokens > segmentTokens) {
+                segments.add(current.toString());
+                current.setLength(0);
+                currentTokens = 0;
+            }
+            if (current.length() > 0) current.append('\n');
+            current.append(line);
+            currentTokens += tokens;
+        }
+        if (current.length() > 0) segments.add(current.toString());
+        return segments;
+    }
+
+    /**
+     * A BACKGROUND call that waits out a full lane: rejected calls are retried with a
+     * growing backoff, up to {@code overload-retries} times.
+     */
+    private String generate(String prompt) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return llmScheduler.generate(LlmScheduler.Lane.BACKGROUND, prompt);
+            } catch (LlmOverloadedException e) {
+                if (attempt > overloadRetries) throw e;
+                overloadRetriesMade.incrementAndGet();
+                log.debug("Debrief call rejected ({}); retry {} of {}", e.getMessage(), attempt, overloadRetries);
+                try {
+                    Thread.sleep(overloadBackoffMs * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private List<String> summarizeSegments(List<String> segments) {
+        // More concurrent calls than the lane can queue would only be rejected
+        int concurrency = Math.min(parallelism, llmScheduler.queueCapacity(LlmScheduler.Lane.BACKGROUND));
+        Semaphore permits = new Semaphore(Math.max(1, concurrency));
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<String>> futures = new ArrayList<>(segments.size());
+            for (String segment : segments) {
+                futures.add(executor.submit(() -> summarizeSegment(segment, permits)));
+            }
+
+            List<String> notes = new ArrayList<>(segments.size());
+            for (Future<String> future : futures) {
+                notes.add(future.get());
+            }
+            return notes;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new RuntimeException("Debrief segment failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Debrief interrupted", e);
+        }
+    }
+
+    private String summarizeSegment(String segment, Semaphore permits) throws InterruptedException {
+        segmentsSeen.incrementAndGet();
+        String prompt = prompts.render("debrief-segment", Map.of("segment", segment));
+        String key = LlmResponseCache.key(prompt);
+
+        String cached;
+        synchronized (segmentNotes) {
+            cached = segmentNotes.get(key);
+        }
+        if (cached != null) {
+            cacheHits.incrementAndGet();
+            return cached;
+        }
+
+        permits.acquire();
+        try {
+            String notes = generate(prompt).trim();
+            synchronized (segmentNotes) {
+                segmentNotes.put(key, notes);
+            }
+            return notes;
+        } finally {
+            permits.release();
+        }
+    }
+}
@@ -1,20 +1,25 @@
 package com.diplomat.service;
 
 import com.diplomat.dto.DiplomatResponse;
-import com.diplomat.model.Constitution;
-import com.diplomat.model.Conversation;
-import com.diplomat.model.Message;
-import dev.langchain4j.model.chat.ChatLanguageModel;
+import com.diplomat.model.MessageType;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.output.Response;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.io.ClassPathResource;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /**
  * The core brain of the Diplomat Agent. Analyzes conversations and decides
@@ -25,141 +30,120 @@ import java.util.stream.Collectors;
 @Slf4j
 public class DiplomatService {
 
-    private final ChatLanguageModel chatModel;
+    private final LlmScheduler llmScheduler;
+    private final MessageTriage messageTriage;
+    private final PromptTemplateRegistry prompts;
+    private final ConversationHistoryBuffer historyBuffer;
+    private final DebriefPipeline debriefPipeline;
+    private final LlmResponseCache responseCache;
+    private final ContextAssembler contextAssembler;
     private final ConversationService conversationService;
     private final ConstitutionService constitutionService;
 
-    private static final int CONTEXT_WINDOW = 30; // last N messages for context
     private static final String DIPLOMAT_SENDER = "DIPLOMAT";
 
+    @Value("${diplomat.triage.enabled:true}")
+    private boolean triageEnabled;
+
+    @Value("${diplomat.llm.prompt-mode:chat}")
+    private String promptMode;
+
+    /**
+     * Local pre-LLM check: should this chat message be analyzed at all?
+     * Uses the same effective interaction level as the analysis prompt.
+     */
+    public MessageTriage.Decision triage(String sessionCode, String newMessage) {
+        if (!triageEnabled) return MessageTriage.Decision.ESCALATE;
+        SessionInfo session = conversationService.getSession(sessionCode);
+        int effectiveLevel = session.effectiveLevel();
+        return messageTriage.assess(sessionCode, effectiveLevel, newMessage);
+    }
+
     /**
      * Analyze the latest message in context and decide whether to intervene.
      * Returns null if no intervention is needed.
      * May return a response with a recipient set for private coaching.
      */
     public DiplomatResponse analyzeAndRespond(String sessionCode, String sender, String newMessage) {
-        Conversation conv = conversationService.findBySessionCode(sessionCode)
-                .orElseThrow(() -> new RuntimeException("Session not found"));
-
-        // Use the higher of the two interaction levels (if either person wants help, they get it)
-        int effectiveLevel = Math.max(conv.getInteractionLevelA(), conv.getInteractionLevelB());
-
-        // Build context
-        List<Message> recentMessages = conversationService.getRecentMessages(sessionCode, CONTEXT_WINDOW);
-        String conversationHistory = formatConversationHistory(recentMessages);
-        String constitutionText = getConstitutionText(conv);
-        String systemPrompt = loadSystemPrompt();
+        SessionInfo session = conversationService.getSession(sessionCode);
 
-        // Build the full prompt
-        String fullPrompt = buildAnalysisPrompt(
-                systemPrompt, constitutionText, conversationHistory,
-                conv.getParticipantA(), conv.getParticipantB(),
-                sender, newMessage, conv.getMode(), effectiveLevel
-        );
+        List<ChatMessage> request = buildAnalysisRequest(session, sessionCode, sender, newMessage);
 
         log.debug("Sending analysis prompt to LLM for session {}", sessionCode);
 
         try {
-            String response = chatModel.generate(fullPrompt);
-            return parseResponse(response, conv.getParticipantA(), conv.getParticipantB());
+            String response = llmScheduler.generate(LlmScheduler.Lane.ANALYSIS, request);
+            return parseResponse(response, session.participantA(), session.participantB());
         } catch (Exception e) {
             log.error("LLM call failed for session {}: {}", sessionCode, e.getMessage());
             return null;
         }
     }
 
+    /**
+     * Streaming variant of {@link #analyzeAndRespond}. The response body is pushed to the
+     * listener as soon as the model gets past the TYPE/FALLACY/VISIBILITY header; a
+     * [NO_INTERVENTION] answer completes with null without emitting any tokens.
+     * Returns the model slot, for a caller that gives up on the stream to release.
+     */
+    public LlmScheduler.StreamSlot streamAnalysis(String sessionCode, String sender, String newMessage, DiplomatStreamListener listener) {
+        SessionInfo session = conversationService.getSession(sessionCode);
+
+        List<ChatMessage> request = buildAnalysisRequest(session, sessionCode, sender, newMessage);
+        String participantA = session.participantA();
+        String participantB = session.participantB();
+
+        log.debug("Streaming analysis prompt to LLM for session {}", sessionCode);
+
+        return llmScheduler.stream(LlmScheduler.Lane.ANALYSIS, request, new StreamHandler(listener, true, null, participantA, participantB,
+                raw -> parseResponse(raw, participantA, participantB),
+                e -> {
+                    log.error("LLM stream failed for session {}: {}", sessionCode, e.getMessage());
+                    return null;
+                }));
+    }
+
     /**
      * Respond to a private coaching message from a participant.
      * The Diplomat acts as a personal coach, giving advice privately.
      */
     public DiplomatResponse respondToPrivateMessage(String sessionCode, String participant, String message) {
-        Conversation conv = conversationService.findBySessionCode(sessionCode)
-                .orElseThrow(() -> new RuntimeException("Session not found"));
-
-        // Get recent conversation context (public + this user's private messages)
-        List<Message> recentMessages = conversationService.getRecentMessagesForParticipant(
-                sessionCode, participant, CONTEXT_WINDOW);
-        String conversationHistory = formatConversationHistory(recentMessages);
-        String constitutionText = getConstitutionText(conv);
-
-        String otherParticipant = participant.equals(conv.getParticipantA())
-                ? conv.getParticipantB() : conv.getParticipantA();
-
-        String prompt = """
-                You are The Diplomat — a private communication coach. %s has sent you a PRIVATE message
-                that the other participant (%s) cannot see.
-                
-                You are now in 1-on-1 coaching mode. Be warm, direct, and helpful.
-                
-                In this private channel you can:
-                - Help them understand their own feelings and reactions
-                - Suggest better ways to phrase what they want to say
-                - Help them see their partner's perspective
-                - Give them specific scripts or phrases to try
-                - Validate their feelings while challenging unhelpful patterns
-                - Help them prepare what to say before saying it in the shared chat
-                - Be more candid than you would be publicly
-                
-                === CONSTITUTION ===
-                %s
-                
-                === RECENT CONVERSATION (includes shared + private) ===
-                %s
-                
-                === %s's PRIVATE MESSAGE TO YOU ===
-                %s
-                
-                Respond directly, warmly, and helpfully. Keep it conversational — you're their coach, not a textbook.
-                Be brief (2-4 sentences) unless they're asking for something more detailed.
-                Do NOT use bracket formatting. Just respond naturally.
-                """.formatted(participant, otherParticipant, constitutionText,
-                conversationHistory, participant, message);
+        String prompt = buildPrivatePrompt(sessionCode, participant, message);
 
         try {
-            String response = chatModel.generate(prompt);
-            return DiplomatResponse.builder()
-                    .sender(DIPLOMAT_SENDER)
-                    .content(response)
-                    .responseType("PRIVATE_COACHING")
-                    .recipient(participant)
-                    .timestamp(LocalDateTime.now())
-                    .build();
+            String response = llmScheduler.generate(LlmScheduler.Lane.INTERACTIVE, prompt);
+            return privateCoaching(participant, response);
         } catch (Exception e) {
             log.error("Private coaching failed for {}: {}", participant, e.getMessage());
-            return DiplomatResponse.builder()
-                    .sender(DIPLOMAT_SENDER)
-                    .content("Sorry, I'm having trouble responding right now. Try again in a moment.")
-                    .responseType("PRIVATE_COACHING")
-                    .recipient(participant)
-                    .timestamp(LocalDateTime.now())
-                    .build();
+            return privateCoaching(participant, "Sorry, I'm having trouble responding right now. Try again in a moment.");
         }
     }
 
     /**
-     * Generate a conversation debrief/summary.
+     * Streaming variant of {@link #respondToPrivateMessage}. Tokens are addressed to the participant.
+     */
+    public LlmScheduler.StreamSlot streamPrivateResponse(String sessionCode, String participant, String message, DiplomatStreamListener listener) {
+        String prompt = buildPrivatePrompt(sessionCode, participant, message);
+
+        return llmScheduler.stream(LlmScheduler.Lane.INTERACTIVE, prompt, new StreamHandler(listener, false, participant, null, null,
+                raw -> privateCoaching(participant, raw),
+                e -> {
+                    log.error("Private coaching stream failed for {}: {}", participant, e.getMessage());
+                    return privateCoaching(participant, "Sorry, I'm having trouble responding right now. Try again in a moment.");
+                }));
+    }
+
+    /**
+     * Generate a conversation debrief/summary. Long transcripts are summarized in
+     * segments by the {@link DebriefPipeline}.
      */
     public DiplomatResponse generateDebrief(String sessionCode) {
-        List<Message> allMessages = conversationService.getAllMessages(sessionCode);
-        String history = formatConversationHistory(allMessages);
-
-        String prompt = """
-                You are The Diplomat, a communication mediator. Provide a brief, constructive debrief of this conversation.
-                
-                Include:
-                1. What went well — positive communication moments
-                2. Patterns observed — recurring themes or friction points
-                3. Fallacies detected — any logical fallacies that appeared
-                4. Suggestions — concrete tips for next time
-                
-                Keep it balanced, kind, and actionable. Don't take sides.
-                
-                Conversation:
-                %s
-                """.formatted(history);
+        List<String> lines = conversationService.getAllMessages(sessionCode).stream()
+                .map(ConversationHistoryBuffer::format)
+                .toList();
 
         try {
-            String response = chatModel.generate(prompt);
+            String response = debriefPipeline.debrief(lines);
             return DiplomatResponse.builder()
                     .sender(DIPLOMAT_SENDER)
                     .content(response)
@@ -177,37 +161,159 @@ public class DiplomatService {
         }
     }
 
+    /**
+     * {@link #generateDebrief} on a virtual thread, so the web request thread is not held
+     * while the model works.
+     */
+    public CompletableFuture<DiplomatResponse> generateDebriefAsync(String sessionCode) {
+        return CompletableFuture.supplyAsync(() -> generateDebrief(sessionCode), Thread::startVirtualThread);
+    }
+
     /**
      * Help refine the constitution with AI suggestions.
      */
     public String suggestConstitutionImprovement(String currentConstitution, String request) {
-        String prompt = """
-                You are helping a couple create their Communication Constitution — a set of agreed-upon rules
-                for how they communicate during difficult conversations. You are The Diplomat.
-                
-                Be directive and proactive — guide them toward best practices. If the current constitution
-                is missing important elements, proactively suggest additions. Make it feel collaborative,
-                not imposed.
-                
-                Current constitution:
-                %s
-                
-                Their request: %s
-                
-                Provide an updated version of the constitution incorporating their request.
-                Keep it clear, fair, and balanced. Use Markdown formatting.
-                Only output the updated constitution text, nothing else.
-                """.formatted(currentConstitution, request);
-
-        return chatModel.generate(prompt);
+        String prompt = prompts.render("constitution-suggest", Map.of(
+                "constitution", LlmResponseCache.normalize(currentConstitution),
+                "request", LlmResponseCache.normalize(request)));
+
+        return responseCache.get(LlmResponseCache.Region.SUGGEST, LlmResponseCache.key(prompt),
+                () -> llmScheduler.generate(LlmScheduler.Lane.BACKGROUND, prompt));
     }
 
     // --- Private helpers ---
 
+    /**
+     * Assemble the analysis request in the configured prompt mode. In "chat" mode everything
+     * that is fixed for the session comes first, so the model server can reuse its cached
+     * prefix; "flat" mode sends the original single-string prompt. Either way the history
+     * is fitted to the token budget by the {@link ContextAssembler}.
+     */
+    private List<ChatMessage> buildAnalysisRequest(SessionInfo session, String sessionCode, String sender, String newMessage) {
+        int effectiveLevel = session.effectiveLevel();
+
+        // Build context
+        ConversationHistoryBuffer.View buffered = historyBuffer.analysisView(sessionCode);
+        String constitutionText = getConstitutionText(session);
+        String systemPrompt = loadSystemPrompt();
+        String participantA = session.participantA();
+        String participantB = session.participantB();
+
+        if (!"chat".equalsIgnoreCase(promptMode)) {
+            String scaffold = buildAnalysisPrompt(systemPrompt, "", "", participantA, participantB,
+                    sender, "", session.mode().name(), effectiveLevel);
+            ContextAssembler.Assembly ctx = contextAssembler.assemble("analysis", scaffold, constitutionText, newMessage, buffered);
+            return List.of(UserMessage.from(buildAnalysisPrompt(
+                    systemPrompt, ctx.constitution(), ctx.history().render(),
+                    participantA, participantB,
+                    sender, ctx.message(), session.mode().name(), effectiveLevel
+            )));
+        }
+
+        String guidance = prompts.render("analysis-guidance", Map.of(
+                "mode", session.mode(),
+                "levelGuidance", levelGuidance(effectiveLevel)));
+        String scaffold = buildAnalysisSystemText(systemPrompt, "", participantA, participantB)
+                + guidance + analysisNewMessage(sender, "");
+        ContextAssembler.Assembly ctx = contextAssembler.assemble("analysis", scaffold, constitutionText, newMessage, buffered);
+        ConversationHistoryBuffer.View history = ctx.history();
+
+        List<ChatMessage> messages = new ArrayList<>(history.lines().size() + 4);
+        // 1. Fixed for the whole session: persona, constitution, participants, task rules
+        messages.add(SystemMessage.from(buildAnalysisSystemText(
+                systemPrompt, ctx.constitution(), participantA, participantB)));
+        // 2. Changes only when someone switches mode or moves a slider
+        messages.add(UserMessage.from(guidance));
+        // 3. Running summary of older turns, then append-only history, one turn per stored message
+        if (history.summary() != null) {
+            messages.add(UserMessage.from("(Earlier in this conversation: " + history.summary() + ")"));
+        }
+        if (history.lines().isEmpty()) {
+            messages.add(UserMessage.from("(conversation just started)"));
+        }
+        for (String line : history.lines()) {
+            messages.add(UserMessage.from(line));
+        }
+        // 4. The only part that is new on every call
+        messages.add(UserMessage.from(analysisNewMessage(sender, ctx.message())));
+        return messages;
+    }
+
+    private String analysisNewMessage(String sender, String message) {
+        return prompts.render("analysis-new-message", Map.of(
+                "sender", sender,
+                "message", message));
+    }
+
+    private String buildPrivatePrompt(String sessionCode, String participant, String message) {
+        SessionInfo session = conversationService.getSession(sessionCode);
+
+        // Get recent conversation context (public + this user's private messages)
+        ConversationHistoryBuffer.View buffered = historyBuffer.participantView(sessionCode, participant);
+        String constitutionText = getConstitutionText(session);
+
+        String otherParticipant = participant.equals(session.participantA())
+                ? session.participantB() : session.participantA();
+
+        String scaffold = renderPrivatePrompt(participant, otherParticipant, "", "", "");
+        ContextAssembler.Assembly ctx = contextAssembler.assemble("private", scaffold, constitutionText, message, buffered);
+        return renderPrivatePrompt(participant, otherParticipant, ctx.constitution(), ctx.history().render(), ctx.message());
+    }
+
+    private String renderPrivatePrompt(String participant, String otherParticipant,
+                                       String constitution, String history, String message) {
+        return prompts.render("private-coaching", Map.of(
+                "participant", participant,
+                "otherParticipant", otherParticipant,
+                "constitution", constitution,
+                "history", history,
+                "message", message));
+    }
+
+    private DiplomatResponse privateCoaching(String participant, String content) {
+        return DiplomatResponse.builder()
+                .sender(DIPLOMAT_SENDER)
+                .content(content)
+                .responseType("PRIVATE_COACHING")
+                .recipient(participant)
+                .timestamp(LocalDateTime.now())
+                .build();
+    }
+
     private String buildAnalysisPrompt(String systemPrompt, String constitution,
                                         String history, String participantA, String participantB,
                                         String sender, String newMessage, String mode, int interactionLevel) {
-        String levelGuidance = switch (interactionLevel) {
+        return prompts.render("analysis", Map.of(
+                "systemPrompt", systemPrompt,
+                "constitution", constitution,
+                "participantA", participantA,
+                "participantB", participantB,
+                "mode", mode,
+                "levelGuidance", levelGuidance(interactionLevel),
+                "history", history,
+                "sender", sender,
+                "message", newMessage,
+                "instructions", analysisInstructions(participantA, participantB)));
+    }
+
+    private String buildAnalysisSystemText(String systemPrompt, String constitution,
+                                           String participantA, String participantB) {
+        return prompts.render("analysis-system", Map.of(
+                "systemPrompt", systemPrompt,
+                "constitution", constitution,
+                "participantA", participantA,
+                "participantB", participantB,
+                "instructions", analysisInstructions(participantA, participantB)));
+    }
+
+    private String analysisInstructions(String participantA, String participantB) {
+        return prompts.render("analysis-instructions", Map.of(
+                "participantA", participantA,
+                "participantB", participantB));
+    }
+
+    private String levelGuidance(int interactionLevel) {
+        return switch (interactionLevel) {
             case 1, 2 -> "INTERACTION LEVEL: MINIMAL (" + interactionLevel + "/10). Stay almost completely silent. Only intervene for serious fallacies or personal attacks. Let them work it out.";
             case 3, 4 -> "INTERACTION LEVEL: LOW (" + interactionLevel + "/10). Intervene sparingly — only for clear fallacies, constitution violations, or sharp escalation. No reframes or observations unless critical.";
             case 5, 6 -> "INTERACTION LEVEL: BALANCED (" + interactionLevel + "/10). Intervene when genuinely helpful — fallacies, escalation, good reframing opportunities. Don't comment on every message.";
@@ -215,72 +321,6 @@ public class DiplomatService {
             case 9, 10 -> "INTERACTION LEVEL: VERY DIRECTIVE (" + interactionLevel + "/10). Actively mediate like a counselor. Summarize each person's points. Ask clarifying questions. Guide the conversation structure. Suggest next topics. Offer 'What I Heard' reflections frequently.";
             default -> "INTERACTION LEVEL: BALANCED (5/10).";
         };
-
-        return """
-                %s
-                
-                === CONSTITUTION (agreed upon rules) ===
-                %s
-                
-                === PARTICIPANTS ===
-                Person A: %s
-                Person B: %s
-                
-                === CONVERSATION MODE ===
-                %s
-                
-                === %s ===
-                
-                === RECENT CONVERSATION ===
-                %s
-                
-                === NEW MESSAGE ===
-                %s: %s
-                
-                === YOUR TASK ===
-                Analyze the new message in context. Decide if you should intervene.
-                
-                If you should intervene, respond with EXACTLY this format:
-                [TYPE: OBSERVATION|REFRAME|FALLACY_ALERT|TEMPERATURE_CHECK|CONSTITUTION_REMINDER|REFLECTION|APPRECIATION_PROMPT]
-                [FALLACY: name_of_fallacy or NONE]
-                [VISIBILITY: PUBLIC or PRIVATE_TO_%s or PRIVATE_TO_%s]
-                [RESPONSE: your message to the participants]
-                
-                VISIBILITY guidance:
-                - Use PUBLIC for most interventions (both people should see it)
-                - Use PRIVATE_TO_name when you want to privately coach just one person:
-                  * Suggesting a better way to phrase something BEFORE they say it
-                  * Pointing out their own pattern without embarrassing them
-                  * Offering encouragement or validation privately
-                  * Giving them a heads-up about how their message might land
-                
-                If no intervention is needed, respond with exactly:
-                [NO_INTERVENTION]
-                
-                Intervene when you see:
-                - Logical fallacies (ad hominem, straw man, whataboutism, false equivalence, hasty generalization, etc.)
-                - Escalation or rising tension
-                - Constitution rule violations
-                - Statements that could be reframed more constructively
-                - One person dominating or the other withdrawing
-                - Opportunities for positive reinforcement
-                - Moments where summarizing what someone said would help ("What I heard you say is...")
-                
-                === CONFIDENTIAL CONTEXT RULES ===
-                The conversation history may contain lines marked [CONFIDENTIAL — PRIVATE TO name].
-                These are private coaching messages between you and one participant. CRITICAL RULES:
-                - NEVER quote, paraphrase, or directly reference anything from private messages in public responses
-                - NEVER say "you told me privately" or "in our private chat" or anything that reveals the private channel exists to the other person
-                - DO use the emotional context and insights from private messages to guide your public interventions more skillfully
-                - For example: if someone privately told you they feel unheard, you can publicly suggest a reflection exercise — without revealing why
-                - If someone privately asked for help phrasing something, watch for them to try it and offer subtle encouragement
-                - Think of private context as background knowledge that makes you a better mediator, not as content to share
-                
-                Adjust your intervention frequency based on the interaction level above.
-                In FREE_TALK mode, lean toward observing. In GUIDED mode, actively facilitate and structure.
-                Be warm, brief, and non-judgmental. Never take sides. You are The Diplomat.
-                """.formatted(systemPrompt, constitution, participantA, participantB,
-                mode, levelGuidance, history, sender, newMessage, participantA, participantB);
     }
 
     private DiplomatResponse parseResponse(String raw, String participantA, String participantB) {
@@ -307,28 +347,32 @@ public class DiplomatService {
         if (type == null) type = "OBSERVATION";
 
         // Determine recipient from visibility
-        String recipient = null;
+        String recipient = resolveRecipient(visibility, participantA, participantB);
+
+        return DiplomatResponse.builder()
+                .sender(DIPLOMAT_SENDER)
+                .content(response)
+                .responseType(MessageType.parse(type).name())
+                .fallacyType(fallacy)
+                .recipient(recipient)
+                .timestamp(LocalDateTime.now())
+                .build();
+    }
+
+    private String resolveRecipient(String visibility, String participantA, String participantB) {
         if (visibility != null) {
             String vis = visibility.trim().toUpperCase();
             if (vis.startsWith("PRIVATE_TO_")) {
                 String targetName = visibility.trim().substring("PRIVATE_TO_".length()).trim();
                 // Match against participant names (case-insensitive)
                 if (targetName.equalsIgnoreCase(participantA)) {
-                    recipient = participantA;
+                    return participantA;
                 } else if (targetName.equalsIgnoreCase(participantB)) {
-                    recipient = participantB;
+                    return participantB;
                 }
             }
         }
-
-        return DiplomatResponse.builder()
-                .sender(DIPLOMAT_SENDER)
-                .content(response)
-                .responseType(type.trim())
-                .fallacyType(fallacy)
-                .recipient(recipient)
-                .timestamp(LocalDateTime.now())
-                .build();
+        return null;
     }
 
     private String extractBracketValue(String text, String key) {
@@ -340,81 +384,165 @@ public class DiplomatService {
         return null;
     }
 
-    private String formatConversationHistory(List<Message> messages) {
-        if (messages.isEmpty()) return "(conversation just started)";
-        return messages.stream()
-                .map(m -> {
-                    if (m.getRecipient() != null) {
-                        return "[CONFIDENTIAL — PRIVATE TO %s] %s [%s]: %s".formatted(
-                                m.getRecipient(), m.getSender(), m.getMessageType(), m.getContent());
-                    }
-                    return "%s [%s]: %s".formatted(m.getSender(), m.getMessageType(), m.getContent());
-                })
-                .collect(Collectors.joining("\n"));
-    }
-
-    private String getConstitutionText(Conversation conv) {
-        if (conv.getConstitution() != null) {
-            return conv.getConstitution().getContent();
+    private String getConstitutionText(SessionInfo session) {
+        if (session.constitutionText() != null) {
+            return session.constitutionText();
         }
         return "(No constitution set for this session — using general best practices)";
     }
 
     private String loadSystemPrompt() {
-        try {
-            ClassPathResource resource = new ClassPathResource("prompts/diplomat-system.txt");
-            return new String(resource.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
-        } catch (IOException e) {
-            log.warn("Could not load system prompt file, using default");
-            return getDefaultSystemPrompt();
-        }
-    }
-
-    private String getDefaultSystemPrompt() {
-        return """
-                You are The Diplomat — an AI communication mediator helping two people have more productive conversations.
-                You are warm, neutral, and insightful. You never take sides.
-                Your job is to observe, translate, and gently intervene when communication breaks down.
-                You are directive about establishing good communication practices and the constitution.
-                """;
+        return prompts.get("diplomat-system").text();
     }
 
     /**
      * Translate a message from one person into what they likely meant underneath.
      */
     public DiplomatResponse translateMessage(String sessionCode, String originalSender, String messageContent) {
-        String prompt = """
-                You are The Diplomat, a relationship translator. Reframe this statement to reveal the underlying
-                feeling and need, without losing the speaker's intent.
-                
-                %s said: "%s"
-                
-                Provide a brief, warm translation that:
-                1. Removes blame language
-                2. Expresses the underlying feeling ("I feel...")
-                3. States the underlying need ("I need...")
-                4. Keeps it natural and conversational
-                
-                Respond with ONLY the translated version, like:
-                "What [name] might be trying to say is: ..."
-                """.formatted(originalSender, messageContent);
+        String prompt = buildTranslatePrompt(originalSender, messageContent);
 
         try {
-            String response = chatModel.generate(prompt);
-            return DiplomatResponse.builder()
-                    .sender(DIPLOMAT_SENDER)
-                    .content(response)
-                    .responseType("TRANSLATION")
-                    .timestamp(LocalDateTime.now())
-                    .build();
+            String response = responseCache.get(LlmResponseCache.Region.TRANSLATE, LlmResponseCache.key(prompt),
+                    () -> llmScheduler.generate(LlmScheduler.Lane.INTERACTIVE, prompt));
+            return translation(response);
         } catch (Exception e) {
             log.error("Translation failed: {}", e.getMessage());
-            return DiplomatResponse.builder()
-                    .sender(DIPLOMAT_SENDER)
-                    .content("Sorry, I couldn't translate that right now.")
-                    .responseType("TRANSLATION")
-                    .timestamp(LocalDateTime.now())
-                    .build();
+            return translation("Sorry, I couldn't translate that right now.");
+        }
+    }
+
+    /**
+     * Streaming variant of {@link #translateMessage}. Translations are always public.
+     * A cached translation, or one another caller is already streaming, is delivered
+     * whole as the final response without any tokens.
+     */
+    public LlmScheduler.StreamSlot streamTranslation(String sessionCode, String originalSender, String messageContent, DiplomatStreamListener listener) {
+        String prompt = buildTranslatePrompt(originalSender, messageContent);
+
+        LlmScheduler.StreamSlot[] streaming = {null};
+        CompletableFuture<String> result = responseCache.getAsync(LlmResponseCache.Region.TRANSLATE, LlmResponseCache.key(prompt), future -> {
+            streaming[0] = llmScheduler.stream(LlmScheduler.Lane.INTERACTIVE, prompt, new StreamHandler(listener, false, null, null, null,
+                    raw -> {
+                        future.complete(raw);
+                        return translation(raw);
+                    },
+                    e -> {
+                        future.completeExceptionally(e);
+                        log.error("Translation stream failed: {}", e.getMessage());
+                        return translation("Sorry, I couldn't translate that right now.");
+                    }));
+        });
+        if (streaming[0] != null) return streaming[0];
+
+        String responseId = UUID.randomUUID().toString();
+        result.whenComplete((text, error) -> {
+            DiplomatResponse response = error == null ? translation(text)
+                    : translation("Sorry, I couldn't translate that right now.");
+            response.setResponseId(responseId);
+            listener.onComplete(responseId, response);
+        });
+        return LlmScheduler.StreamSlot.NONE;
+    }
+
+    private String buildTranslatePrompt(String originalSender, String messageContent) {
+        return prompts.render("translator", Map.of(
+                "sender", LlmResponseCache.normalize(originalSender),
+                "message", LlmResponseCache.normalize(messageContent)));
+    }
+
+    private DiplomatResponse translation(String content) {
+        return DiplomatResponse.builder()
+                .sender(DIPLOMAT_SENDER)
+                .content(content)
+                .responseType("TRANSLATION")
+                .timestamp(LocalDateTime.now())
+                .build();
+    }
+
+    /**
+     * Bridges a langchain4j token stream to a {@link DiplomatStreamListener}.
+     * In structured mode the analysis header is buffered until "[RESPONSE:" shows up,
+     * so visibility is known before the first token goes out, and trailing brackets
+     * are held back until more text proves they are part of the message.
+     */
+    private class StreamHandler implements StreamingResponseHandler<AiMessage> {
+
+        private static final String RESPONSE_MARKER = "[RESPONSE:";
+
+        private final String responseId = UUID.randomUUID().toString();
+        private final DiplomatStreamListener listener;
+        private final boolean structured;
+        private final String participantA;
+        private final String participantB;
+        private final Function<String, DiplomatResponse> finisher;
+        private final Function<Throwable, DiplomatResponse> fallback;
+        private final StringBuilder buffer = new StringBuilder();
+
+        private String recipient;
+        private int emitted = -1; // buffer index up to which tokens were forwarded; -1 = body not reached
+        private boolean started;
+        private boolean suppressed;
+
+        StreamHandler(DiplomatStreamListener listener, boolean structured, String recipient,
+                      String participantA, String participantB,
+                      Function<String, DiplomatResponse> finisher,
+                      Function<Throwable, DiplomatResponse> fallback) {
+            this.listener = listener;
+            this.structured = structured;
+            this.recipient = recipient;
+            this.participantA = participantA;
+            this.participantB = participantB;
+            this.finisher = finisher;
+            this.fallback = fallback;
+            if (!structured) emitted = 0;
+        }
+
+        @Override
+        public void onNext(String token) {
+            buffer.append(token);
+            if (suppressed) return;
+
+            if (emitted < 0) {
+                if (buffer.indexOf("[NO_INTERVENTION]") >= 0) {
+                    suppressed = true;
+                    return;
+                }
+                int marker = buffer.indexOf(RESPONSE_MARKER);
+                if (marker < 0) return;
+                recipient = resolveRecipient(
+                        extractBracketValue(buffer.substring(0, marker), "VISIBILITY"), participantA, participantB);
+                emitted = marker + RESPONSE_MARKER.length();
+            }
+
+            if (!started) {
+                while (emitted < buffer.length() && Character.isWhitespace(buffer.charAt(emitted))) emitted++;
+            }
+            int end = buffer.length();
+            if (structured) {
+                while (end > emitted && (buffer.charAt(end - 1) == ']' || Character.isWhitespace(buffer.charAt(end - 1)))) end--;
+            }
+            if (end > emitted) {
+                listener.onToken(responseId, recipient, buffer.substring(emitted, end));
+                emitted = end;
+                started = true;
+            }
+        }
+
+        @Override
+        public void onComplete(Response<AiMessage> response) {
+            String raw = response.content() != null && response.content().text() != null
+                    ? response.content().text() : buffer.toString();
+            complete(finisher.apply(raw));
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            complete(fallback.apply(error));
+        }
+
+        private void complete(DiplomatResponse result) {
+            if (result != null) result.setResponseId(responseId);
+            listener.onComplete(responseId, result);
         }
     }
 }
@@ -0,0 +1,22 @@
+package com.diplomat.service;
+
+import com.diplomat.dto.DiplomatResponse;
+
+/**
+ * Receives a Diplomat response as it is generated. Tokens arrive on the model
+ * client's thread, followed by exactly one completion call.
+ */
+public interface DiplomatStreamListener {
+
+    /**
+     * A partial chunk of the response text. The recipient is null for public
+     * responses, or the participant the response is privately addressed to.
+     */
+    void onToken(String responseId, String recipient, String token);
+
+    /**
+     * The finished response, or null if The Diplomat decided not to intervene
+     * (or the call failed) and any streamed chunks should be discarded.
+     */
+    void onComplete(String responseId, DiplomatResponse response);
+}
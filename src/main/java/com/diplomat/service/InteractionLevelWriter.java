@@ -0,0 +1,111 @@
+package com.diplomat.service;
+
+import com.diplomat.model.ParticipantRole;
+import com.diplomat.repository.ConversationRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Debounced persistence for interaction levels. A slider drag sends a stream of changes;
+ * {@link SessionRegistry} takes each one at once, and only the last value is written once
+ * the participant has stopped moving the slider for {@code debounce-ms}.
+ *
+ * <p>Anything that reloads the session from the database must {@link #flush} it first, or
+ * it would read a level that is about to be overwritten.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class InteractionLevelWriter {
+
+    private record Key(String sessionCode, ParticipantRole role) {
+    }
+
+    private record Pending(int level, ScheduledFuture<?> write) {
+    }
+
+    private final ConversationRepository conversationRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${diplomat.sessions.level-debounce-ms:500}")
+    private long debounceMs;
+
+    private final Map<Key, Pending> pending = new ConcurrentHashMap<>();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("level-writer").daemon().factory());
+
+    @PreDestroy
+    void stop() {
+        scheduler.shutdownNow();
+        pending.keySet().forEach(this::writeNow);
+    }
+
+    /**
+     * Write {@code level} for a participant after the debounce delay, replacing any write
+     * still waiting for the same participant.
+     */
+    public void submit(String sessionCode, ParticipantRole role, int level) {
+        Key key = new Key(sessionCode, role);
+        submitted.incrementAndGet();
+        pending.compute(key, (k, previous) -> {
+            if (previous != null) previous.write().cancel(false);
+            return new Pending(level, scheduler.schedule(() -> writeNow(k), debounceMs, TimeUnit.MILLISECONDS));
+        });
+    }
+
+    /**
+     * Write any pending levels of a session now.
+     */
+    public void flush(String sessionCode) {
+        for (ParticipantRole role : new ParticipantRole[]{ParticipantRole.PARTICIPANT_A, ParticipantRole.PARTICIPANT_B}) {
+            Key key = new Key(sessionCode, role);
+            Pending p = pending.get(key);
+            if (p != null) {
+                p.write().cancel(false);
+                writeNow(key);
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long requests = submitted.get();
+        stats.put("submitted", requests);
+        stats.put("written", written.get());
+        stats.put("pending", pending.size());
+        stats.put("writesSaved", requests == 0 ? 0.0 : 1.0 - (double) written.get() / requests);
+        return stats;
+    }
+
+    private void writeNow(Key key) {
+        Pending p = pending.remove(key);
+        if (p == null) return; // already written by a flush
+        try {
+            if (key.role() == ParticipantRole.PARTICIPANT_A) {
+                conversationRepository.updateInteractionLevelA(key.sessionCode(), p.level());
+            } else {
+                conversationRepository.updateInteractionLevelB(key.sessionCode(), p.level());
+            }
+            written.incrementAndGet();
+            eventPublisher.publishEvent(new SessionChangedEvent(key.sessionCode()));
+        } catch (RuntimeException e) {
+            log.error("Failed to save interaction level {} for {} in session {}: {}",
+                    p.level(), key.role(), key.sessionCode(), e.getMessage());
+        }
+    }
+}
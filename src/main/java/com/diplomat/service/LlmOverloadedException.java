@@ -0,0 +1,11 @@
+package com.diplomat.service;
+
+/**
+ * Thrown when the LLM scheduler rejects or sheds a request because its lane queue is full.
+ */
+public class LlmOverloadedException extends RuntimeException {
+
+    public LlmOverloadedException(String message) {
+        super(message);
+    }
+}
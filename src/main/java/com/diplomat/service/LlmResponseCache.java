@@ -0,0 +1,191 @@
+package com.diplomat.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.EnumMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Bounded LRU + TTL cache for LLM calls whose answer depends only on their prompt
+ * (translate, constitution suggestions). Concurrent identical requests are collapsed
+ * into one model call; failures are never cached.
+ */
+@Service
+public class LlmResponseCache {
+
+    public enum Region {
+        TRANSLATE,
+        SUGGEST
+    }
+
+    private record Entry(String value, long expiresAt) {
+    }
+
+    private static class RegionStats {
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong misses = new AtomicLong();
+        final AtomicLong joined = new AtomicLong();
+        final AtomicLong expired = new AtomicLong();
+        final AtomicLong evicted = new AtomicLong();
+    }
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    @Value("${diplomat.cache.max-entries:500}")
+    private int maxEntries;
+
+    @Value("${diplomat.cache.ttl-minutes:60}")
+    private long ttlMinutes;
+
+    private final Map<Region, Map<String, Entry>> entries = new EnumMap<>(Region.class);
+    private final Map<Region, RegionStats> regionStats = new EnumMap<>(Region.class);
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        for (Region region : Region.values()) {
+            RegionStats stats = new RegionStats();
+            regionStats.put(region, stats);
+            entries.put(region, new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    if (size() <= maxEntries) return false;
+                    stats.evicted.incrementAndGet();
+                    return true;
+                }
+            });
+        }
+    }
+
+    /**
+     * Canonical form of a user-supplied input: NFC, trimmed, whitespace runs collapsed.
+     */
+    public static String normalize(String input) {
+        if (input == null) return "";
+        return WHITESPACE.matcher(Normalizer.normalize(input, Normalizer.Form.NFC).strip()).replaceAll(" ");
+    }
+
+    /**
+     * Cache key for a prompt rendered from normalized inputs. Keying on the full prompt
+     * means an edited template never serves answers produced by the old one.
+     */
+    public static String key(String prompt) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(prompt.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Blocking lookup. Returns the cached value, waits for an identical call already in
+     * flight, or runs the loader. Loader exceptions propagate and are not cached.
+     */
+    public String get(Region region, String key, Supplier<String> loader) {
+        CompletableFuture<String> result = getAsync(region, key, future -> {
+            try {
+                future.complete(loader.get());
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+    }
+
+    /**
+     * Non-blocking lookup. On a miss the loader is called with the future it must complete;
+     * this is how streaming calls fill the cache when their stream finishes. Callers that
+     * arrive while it is pending get the same future.
+     */
+    public CompletableFuture<String> getAsync(Region region, String key, Consumer<CompletableFuture<String>> loader) {
+        RegionStats stats = regionStats.get(region);
+        String cached = lookup(region, key);
+        if (cached != null) {
+            stats.hits.incrementAndGet();
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<String> created = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(region + ":" + key, created);
+        if (existing != null) {
+            stats.joined.incrementAndGet();
+            return existing;
+        }
+
+        stats.misses.incrementAndGet();
+        created.whenComplete((value, error) -> {
+            if (error == null && value != null && !value.isBlank()) {
+                store(region, key, value);
+            }
+            inFlight.remove(region + ":" + key, created);
+        });
+        loader.accept(created);
+        return created;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (Region region : Region.values()) {
+            RegionStats s = regionStats.get(region);
+            long hits = s.hits.get() + s.joined.get();
+            long lookups = hits + s.misses.get();
+            Map<String, Object> regionMap = new LinkedHashMap<>();
+            Map<String, Entry> map = entries.get(region);
+            synchronized (map) {
+                regionMap.put("size", map.size());
+            }
+            regionMap.put("hits", s.hits.get());
+            regionMap.put("joined", s.joined.get());
+            regionMap.put("misses", s.misses.get());
+            regionMap.put("hitRate", lookups == 0 ? 0.0 : (double) hits / lookups);
+            regionMap.put("expired", s.expired.get());
+            regionMap.put("evicted", s.evicted.get());
+            stats.put(region.name().toLowerCase(), regionMap);
+        }
+        return stats;
+    }
+
+    private String lookup(Region region, String key) {
+        Map<String, Entry> map = entries.get(region);
+        synchronized (map) {
+            Entry entry = map.get(key);
+            if (entry == null) return null;
+            if (entry.expiresAt() < System.currentTimeMillis()) {
+                map.remove(key);
+                regionStats.get(region).expired.incrementAndGet();
+                return null;
+            }
+            return entry.value();
+        }
+    }
+
+    private void store(Region region, String key, String value) {
+        Map<String, Entry> map = entries.get(region);
+        long expiresAt = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(ttlMinutes);
+        synchronized (map) {
+            map.put(key, new Entry(value, expiresAt));
+        }
+    }
+}
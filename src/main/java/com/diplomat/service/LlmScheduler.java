@@ -0,0 +1,322 @@
+package com.diplomat.service;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control in front of the chat models. All LLM calls go through here so a
+ * single model server sees at most {@code max-concurrent} requests at once. Waiting
+ * calls sit in bounded per-lane queues and are admitted strictly by lane priority.
+ *
+ * <p>Overflow policy: a full ANALYSIS lane sheds its oldest queued request (newer
+ * messages make it stale anyway); full INTERACTIVE and BACKGROUND lanes reject the
+ * new request with {@link LlmOverloadedException}. A request still queued after
+ * {@code admission-timeout-seconds} gives up the same way.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LlmScheduler {
+
+    /**
+     * Priority lanes, highest first.
+     */
+    public enum Lane {
+        INTERACTIVE, // private coaching, translate
+        ANALYSIS,    // background chat analysis
+        BACKGROUND   // debrief, constitution suggestions
+    }
+
+    /**
+     * A streaming call's hold on its model slot. Completion or error releases it; a caller
+     * that stops waiting for a hung stream releases it early so the other lanes can move.
+     */
+    public interface StreamSlot {
+        StreamSlot NONE = () -> { };
+
+        void release();
+    }
+
+    private static class Job {
+        final Lane lane;
+        final CompletableFuture<Void> admission = new CompletableFuture<>();
+
+        Job(Lane lane) {
+            this.lane = lane;
+        }
+    }
+
+    private static class LaneStats {
+        final AtomicLong submitted = new AtomicLong();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong shed = new AtomicLong();
+        final AtomicLong queueWaitNanos = new AtomicLong();
+        final AtomicLong maxQueueWaitNanos = new AtomicLong();
+        final AtomicLong modelNanos = new AtomicLong();
+    }
+
+    private final ChatLanguageModel chatModel;
+    private final StreamingChatLanguageModel streamingChatModel;
+
+    @Value("${diplomat.llm.provider:ollama}")
+    private String provider;
+
+    @Value("${diplomat.llm.ollama.max-concurrent:1}")
+    private int ollamaMaxConcurrent;
+
+    @Value("${diplomat.llm.openai.max-concurrent:8}")
+    private int openaiMaxConcurrent;
+
+    @Value("${diplomat.llm.scheduler.queue-capacity.interactive:16}")
+    private int interactiveCapacity;
+
+    @Value("${diplomat.llm.scheduler.queue-capacity.analysis:32}")
+    private int analysisCapacity;
+
+    @Value("${diplomat.llm.scheduler.queue-capacity.background:4}")
+    private int backgroundCapacity;
+
+    @Value("${diplomat.llm.scheduler.admission-timeout-seconds:120}")
+    private long admissionTimeoutSeconds;
+
+    private final Object lock = new Object();
+    private final Map<Lane, Deque<Job>> queues = new EnumMap<>(Lane.class);
+    private final Map<Lane, Integer> capacities = new EnumMap<>(Lane.class);
+    private final Map<Lane, LaneStats> laneStats = new EnumMap<>(Lane.class);
+    private int maxConcurrent;
+    private int inFlight;
+
+    @PostConstruct
+    void init() {
+        maxConcurrent = Math.max(1, "openai".equalsIgnoreCase(provider) ? openaiMaxConcurrent : ollamaMaxConcurrent);
+        capacities.put(Lane.INTERACTIVE, interactiveCapacity);
+        capacities.put(Lane.ANALYSIS, analysisCapacity);
+        capacities.put(Lane.BACKGROUND, backgroundCapacity);
+        for (Lane lane : Lane.values()) {
+            if (capacities.get(lane) < 1) {
+                throw new IllegalStateException("diplomat.llm.scheduler.queue-capacity." + lane.name().toLowerCase()
+                        + " must be at least 1, was " + capacities.get(lane));
+            }
+            queues.put(lane, new ArrayDeque<>());
+            laneStats.put(lane, new LaneStats());
+        }
+        log.info("LLM scheduler: provider={}, maxConcurrent={}, queue capacities={}", provider, maxConcurrent, capacities);
+    }
+
+    /**
+     * Blocking generation. Waits for admission in the given lane, then calls the model.
+     */
+    public String generate(Lane lane, String prompt) {
+        return generate(lane, List.of(UserMessage.from(prompt)));
+    }
+
+    /**
+     * Blocking generation for a multi-message prompt. Returns the response text.
+     */
+    public String generate(Lane lane, List<ChatMessage> messages) {
+        long waitNanos = acquire(lane);
+        long start = System.nanoTime();
+        try {
+            return chatModel.generate(messages).content().text();
+        } finally {
+            release(lane, waitNanos, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Streaming generation. The slot is held until the handler's onComplete or onError, or
+     * until the returned slot is released. A rejected or failed admission is reported through
+     * {@code handler.onError} and returns {@link StreamSlot#NONE}.
+     */
+    public StreamSlot stream(Lane lane, String prompt, StreamingResponseHandler<AiMessage> handler) {
+        return stream(lane, List.of(UserMessage.from(prompt)), handler);
+    }
+
+    /**
+     * Streaming generation for a multi-message prompt.
+     */
+    public StreamSlot stream(Lane lane, List<ChatMessage> messages, StreamingResponseHandler<AiMessage> handler) {
+        long waitNanos;
+        try {
+            waitNanos = acquire(lane);
+        } catch (LlmOverloadedException e) {
+            handler.onError(e);
+            return StreamSlot.NONE;
+        }
+
+        long start = System.nanoTime();
+        AtomicBoolean released = new AtomicBoolean();
+        StreamSlot done = () -> {
+            if (released.compareAndSet(false, true)) {
+                release(lane, waitNanos, System.nanoTime() - start);
+            }
+        };
+
+        try {
+            streamingChatModel.generate(messages, new StreamingResponseHandler<>() {
+                @Override
+                public void onNext(String token) {
+                    handler.onNext(token);
+                }
+
+                @Override
+                public void onComplete(Response<AiMessage> response) {
+                    done.release();
+                    handler.onComplete(response);
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    done.release();
+                    handler.onError(error);
+                }
+            });
+        } catch (RuntimeException e) {
+            done.release();
+            handler.onError(e);
+        }
+        return done;
+    }
+
+    /**
+     * How many requests the lane queues before it starts rejecting (or shedding).
+     */
+    public int queueCapacity(Lane lane) {
+        return capacities.get(lane);
+    }
+
+    /**
+     * Per-lane counters plus queue wait and model time, reported separately.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (lock) {
+            stats.put("maxConcurrent", maxConcurrent);
+            stats.put("inFlight", inFlight);
+        }
+        for (Lane lane : Lane.values()) {
+            LaneStats s = laneStats.get(lane);
+            long completed = s.completed.get();
+            Map<String, Object> laneMap = new LinkedHashMap<>();
+            synchronized (lock) {
+                laneMap.put("queued", queues.get(lane).size());
+            }
+            laneMap.put("submitted", s.submitted.get());
+            laneMap.put("completed", completed);
+            laneMap.put("rejected", s.rejected.get());
+            laneMap.put("shed", s.shed.get());
+            laneMap.put("avgQueueWaitMs", completed == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(s.queueWaitNanos.get() / completed));
+            laneMap.put("maxQueueWaitMs", TimeUnit.NANOSECONDS.toMillis(s.maxQueueWaitNanos.get()));
+            laneMap.put("avgModelMs", completed == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(s.modelNanos.get() / completed));
+            stats.put(lane.name().toLowerCase(), laneMap);
+        }
+        return stats;
+    }
+
+    /**
+     * Blocks until the job is admitted. Returns the time spent queued, in nanos. Gives up
+     * with {@link LlmOverloadedException} after the admission timeout or on interrupt.
+     */
+    private long acquire(Lane lane) {
+        LaneStats s = laneStats.get(lane);
+        s.submitted.incrementAndGet();
+        long enqueued = System.nanoTime();
+        Job job = new Job(lane);
+
+        synchronized (lock) {
+            if (inFlight < maxConcurrent) {
+                inFlight++;
+                return 0;
+            }
+            Deque<Job> queue = queues.get(lane);
+            if (queue.size() >= capacities.get(lane)) {
+                if (lane != Lane.ANALYSIS) {
+                    s.rejected.incrementAndGet();
+                    throw new LlmOverloadedException("LLM " + lane + " queue is full");
+                }
+                Job stale = queue.pollFirst();
+                s.shed.incrementAndGet();
+                stale.admission.completeExceptionally(
+                        new LlmOverloadedException("Shed stale analysis request under load"));
+            }
+            queue.addLast(job);
+        }
+
+        try {
+            job.admission.get(admissionTimeoutSeconds, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw unwrap(job.admission);
+        } catch (TimeoutException | InterruptedException e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            synchronized (lock) {
+                // Still queued: withdraw. Otherwise release() or shedding completed the
+                // admission while we gave up; a granted slot goes straight to the next job.
+                if (!queues.get(lane).remove(job)) {
+                    if (job.admission.isCompletedExceptionally()) throw unwrap(job.admission);
+                    handOffSlot();
+                }
+            }
+            s.rejected.incrementAndGet();
+            throw new LlmOverloadedException(e instanceof TimeoutException
+                    ? "LLM " + lane + " request not admitted within " + admissionTimeoutSeconds + "s"
+                    : "Interrupted waiting for the LLM " + lane + " lane");
+        }
+        return System.nanoTime() - enqueued;
+    }
+
+    private static RuntimeException unwrap(CompletableFuture<Void> admission) {
+        Throwable cause = admission.exceptionNow();
+        return cause instanceof RuntimeException re ? re : new IllegalStateException(cause);
+    }
+
+    private void release(Lane lane, long waitNanos, long modelNanos) {
+        LaneStats s = laneStats.get(lane);
+        s.completed.incrementAndGet();
+        s.queueWaitNanos.addAndGet(waitNanos);
+        s.maxQueueWaitNanos.accumulateAndGet(waitNanos, Math::max);
+        s.modelNanos.addAndGet(modelNanos);
+        log.debug("LLM {} call: queue wait {} ms, model {} ms", lane,
+                TimeUnit.NANOSECONDS.toMillis(waitNanos), TimeUnit.NANOSECONDS.toMillis(modelNanos));
+
+        synchronized (lock) {
+            handOffSlot();
+        }
+    }
+
+    // Caller holds the lock
+    private void handOffSlot() {
+        for (Lane next : Lane.values()) {
+            Job job = queues.get(next).pollFirst();
+            if (job != null) {
+                // Hand the slot straight to the next job; inFlight stays the same
+                job.admission.complete(null);
+                return;
+            }
+        }
+        inFlight--;
+    }
+}
@@ -0,0 +1,388 @@
+package com.diplomat.service;
+
+import com.diplomat.dto.MessageDto;
+import com.diplomat.model.ArchivedSession;
+import com.diplomat.repository.ArchivedSessionRepository;
+import com.diplomat.repository.ConversationRepository;
+import com.diplomat.repository.MessageRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Cold storage for ended conversations. Messages of sessions that ended more than
+ * {@code after-days} ago are moved out of SQLite into append-only segment files, one
+ * compressed record per session, located through {@link ArchivedSession} rows.
+ *
+ * <p>Records are read through memory-mapped segments. Bytes are never rewritten, so a
+ * mapping stays valid until the active segment grows past it and is remapped. A record is
+ * a fixed header (magic, conversation id, message count, raw length, compressed length,
+ * CRC32 of the raw bytes) followed by the deflated message list. A crash between appending
+ * a record and committing its index row only leaves unreferenced bytes behind. Records
+ * written before messages had sequence numbers (magic "DARC") are still read; their
+ * messages are numbered by position.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class MessageArchive {
+
+    private static final int RECORD_MAGIC_V1 = 0x44415243; // "DARC", no sequence numbers
+    private static final int RECORD_MAGIC = 0x44415232; // "DAR2"
+    private static final int HEADER_BYTES = 4 + 8 + 4 + 4 + 4 + 4;
+
+    private record Location(int segment, long offset, int length) {
+    }
+
+    private final ConversationRepository conversationRepository;
+    private final MessageRepository messageRepository;
+    private final ArchivedSessionRepository archivedSessionRepository;
+    private final MessageWriter messageWriter;
+    private final MessageSearchIndex messageSearchIndex;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${diplomat.archive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${diplomat.archive.dir:archive}")
+    private String dir;
+
+    @Value("${diplomat.archive.after-days:30}")
+    private long afterDays;
+
+    @Value("${diplomat.archive.interval-minutes:60}")
+    private long intervalMinutes;
+
+    @Value("${diplomat.archive.batch-sessions:100}")
+    private int batchSessions;
+
+    @Value("${diplomat.archive.segment-max-mb:64}")
+    private long segmentMaxMb;
+
+    private final Map<Integer, MappedByteBuffer> mappings = new ConcurrentHashMap<>();
+    private final AtomicLong sessionsArchived = new AtomicLong();
+    private final AtomicLong messagesArchived = new AtomicLong();
+    private final AtomicLong rawBytes = new AtomicLong();
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final AtomicLong reads = new AtomicLong();
+    private final ScheduledExecutorService archiver = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("message-archiver").daemon().factory());
+
+    private Path directory;
+    private int activeSegment;
+    private FileChannel activeChannel;
+
+    @PostConstruct
+    void start() throws IOException {
+        directory = Path.of(dir);
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            activeSegment = files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.matches("segment-\\d{6}\\.dat"))
+                    .mapToInt(name -> Integer.parseInt(name.substring(8, 14)))
+                    .max()
+                    .orElse(1);
+        }
+        activeChannel = openSegment(activeSegment);
+        if (enabled) {
+            archiver.scheduleWithFixedDelay(this::archiveDue, 1, intervalMinutes, TimeUnit.MINUTES);
+        }
+        log.info("Message archive at {}: active segment {}, archiving sessions ended {}+ days ago",
+                directory.toAbsolutePath(), activeSegment, afterDays);
+    }
+
+    @PreDestroy
+    void stop() throws IOException, InterruptedException {
+        // Let a running record append finish; an interrupt would close the channel mid-write
+        archiver.shutdown();
+        archiver.awaitTermination(30, TimeUnit.SECONDS);
+        activeChannel.close();
+    }
+
+    /**
+     * Archived messages of a conversation, oldest first, or empty if it was never archived.
+     */
+    public Optional<List<MessageDto>> read(Long conversationId) {
+        return archivedSessionRepository.findById(conversationId).map(this::read);
+    }
+
+    /**
+     * Id of the newest archived message, without reading the record.
+     */
+    public OptionalLong lastMessageId(Long conversationId) {
+        return archivedSessionRepository.findById(conversationId)
+                .map(entry -> OptionalLong.of(entry.getLastMessageId()))
+                .orElse(OptionalLong.empty());
+    }
+
+    /**
+     * Archive every session that is due, a batch at a time.
+     */
+    public void archiveDue() {
+        try {
+            LocalDateTime cutoff = LocalDateTime.now().minusDays(afterDays);
+            List<Long> due;
+            do {
+                due = conversationRepository.findIdsToArchive(cutoff, Limit.of(batchSessions));
+                for (Long conversationId : due) {
+                    archive(conversationId);
+                }
+            } while (due.size() == batchSessions);
+        } catch (RuntimeException e) {
+            log.error("Archiving ended sessions failed: {}", e.getMessage(), e);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long raw = rawBytes.get();
+        stats.put("sessionsArchived", sessionsArchived.get());
+        stats.put("messagesArchived", messagesArchived.get());
+        stats.put("compressionRatio", raw == 0 ? 0.0 : (double) storedBytes.get() / raw);
+        stats.put("reads", reads.get());
+        stats.put("activeSegment", activeSegment);
+        stats.put("mappedSegments", mappings.size());
+        return stats;
+    }
+
+    /**
+     * Move a conversation's hot messages into a new record. If it was archived before, the
+     * new record holds the old messages too and replaces the old one in the index.
+     */
+    private void archive(Long conversationId) {
+        messageWriter.awaitPersisted();
+        ArchivedSession previous = archivedSessionRepository.findById(conversationId).orElse(null);
+        List<MessageDto> messages = new ArrayList<>(previous != null ? read(previous) : List.of());
+        messages.addAll(messageRepository.findAllAfter(conversationId, previous != null ? previous.getLastMessageId() : 0));
+        if (messages.isEmpty()) return;
+
+        byte[] raw = encode(messages);
+        Location location = append(conversationId, messages.size(), raw);
+        long lastId = messages.get(messages.size() - 1).getId();
+        ArchivedSession entry = ArchivedSession.builder()
+                .conversationId(conversationId)
+                .segment(location.segment())
+                .offset(location.offset())
+                .length(location.length())
+                .messageCount(messages.size())
+                .lastMessageId(lastId)
+                .archivedAt(LocalDateTime.now())
+                .build();
+        messageSearchIndex.copyToArchive(conversationId, lastId);
+        int deleted = transactionTemplate.execute(status -> {
+            archivedSessionRepository.save(entry);
+            messageSearchIndex.removeArchived(conversationId, lastId);
+            return messageRepository.deleteArchived(conversationId, lastId);
+        });
+
+        sessionsArchived.incrementAndGet();
+        messagesArchived.addAndGet(deleted);
+        rawBytes.addAndGet(raw.length);
+        storedBytes.addAndGet(location.length());
+        log.debug("Archived conversation {}: {} messages, {} -> {} bytes in segment {}",
+                conversationId, messages.size(), raw.length, location.length(), location.segment());
+    }
+
+    private synchronized Location append(long conversationId, int count, byte[] raw) {
+        byte[] compressed = deflate(raw);
+        CRC32 crc = new CRC32();
+        crc.update(raw);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + compressed.length)
+                .putInt(RECORD_MAGIC)
+                .putLong(conversationId)
+                .putInt(count)
+                .putInt(raw.length)
+                .putInt(compressed.length)
+                .putInt((int) crc.getValue())
+                .put(compressed)
+                .flip();
+        try {
+            long size = activeChannel.size();
+            if (size > 0 && size + record.remaining() > segmentMaxMb * 1024 * 1024) {
+                activeChannel.close();
+                activeChannel = openSegment(++activeSegment);
+                size = 0;
+            }
+            while (record.hasRemaining()) {
+                activeChannel.write(record, size + record.position());
+            }
+            activeChannel.force(false);
+            return new Location(activeSegment, size, record.limit());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append archive record for conversation " + conversationId, e);
+        }
+    }
+
+    private List<MessageDto> read(ArchivedSession entry) {
+        reads.incrementAndGet();
+        ByteBuffer record = mapping(entry.getSegment(), entry.getOffset() + entry.getLength())
+                .slice((int) entry.getOffset(), entry.getLength());
+        long conversationId = entry.getConversationId();
+        int magic = record.getInt();
+        if ((magic != RECORD_MAGIC && magic != RECORD_MAGIC_V1) || record.getLong() != conversationId) {
+            throw new RuntimeException("Archive record for conversation " + conversationId + " is corrupt");
+        }
+        int count = record.getInt();
+        int rawLength = record.getInt();
+        int compressedLength = record.getInt();
+        int checksum = record.getInt();
+
+        byte[] raw = inflate(record.limit(HEADER_BYTES + compressedLength), rawLength);
+        CRC32 crc = new CRC32();
+        crc.update(raw);
+        if ((int) crc.getValue() != checksum) {
+            throw new RuntimeException("Archive record for conversation " + conversationId + " failed its checksum");
+        }
+        return decode(raw, count, magic == RECORD_MAGIC);
+    }
+
+    /**
+     * Mapping of a segment that covers at least {@code requiredEnd} bytes.
+     */
+    private MappedByteBuffer mapping(int segment, long requiredEnd) {
+        MappedByteBuffer mapped = mappings.get(segment);
+        if (mapped != null && mapped.capacity() >= requiredEnd) return mapped;
+        synchronized (mappings) {
+            mapped = mappings.get(segment);
+            if (mapped != null && mapped.capacity() >= requiredEnd) return mapped;
+            try (FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.READ)) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to map archive segment " + segment, e);
+            }
+            mappings.put(segment, mapped);
+            return mapped;
+        }
+    }
+
+    private FileChannel openSegment(int segment) throws IOException {
+        return FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format("segment-%06d.dat", segment));
+    }
+
+    private static byte[] encode(List<MessageDto> messages) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (MessageDto m : messages) {
+                out.writeLong(m.getId());
+                out.writeLong(m.getSeq());
+                out.writeUTF(m.getSender());
+                out.writeUTF(m.getContent());
+                out.writeUTF(m.getMessageType());
+                writeNullable(out, m.getFallacyType());
+                writeNullable(out, m.getRecipient());
+                out.writeLong(m.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<MessageDto> decode(byte[] raw, int count, boolean hasSeq) {
+        List<MessageDto> messages = new ArrayList<>(count);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw))) {
+            for (int i = 0; i < count; i++) {
+                messages.add(MessageDto.builder()
+                        .id(in.readLong())
+                        .seq(hasSeq ? in.readLong() : i + 1)
+                        .sender(in.readUTF())
+                        .content(in.readUTF())
+                        .messageType(in.readUTF())
+                        .fallacyType(readNullable(in))
+                        .recipient(readNullable(in))
+                        .timestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(in.readLong()), ZoneOffset.UTC))
+                        .build());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return messages;
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 3 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(ByteBuffer compressed, int rawLength) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[rawLength];
+            int n = 0;
+            while (n < rawLength && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, n, rawLength - n);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new RuntimeException("Archive record is truncated");
+                }
+                n += inflated;
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new RuntimeException("Archive record could not be decompressed", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
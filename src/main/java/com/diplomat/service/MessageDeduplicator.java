@@ -0,0 +1,138 @@
+package com.diplomat.service;
+
+import com.diplomat.repository.MessageRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recognizes frames a client sent twice, e.g. a STOMP SEND repeated after a reconnect, by the
+ * optional client message id. Each session remembers the ids of the last {@code window-minutes}
+ * (at most {@code max-ids-per-session}); that check is in memory, for the inbound threads. An
+ * id that has left the window is still caught by {@link #stored}, from the PERSIST stage, if
+ * a stored message carries it, which the unique (conversation_id, client_message_id) index
+ * guarantees for chat and private messages.
+ */
+@Service
+@RequiredArgsConstructor
+public class MessageDeduplicator {
+
+    private final SessionRegistry sessionRegistry;
+    private final MessageRepository messageRepository;
+
+    @Value("${diplomat.dedup.window-minutes:10}")
+    private long windowMinutes;
+
+    @Value("${diplomat.dedup.max-ids-per-session:1000}")
+    private int maxIdsPerSession;
+
+    /** Per session: client message id → when it was first seen, oldest first. Only touched inside compute. */
+    private final Map<String, LinkedHashMap<String, Long>> seen = new ConcurrentHashMap<>();
+    private final AtomicLong checked = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong storedHits = new AtomicLong();
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("dedup-sweeper").daemon().factory());
+
+    @PostConstruct
+    void start() {
+        sweeper.scheduleWithFixedDelay(this::evictExpired, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    void stop() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * Record the id and return true the first time it is seen in the session; false for a
+     * repeat. Frames without an id are always first. Never touches the database.
+     */
+    public boolean firstDelivery(String sessionCode, String clientMessageId) {
+        if (clientMessageId == null || clientMessageId.isBlank()) return true;
+        checked.incrementAndGet();
+        long now = System.nanoTime();
+        AtomicBoolean repeat = new AtomicBoolean();
+        seen.compute(sessionCode, (code, ids) -> {
+            if (ids == null) ids = new LinkedHashMap<>();
+            evict(ids, now);
+            repeat.set(ids.putIfAbsent(clientMessageId, now) != null);
+            return ids;
+        });
+        if (repeat.get()) {
+            duplicates.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * True if a stored message of the session already carries the id: a resend of a frame
+     * older than the window. Reads the database.
+     */
+    public boolean stored(String sessionCode, String clientMessageId) {
+        if (clientMessageId == null || clientMessageId.isBlank()) return false;
+        if (!messageRepository.existsByClientMessageId(sessionRegistry.get(sessionCode).id(), clientMessageId)) {
+            return false;
+        }
+        storedHits.incrementAndGet();
+        duplicates.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Take back an id whose frame was not accepted after all, so the client's resend is handled.
+     */
+    public void release(String sessionCode, String clientMessageId) {
+        if (clientMessageId == null) return;
+        seen.computeIfPresent(sessionCode, (code, ids) -> {
+            ids.remove(clientMessageId);
+            return ids;
+        });
+    }
+
+    public void forget(String sessionCode) {
+        seen.remove(sessionCode);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sessions", seen.size());
+        stats.put("checked", checked.get());
+        stats.put("duplicates", duplicates.get());
+        stats.put("caughtByStoredId", storedHits.get());
+        return stats;
+    }
+
+    private void evict(LinkedHashMap<String, Long> ids, long now) {
+        long cutoff = now - TimeUnit.MINUTES.toNanos(windowMinutes);
+        Iterator<Long> oldestFirst = ids.values().iterator();
+        while (oldestFirst.hasNext()) {
+            long firstSeen = oldestFirst.next();
+            if (firstSeen >= cutoff && ids.size() < maxIdsPerSession) break;
+            oldestFirst.remove();
+        }
+    }
+
+    private void evictExpired() {
+        long now = System.nanoTime();
+        for (String sessionCode : seen.keySet()) {
+            seen.computeIfPresent(sessionCode, (code, ids) -> {
+                evict(ids, now);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+}
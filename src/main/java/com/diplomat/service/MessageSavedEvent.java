@@ -0,0 +1,9 @@
+package com.diplomat.service;
+
+import com.diplomat.model.Message;
+
+/**
+ * Published by {@link ConversationService} after a message has been saved.
+ */
+public record MessageSavedEvent(String sessionCode, Message message) {
+}
@@ -0,0 +1,213 @@
+package com.diplomat.service;
+
+import com.diplomat.dto.MessageSearchHit;
+import com.diplomat.model.CodedEnum;
+import com.diplomat.model.ParticipantRole;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Full-text index over public message content, kept in an SQLite FTS5 table. An insert
+ * trigger on {@code messages} indexes each row in the same transaction that stores it, so
+ * the index is never behind the table and needs no application-side bookkeeping.
+ *
+ * <p>When a session is archived its entries move to a second FTS5 table in the archive
+ * directory's {@code search.db}, attached to every connection as {@code archive_search}
+ * (see {@code DataSourceConfig}), so past conversations stay searchable while the hot
+ * index only grows with live sessions. Searches read both. Private coaching messages are
+ * never indexed.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+@DependsOn("entityManagerFactory") // the messages table must exist before the trigger
+public class MessageSearchIndex {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${diplomat.search.max-results:100}")
+    private int maxResults;
+
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong searchNanos = new AtomicLong();
+    private final AtomicLong maxSearchNanos = new AtomicLong();
+
+    private static final String ARCHIVED = "archive_search.archived_messages_fts";
+
+    @PostConstruct
+    void init() {
+        boolean firstArchiveIndex = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM archive_search.sqlite_master WHERE name = 'archived_messages_fts'", Integer.class) == 0;
+        jdbcTemplate.execute("""
+                CREATE VIRTUAL TABLE IF NOT EXISTS archive_search.archived_messages_fts USING fts5(
+                    content, sender_role UNINDEXED, conversation_id UNINDEXED, timestamp UNINDEXED,
+                    tokenize = 'porter unicode61 remove_diacritics 2')""");
+        jdbcTemplate.execute("PRAGMA archive_search.journal_mode = WAL");
+        jdbcTemplate.execute("""
+                CREATE VIRTUAL TABLE IF NOT EXISTS messages_fts USING fts5(
+                    content, sender_role UNINDEXED, conversation_id UNINDEXED, timestamp UNINDEXED,
+                    tokenize = 'porter unicode61 remove_diacritics 2')""");
+        jdbcTemplate.execute("""
+                CREATE TRIGGER IF NOT EXISTS messages_fts_insert AFTER INSERT ON messages
+                WHEN new.recipient_role IS NULL
+                BEGIN
+                    INSERT INTO messages_fts (rowid, content, sender_role, conversation_id, timestamp)
+                    VALUES (new.id, new.content, new.sender_role, new.conversation_id, new.timestamp);
+                END""");
+
+        // Rows stored before the trigger existed
+        long start = System.nanoTime();
+        int backfilled = jdbcTemplate.update("""
+                INSERT INTO messages_fts (rowid, content, sender_role, conversation_id, timestamp)
+                SELECT m.id, m.content, m.sender_role, m.conversation_id, m.timestamp FROM messages m
+                WHERE m.recipient_role IS NULL AND NOT EXISTS (SELECT 1 FROM messages_fts f WHERE f.rowid = m.id)""");
+        if (backfilled > 0) {
+            log.info("Backfilled the message search index in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        if (firstArchiveIndex) {
+            // Sessions archived while their entries still stayed in the hot index
+            start = System.nanoTime();
+            int moved = jdbcTemplate.update("""
+                    INSERT INTO %s (rowid, content, sender_role, conversation_id, timestamp)
+                    SELECT f.rowid, f.content, f.sender_role, f.conversation_id, f.timestamp FROM messages_fts f
+                    WHERE NOT EXISTS (SELECT 1 FROM messages m WHERE m.id = f.rowid)""".formatted(ARCHIVED));
+            jdbcTemplate.update("DELETE FROM messages_fts WHERE rowid NOT IN (SELECT id FROM messages)");
+            if (moved > 0) {
+                log.info("Moved {} archived entries out of the message search index in {} ms",
+                        moved, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        }
+    }
+
+    /**
+     * Copy the entries of a session's messages up to {@code throughId} into the archive
+     * index. Runs in its own transaction before {@link #removeArchived}: SQLite does not
+     * commit attached WAL databases atomically, and this order means a crash in between
+     * leaves an entry in both indexes rather than in neither. The session is then archived
+     * again and the REPLACE makes the copy idempotent.
+     */
+    @Transactional
+    public int copyToArchive(Long conversationId, long throughId) {
+        return jdbcTemplate.update("""
+                INSERT OR REPLACE INTO %s (rowid, content, sender_role, conversation_id, timestamp)
+                SELECT f.rowid, f.content, f.sender_role, f.conversation_id, f.timestamp FROM messages_fts f
+                WHERE f.rowid IN (SELECT id FROM messages WHERE conversation_id = ? AND id <= ?)""".formatted(ARCHIVED),
+                conversationId, throughId);
+    }
+
+    /**
+     * Drop the hot entries of messages about to be deleted by archiving; call in the same
+     * transaction, before the messages go.
+     */
+    public void removeArchived(Long conversationId, long throughId) {
+        jdbcTemplate.update("DELETE FROM messages_fts WHERE rowid IN (SELECT id FROM messages WHERE conversation_id = ? AND id <= ?)",
+                conversationId, throughId);
+    }
+
+    /**
+     * Matching messages, newest first, or best matches first when {@code byRelevance} is set.
+     * Every participant given must be one of the session's two participants; {@code from}
+     * and {@code to} bound the message timestamp.
+     *
+     * <p>Newest-first walks the index in rowid order and stops at the limit, so it stays fast
+     * for common words; relevance has to score every match before it can sort.
+     */
+    @Transactional(readOnly = true)
+    public List<MessageSearchHit> search(String query, List<String> participants,
+                                         LocalDateTime from, LocalDateTime to, boolean byRelevance, int limit) {
+        String match = toMatchExpression(query);
+        if (match.isEmpty()) return List.of();
+
+        // Each index returns its own best rows, then the two are merged; relevance scores
+        // come from separate indexes and are only approximately comparable
+        int rows = Math.max(1, Math.min(limit, maxResults));
+        List<Object> args = new ArrayList<>();
+        String sql = "SELECT * FROM (" + select("messages_fts", "messages_fts", participants, from, to, byRelevance, match, rows, args)
+                + ") UNION ALL SELECT * FROM ("
+                + select(ARCHIVED, "archived_messages_fts", participants, from, to, byRelevance, match, rows, args)
+                + (byRelevance ? ") ORDER BY score" : ") ORDER BY id DESC") + " LIMIT ?";
+        args.add(rows);
+
+        long start = System.nanoTime();
+        List<MessageSearchHit> hits = jdbcTemplate.query(sql, (rs, i) -> MessageSearchHit.builder()
+                .messageId(rs.getLong(1))
+                .sessionCode(rs.getString(2))
+                .sender(CodedEnum.fromCode(ParticipantRole.class, rs.getInt(3)).nameIn(rs.getString(6), rs.getString(7)))
+                .snippet(rs.getString(4))
+                .timestamp(new Timestamp(rs.getLong(5)).toLocalDateTime())
+                .build(), args.toArray());
+        long elapsed = System.nanoTime() - start;
+        searches.incrementAndGet();
+        searchNanos.addAndGet(elapsed);
+        maxSearchNanos.accumulateAndGet(elapsed, Math::max);
+        return hits;
+    }
+
+    private static String select(String table, String name, List<String> participants, LocalDateTime from,
+                                 LocalDateTime to, boolean byRelevance, String match, int rows, List<Object> args) {
+        StringBuilder sql = new StringBuilder("""
+                SELECT f.rowid AS id, c.session_code, f.sender_role, snippet(%2$s, 0, '[', ']', '…', 16), f.timestamp,
+                       c.participanta, c.participantb, rank AS score
+                FROM %1$s f JOIN conversations c ON c.id = f.conversation_id
+                WHERE %2$s MATCH ?""".formatted(table, name));
+        args.add(match);
+        for (String participant : participants) {
+            sql.append(" AND (c.participanta = ? OR c.participantb = ?)");
+            args.add(participant);
+            args.add(participant);
+        }
+        if (from != null) {
+            sql.append(" AND f.timestamp >= ?");
+            args.add(Timestamp.valueOf(from).getTime());
+        }
+        if (to != null) {
+            sql.append(" AND f.timestamp < ?");
+            args.add(Timestamp.valueOf(to).getTime());
+        }
+        sql.append(byRelevance ? " ORDER BY rank" : " ORDER BY f.rowid DESC").append(" LIMIT ?");
+        args.add(rows);
+        return sql.toString();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long count = searches.get();
+        stats.put("searches", count);
+        stats.put("avgSearchMs", count == 0 ? 0.0 : searchNanos.get() / 1e6 / count);
+        stats.put("maxSearchMs", maxSearchNanos.get() / 1e6);
+        return stats;
+    }
+
+    /**
+     * Turn free text into an FTS5 query: every word must appear, a trailing * keeps prefix
+     * matching, and everything else is quoted so user input can't break the query syntax.
+     */
+    static String toMatchExpression(String query) {
+        if (query == null) return "";
+        StringBuilder match = new StringBuilder();
+        for (String word : query.trim().split("\\s+")) {
+            boolean prefix = word.endsWith("*");
+            String term = word.replace("*", "").replace("\"", "");
+            if (term.isBlank()) continue;
+            if (match.length() > 0) match.append(' ');
+            match.append('"').append(term).append('"');
+            if (prefix) match.append('*');
+        }
+        return match.toString();
+    }
+}
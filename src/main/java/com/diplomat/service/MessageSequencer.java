@@ -0,0 +1,73 @@
+package com.diplomat.service;
+
+import com.diplomat.model.Message;
+import com.diplomat.repository.MessageRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Numbers the messages of each session 1, 2, 3... so clients can tell what they missed.
+ * The number and the message id are assigned under one per-session lock, so sequence
+ * order always matches id order. Counters start from the stored maximum (or the archive)
+ * the first time a session is seen after startup.
+ */
+@Service
+@RequiredArgsConstructor
+public class MessageSequencer {
+
+    private static final class Counter {
+        final ReentrantLock lock = new ReentrantLock();
+        volatile long last;
+
+        Counter(long last) {
+            this.last = last;
+        }
+    }
+
+    private final MessageRepository messageRepository;
+    private final MessageWriter messageWriter;
+    private final MessageArchive messageArchive;
+
+    private final Map<Long, Counter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Give the message the next sequence number of its conversation and queue it for writing.
+     */
+    public Message enqueue(Message message) {
+        Counter counter = counters.computeIfAbsent(message.getConversation().getId(), this::load);
+        counter.lock.lock();
+        try {
+            message.setSeq(++counter.last);
+            return messageWriter.enqueue(message);
+        } finally {
+            counter.lock.unlock();
+        }
+    }
+
+    /**
+     * Newest sequence number handed out in a conversation, 0 if none.
+     */
+    public long latest(Long conversationId) {
+        Counter counter = counters.get(conversationId);
+        return counter != null ? counter.last : load(conversationId).last;
+    }
+
+    public void forget(Long conversationId) {
+        counters.remove(conversationId);
+    }
+
+    private Counter load(Long conversationId) {
+        messageWriter.awaitPersisted();
+        Long stored = messageRepository.findLatestSeq(conversationId);
+        if (stored != null) return new Counter(stored);
+        long archived = messageArchive.read(conversationId)
+                .filter(messages -> !messages.isEmpty())
+                .map(messages -> messages.get(messages.size() - 1).getSeq())
+                .orElse(0L);
+        return new Counter(archived);
+    }
+}
@@ -0,0 +1,171 @@
+package com.diplomat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Cheap, local pre-LLM triage for chat messages. A compiled lexicon flags the
+ * fallacy and escalation markers from prompts/fallacy-detection.txt, and a decaying
+ * per-session escalation score tracks how heated the conversation is. Together with
+ * the effective interaction level this decides whether the message is worth a full
+ * analysis prompt at all.
+ */
+@Service
+@Slf4j
+public class MessageTriage {
+
+    public enum Decision {
+        SKIP,     // clearly nothing to say at this level
+        DEFER,    // nothing urgent, but let the LLM look after a few of these
+        ESCALATE  // send to the LLM
+    }
+
+    /**
+     * Lexicon categories, each compiled once. Weights feed the escalation score.
+     */
+    enum Signal {
+        INSULT(3.0, "\\b(stupid|idiot\\w*|dumb|pathetic|useless|lazy|selfish|crazy|ridiculous|liar|loser|moron|worthless|childish|insane|shut up|fuck\\w*|shit\\w*|bitch\\w*|asshole)\\b"),
+        ESCALATION(2.0, "\\b(i'?m done|whatever|forget it|i can'?t do this|i don'?t care|leave me alone|i'?m leaving|over it)\\b"),
+        WHATABOUTISM(2.0, "\\b(what about (when )?you|you'?re one to talk|at least i (don'?t|didn'?t)|look who'?s talking)\\b"),
+        APPEAL_TO_EMOTION(2.0, "\\b(after (all|everything) i'?ve done|if you (really )?(loved|cared about) me|you made me (feel|do)|you'?re making me)\\b"),
+        HASTY_GENERALIZATION(1.5, "\\b(you (always|never)|every (single )?time|always|never|nobody|everyone|constantly)\\b"),
+        FALSE_DILEMMA(1.0, "\\b(either you\\b.*\\bor|it'?s (me|this) or)\\b"),
+        SLIPPERY_SLOPE(1.0, "\\b(next thing you know|this is how it starts|where does it end)\\b"),
+        SHOUTING(1.5, 0, "\\b[A-Z]{3,}\\b.*?\\b[A-Z]{3,}\\b|[!?]{3,}");
+
+        final double weight;
+        final Pattern pattern;
+
+        Signal(double weight, String regex) {
+            this(weight, Pattern.CASE_INSENSITIVE, regex);
+        }
+
+        Signal(double weight, int flags, String regex) {
+            this.weight = weight;
+            this.pattern = Pattern.compile(regex, flags);
+        }
+    }
+
+    private static class SessionScore {
+        double score;
+        int deferred;
+        long lastSeen;
+    }
+
+    private static final Logger SAMPLES = LoggerFactory.getLogger("com.diplomat.triage.samples");
+    private static final double DECAY = 0.7;          // per message
+    private static final long IDLE_EVICT_MS = 60 * 60 * 1000L;
+
+    @Value("${diplomat.triage.defer-limit:3}")
+    private int deferLimit;
+
+    @Value("${diplomat.triage.sample-rate:0.05}")
+    private double sampleRate;
+
+    @Value("${diplomat.triage.report-every:100}")
+    private int reportEvery;
+
+    private final Map<String, SessionScore> sessions = new ConcurrentHashMap<>();
+    private final Map<Decision, AtomicLong> decisions = new EnumMap<>(Decision.class);
+    private final Map<Signal, AtomicLong> hits = new EnumMap<>(Signal.class);
+    private final AtomicLong assessed = new AtomicLong();
+
+    public MessageTriage() {
+        for (Decision d : Decision.values()) decisions.put(d, new AtomicLong());
+        for (Signal s : Signal.values()) hits.put(s, new AtomicLong());
+    }
+
+    /**
+     * Decide what to do with a new chat message given the session's effective interaction level.
+     */
+    public Decision assess(String sessionCode, int interactionLevel, String content) {
+        double messageScore = 0;
+        boolean insult = false;
+        for (Signal signal : Signal.values()) {
+            if (signal.pattern.matcher(content).find()) {
+                messageScore += signal.weight;
+                hits.get(signal).incrementAndGet();
+                if (signal == Signal.INSULT) insult = true;
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        SessionScore state = sessions.computeIfAbsent(sessionCode, k -> new SessionScore());
+        Decision decision;
+        double sessionScore;
+        synchronized (state) {
+            state.score = state.score * DECAY + messageScore;
+            state.lastSeen = now;
+            sessionScore = state.score;
+
+            decision = decide(interactionLevel, messageScore, sessionScore, insult);
+            if (decision == Decision.DEFER && ++state.deferred >= deferLimit) {
+                decision = Decision.ESCALATE;
+            }
+            if (decision == Decision.ESCALATE) state.deferred = 0;
+        }
+
+        decisions.get(decision).incrementAndGet();
+        long total = assessed.incrementAndGet();
+        if (decision != Decision.ESCALATE && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            SAMPLES.info("[{}] {} level={} score={} message={}", sessionCode, decision,
+                    interactionLevel, "%.2f".formatted(sessionScore), content);
+        }
+        if (reportEvery > 0 && total % reportEvery == 0) {
+            log.info("Triage: {} assessed, skip rate {}%", total, "%.1f".formatted(skipRate() * 100));
+            evictIdle(now);
+        }
+        return decision;
+    }
+
+    public void forget(String sessionCode) {
+        sessions.remove(sessionCode);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("assessed", assessed.get());
+        decisions.forEach((d, count) -> stats.put(d.name().toLowerCase(), count.get()));
+        stats.put("skipRate", skipRate());
+        Map<String, Long> signalHits = new LinkedHashMap<>();
+        hits.forEach((s, count) -> signalHits.put(s.name(), count.get()));
+        stats.put("signals", signalHits);
+        return stats;
+    }
+
+    private Decision decide(int level, double messageScore, double sessionScore, boolean insult) {
+        if (level >= 7) {
+            // Active facilitation — reflections and reframes need the model every time
+            return Decision.ESCALATE;
+        }
+        if (level >= 5) {
+            return messageScore > 0 || sessionScore >= 2.0 ? Decision.ESCALATE : Decision.DEFER;
+        }
+        if (level >= 3) {
+            return messageScore >= 1.5 || sessionScore >= 3.5 ? Decision.ESCALATE : Decision.SKIP;
+        }
+        // Minimal: only serious fallacies or personal attacks
+        return insult || sessionScore >= 5.0 ? Decision.ESCALATE : Decision.SKIP;
+    }
+
+    private double skipRate() {
+        long total = assessed.get();
+        if (total == 0) return 0;
+        return (double) (decisions.get(Decision.SKIP).get() + decisions.get(Decision.DEFER).get()) / total;
+    }
+
+    private void evictIdle(long now) {
+        sessions.entrySet().removeIf(e -> now - e.getValue().lastSeen > IDLE_EVICT_MS);
+    }
+}
@@ -0,0 +1,384 @@
+package com.diplomat.service;
+
+import com.diplomat.model.Message;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind persistence for chat messages. Callers get an id and return at once;
+ * a single writer thread inserts queued messages from all sessions in JDBC batches, one
+ * transaction per batch, flushing when {@code batch-size} is reached or
+ * {@code flush-interval-ms} has passed since the first queued message.
+ *
+ * <p>Ids are assigned here, in enqueue order, so the in-memory sequence is the source of
+ * truth and the database only catches up. They come from blocks of {@code id-block-size}
+ * reserved in {@code id_blocks}, so nodes sharing the database never hand out the same id;
+ * ids of a block not used up before a restart are skipped. Every message insert must go
+ * through this class. Readers that need the database to include recent writes call
+ * {@link #awaitPersisted()} first. The queue is drained before shutdown.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+@DependsOn("entityManagerFactory") // the messages table must exist before id blocks are seeded
+public class MessageWriter {
+
+    // A client message id already stored in the conversation skips the row instead of failing the batch
+    private static final String INSERT_SQL = """
+            INSERT INTO messages (id, conversation_id, seq, sender_role, content, message_type, fallacy_type, recipient_role,
+                                  timestamp, client_message_id)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (conversation_id, client_message_id) DO NOTHING""";
+
+    private static final String DEAD_LETTER_SQL = """
+            INSERT INTO messages_dead_letter (id, conversation_id, seq, sender_role, content, message_type, fallacy_type,
+                                              recipient_role, timestamp, client_message_id, error)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)""";
+
+    /** SQLite's primary result code for constraint violations; the driver reports no SQLState. */
+    private static final int SQLITE_CONSTRAINT = 19;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${diplomat.persistence.batch-size:200}")
+    private int batchSize;
+
+    @Value("${diplomat.persistence.flush-interval-ms:20}")
+    private long flushIntervalMs;
+
+    @Value("${diplomat.persistence.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${diplomat.persistence.max-retries:5}")
+    private int maxRetries;
+
+    @Value("${diplomat.persistence.id-block-size:1000}")
+    private int idBlockSize;
+
+    private final ReentrantLock idLock = new ReentrantLock();
+    private long nextId; // guarded by idLock
+    private long idBlockEnd; // exclusive; guarded by idLock
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong deadLettered = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+    private final AtomicLong duplicatesSkipped = new AtomicLong();
+    private final AtomicLong flushNanos = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+    private final ReentrantLock progressLock = new ReentrantLock();
+    private final Condition progressed = progressLock.newCondition();
+
+    private BlockingQueue<Message> queue;
+    private Thread writer;
+    private volatile boolean running;
+    private volatile boolean flushRequested;
+    private volatile long persisted; // messages written to the messages table
+    private volatile long processed; // messages written, dead-lettered or given up on, in enqueue order
+
+    @PostConstruct
+    void start() {
+        // Conflict target of INSERT_SQL; schema update only creates it along with a new table
+        jdbcTemplate.execute("""
+                CREATE UNIQUE INDEX IF NOT EXISTS ux_messages_conversation_client_id
+                ON messages (conversation_id, client_message_id)""");
+        // A seq stored twice (two nodes numbering one session at once) is dead-lettered instead
+        jdbcTemplate.execute("""
+                CREATE UNIQUE INDEX IF NOT EXISTS ux_messages_conversation_seq
+                ON messages (conversation_id, seq)""");
+        // Rows that can never go into messages (constraint violations), kept for inspection or replay
+        jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS messages_dead_letter (
+                    id bigint, conversation_id bigint, seq bigint, sender_role integer, content varchar(4000),
+                    message_type integer, fallacy_type varchar(255), recipient_role integer, timestamp timestamp,
+                    client_message_id varchar(64), error varchar(1000),
+                    failed_at timestamp not null default CURRENT_TIMESTAMP
+                )""");
+        // Seeded from (and never behind) the ids already stored, e.g. before blocks were used
+        jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS id_blocks (
+                    name varchar(32) primary key,
+                    next_id bigint not null
+                )""");
+        jdbcTemplate.update("""
+                INSERT INTO id_blocks (name, next_id) SELECT 'messages', COALESCE(MAX(id), 0) + 1 FROM messages WHERE true
+                ON CONFLICT (name) DO UPDATE SET next_id = MAX(next_id, excluded.next_id)""");
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        writer = Thread.ofPlatform().name("message-writer").start(this::run);
+        log.info("Message writer started: batchSize={}, flushIntervalMs={}, idBlockSize={}", batchSize, flushIntervalMs, idBlockSize);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+        if (!queue.isEmpty()) {
+            log.error("Message writer stopped with {} messages still queued", queue.size());
+        }
+    }
+
+    /**
+     * Assign the message an id and queue it for insertion. Blocks only if the queue is full.
+     */
+    public Message enqueue(Message message) {
+        message.setId(allocateId());
+        try {
+            queue.put(message);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while queueing message", e);
+        }
+        enqueued.incrementAndGet();
+        return message;
+    }
+
+    /**
+     * Wait until every message queued before this call has been handled by the writer: committed
+     * to {@code messages}, or (for rows that violate a constraint) to {@code messages_dead_letter}.
+     * Returns without that guarantee after 10 s, e.g. while the database is unavailable.
+     */
+    public void awaitPersisted() {
+        long target = enqueued.get();
+        if (processed >= target) return;
+
+        flushRequested = true;
+        progressLock.lock();
+        try {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (processed < target) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    log.warn("Timed out waiting for queued messages to be written");
+                    return;
+                }
+                progressed.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            progressLock.unlock();
+        }
+    }
+
+    /**
+     * Take the next ids from a block reserved after this call, so they are higher than any id
+     * another node has used so far. Called when this node takes a session over, since
+     * messages of a session are paged in id order.
+     */
+    public void startNewIdBlock() {
+        idLock.lock();
+        try {
+            idBlockEnd = nextId;
+        } finally {
+            idLock.unlock();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long batchCount = batches.get();
+        stats.put("enqueued", enqueued.get());
+        stats.put("persisted", persisted);
+        stats.put("queued", queue.size());
+        stats.put("deadLettered", deadLettered.get());
+        stats.put("lostAtShutdown", lost.get());
+        stats.put("duplicatesSkipped", duplicatesSkipped.get());
+        stats.put("batches", batchCount);
+        stats.put("avgBatchSize", batchCount == 0 ? 0.0 : (double) processed / batchCount);
+        stats.put("avgFlushMs", batchCount == 0 ? 0.0 : flushNanos.get() / 1e6 / batchCount);
+        stats.put("maxFlushMs", maxFlushNanos.get() / 1e6);
+        return stats;
+    }
+
+    private long allocateId() {
+        idLock.lock();
+        try {
+            if (nextId >= idBlockEnd) {
+                Long end = transactionTemplate.execute(status -> jdbcTemplate.queryForObject(
+                        "UPDATE id_blocks SET next_id = next_id + ? WHERE name = 'messages' RETURNING next_id",
+                        Long.class, idBlockSize));
+                nextId = end - idBlockSize;
+                idBlockEnd = end;
+            }
+            return nextId++;
+        } finally {
+            idLock.unlock();
+        }
+    }
+
+    private void run() {
+        List<Message> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Message first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || flushRequested || !running) {
+                        queue.drainTo(batch, batchSize - batch.size());
+                        break;
+                    }
+                    Message next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                flushRequested = false;
+                write(batch);
+            } catch (InterruptedException e) {
+                // Keep draining; stop() ends the loop via the running flag
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Write a batch, blocking until every row is either in {@code messages} or, if the row
+     * itself can never be stored (a constraint violation), in {@code messages_dead_letter}.
+     * Anything else (locked or unavailable database) is retried with a growing backoff for as
+     * long as it takes; the queue filling up meanwhile pushes back on senders. Only at shutdown
+     * are rows given up on, after {@code max-retries} attempts.
+     */
+    private void write(List<Message> batch) {
+        long start = System.nanoTime();
+        List<Message> pending = batch;
+        int deadLettered = 0;
+        int givenUp = 0;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                insert(pending);
+                break;
+            } catch (RuntimeException e) {
+                if (attempt % maxRetries == 0) {
+                    // Keeps failing as a batch: store the rows one by one to set aside the ones at fault
+                    List<Message> retry = new ArrayList<>();
+                    deadLettered += insertOneByOne(pending, retry);
+                    pending = retry;
+                    if (pending.isEmpty()) break;
+                    if (!running) {
+                        givenUp = pending.size();
+                        lost.addAndGet(givenUp);
+                        log.error("Shutting down with {} unwritten messages (ids {}..{}): {}", pending.size(),
+                                pending.get(0).getId(), pending.get(pending.size() - 1).getId(), e.getMessage());
+                        break;
+                    }
+                }
+                log.warn("Message batch write failed (attempt {}), retrying: {}", attempt, e.getMessage());
+                try {
+                    Thread.sleep(Math.min(100L * attempt, 5000));
+                } catch (InterruptedException ie) {
+                    // shutting down; keep retrying so the batch is not lost
+                }
+            }
+        }
+        int written = batch.size() - deadLettered - givenUp;
+        batches.incrementAndGet();
+
+        long elapsed = System.nanoTime() - start;
+        flushNanos.addAndGet(elapsed);
+        maxFlushNanos.accumulateAndGet(elapsed, Math::max);
+        progressLock.lock();
+        try {
+            persisted += written;
+            processed += batch.size();
+            progressed.signalAll();
+        } finally {
+            progressLock.unlock();
+        }
+    }
+
+    private void insert(List<Message> rows) {
+        int[][] counts = transactionTemplate.execute(status ->
+                jdbcTemplate.batchUpdate(INSERT_SQL, rows, rows.size(), (ps, m) -> bind(ps, m)));
+        long skipped = Arrays.stream(counts).flatMapToInt(Arrays::stream).filter(c -> c == 0).count();
+        if (skipped > 0) {
+            duplicatesSkipped.addAndGet(skipped);
+            log.warn("Skipped {} messages whose client message id was already stored", skipped);
+        }
+    }
+
+    /**
+     * Insert rows singly. Rows that violate a constraint go to the dead-letter table; rows that
+     * failed for another reason are added to {@code retry}. Returns the number dead-lettered.
+     */
+    private int insertOneByOne(List<Message> rows, List<Message> retry) {
+        int deadLettered = 0;
+        for (Message m : rows) {
+            try {
+                insert(List.of(m));
+            } catch (RuntimeException e) {
+                if (!isConstraintViolation(e)) {
+                    retry.add(m);
+                    continue;
+                }
+                try {
+                    jdbcTemplate.update(DEAD_LETTER_SQL, ps -> {
+                        bind(ps, m);
+                        ps.setString(11, rootMessage(e));
+                    });
+                } catch (RuntimeException dlqFailure) {
+                    retry.add(m);
+                    continue;
+                }
+                deadLettered++;
+                this.deadLettered.incrementAndGet();
+                log.error("Message {} of conversation {} can't be stored and was moved to messages_dead_letter: {}",
+                        m.getId(), m.getConversation().getId(), rootMessage(e));
+            }
+        }
+        return deadLettered;
+    }
+
+    private static void bind(PreparedStatement ps, Message m) throws SQLException {
+        ps.setLong(1, m.getId());
+        ps.setLong(2, m.getConversation().getId());
+        ps.setLong(3, m.getSeq());
+        ps.setInt(4, m.getSenderRole().getCode());
+        ps.setString(5, m.getContent());
+        ps.setInt(6, m.getMessageType().getCode());
+        ps.setString(7, m.getFallacyType());
+        ps.setObject(8, m.getRecipientRole() != null ? m.getRecipientRole().getCode() : null);
+        ps.setTimestamp(9, Timestamp.valueOf(m.getTimestamp()));
+        ps.setString(10, m.getClientMessageId());
+    }
+
+    private static boolean isConstraintViolation(RuntimeException e) {
+        if (e instanceof DataIntegrityViolationException) return true;
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLException sql && sql.getErrorCode() == SQLITE_CONSTRAINT) return true;
+        }
+        return false;
+    }
+
+    private static String rootMessage(Throwable e) {
+        while (e.getCause() != null) e = e.getCause();
+        return String.valueOf(e.getMessage());
+    }
+}
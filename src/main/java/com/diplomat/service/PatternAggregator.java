@@ -0,0 +1,199 @@
+package com.diplomat.service;
+
+import com.diplomat.model.Message;
+import com.diplomat.model.ParticipantRole;
+import com.diplomat.model.PatternNote;
+import com.diplomat.repository.PatternNoteRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rolls Diplomat interventions up into {@link PatternNote}s per couple. Each saved Diplomat
+ * message bumps an in-memory counter keyed by (couple, category, pattern); a flusher
+ * periodically upserts the accumulated deltas in one batch, so the rollup table sees one
+ * write per distinct pattern per interval rather than one per intervention.
+ *
+ * <p>Couples are keyed by their names in alphabetical order, so sessions created by either
+ * partner share rollups. Reads see flushed counts, up to {@code flush-interval-seconds} old.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+@DependsOn("entityManagerFactory") // pattern_notes must exist before its upsert key is added
+public class PatternAggregator {
+
+    private static final String UPSERT_SQL = """
+            INSERT INTO pattern_notes (participanta, participantb, category, pattern, occurrence_count, first_observed, last_observed)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (participanta, participantb, category, pattern) DO UPDATE SET
+                occurrence_count = occurrence_count + excluded.occurrence_count,
+                last_observed = MAX(last_observed, excluded.last_observed)""";
+
+    private record Key(String participantA, String participantB, String category, String pattern) {
+    }
+
+    private static class Pending {
+        int count;
+        LocalDateTime firstObserved;
+        LocalDateTime lastObserved;
+    }
+
+    private final SessionRegistry sessionRegistry;
+    private final PatternNoteRepository patternNoteRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${diplomat.patterns.flush-interval-seconds:10}")
+    private long flushIntervalSeconds;
+
+    private final Map<Key, Pending> pending = new ConcurrentHashMap<>();
+    private final AtomicLong observed = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong rowsUpserted = new AtomicLong();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("pattern-flusher").daemon().factory());
+
+    @PostConstruct
+    void start() {
+        // Upsert target; created here because schema update can't add constraints to an existing SQLite table
+        jdbcTemplate.execute("""
+                CREATE UNIQUE INDEX IF NOT EXISTS uk_pattern_notes_couple_pattern
+                ON pattern_notes (participanta, participantb, category, pattern)""");
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalSeconds, flushIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+        flushQuietly();
+    }
+
+    @EventListener
+    public void onMessageSaved(MessageSavedEvent event) {
+        Message message = event.message();
+        if (message.getSenderRole() != ParticipantRole.DIPLOMAT) return;
+        String[] categoryAndPattern = classify(message.getMessageType().name(), message.getFallacyType());
+        if (categoryAndPattern == null) return;
+
+        SessionInfo session = sessionRegistry.get(event.sessionCode());
+        if (session.participantB() == null || session.participantB().isBlank()) return;
+        boolean ordered = session.participantA().compareTo(session.participantB()) <= 0;
+        Key key = new Key(ordered ? session.participantA() : session.participantB(),
+                ordered ? session.participantB() : session.participantA(),
+                categoryAndPattern[0], categoryAndPattern[1]);
+
+        LocalDateTime at = message.getTimestamp() != null ? message.getTimestamp() : LocalDateTime.now();
+        pending.compute(key, (k, p) -> {
+            if (p == null) {
+                p = new Pending();
+                p.firstObserved = at;
+            }
+            p.count++;
+            p.lastObserved = at;
+            return p;
+        });
+        observed.incrementAndGet();
+    }
+
+    /**
+     * A couple's rollups, most recently observed first; either name order works.
+     */
+    public List<PatternNote> patternsFor(String participant1, String participant2) {
+        boolean ordered = participant1.compareTo(participant2) <= 0;
+        return patternNoteRepository.findByParticipantAAndParticipantBOrderByLastObservedDesc(
+                ordered ? participant1 : participant2, ordered ? participant2 : participant1);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long flushCount = flushes.get();
+        stats.put("observed", observed.get());
+        stats.put("pendingPatterns", pending.size());
+        stats.put("flushes", flushCount);
+        stats.put("rowsUpserted", rowsUpserted.get());
+        stats.put("avgRowsPerFlush", flushCount == 0 ? 0.0 : (double) rowsUpserted.get() / flushCount);
+        return stats;
+    }
+
+    /**
+     * Category and pattern for an intervention, or null for requested services (summaries,
+     * translations, coaching) that say nothing about the couple.
+     */
+    static String[] classify(String messageType, String fallacyType) {
+        if (fallacyType != null && !fallacyType.isBlank()) return new String[]{"FALLACY", fallacyType.trim().toUpperCase()};
+        if (messageType == null) return null;
+        return switch (messageType) {
+            case "FALLACY_ALERT" -> new String[]{"FALLACY", "UNSPECIFIED"};
+            case "TEMPERATURE_CHECK" -> new String[]{"ESCALATION", messageType};
+            case "APPRECIATION_PROMPT" -> new String[]{"POSITIVE", messageType};
+            case "PARKING_LOT" -> new String[]{"TOPIC", messageType};
+            case "OBSERVATION", "REFRAME", "REFLECTION", "CONSTITUTION_REMINDER" -> new String[]{"COMMUNICATION_STYLE", messageType};
+            default -> null;
+        };
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Pattern rollup flush failed: {}", e.getMessage());
+        }
+    }
+
+    private synchronized void flush() {
+        if (pending.isEmpty()) return;
+        List<Map.Entry<Key, Pending>> batch = new ArrayList<>();
+        for (Key key : List.copyOf(pending.keySet())) {
+            Pending p = pending.remove(key);
+            if (p != null) batch.add(Map.entry(key, p));
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate(UPSERT_SQL, batch, batch.size(), (ps, e) -> {
+                        ps.setString(1, e.getKey().participantA());
+                        ps.setString(2, e.getKey().participantB());
+                        ps.setString(3, e.getKey().category());
+                        ps.setString(4, e.getKey().pattern());
+                        ps.setInt(5, e.getValue().count);
+                        ps.setTimestamp(6, Timestamp.valueOf(e.getValue().firstObserved));
+                        ps.setTimestamp(7, Timestamp.valueOf(e.getValue().lastObserved));
+                    }));
+        } catch (RuntimeException e) {
+            // Put the deltas back so the next flush retries them
+            batch.forEach(entry -> pending.merge(entry.getKey(), entry.getValue(), PatternAggregator::combine));
+            throw e;
+        }
+        flushes.incrementAndGet();
+        rowsUpserted.addAndGet(batch.size());
+    }
+
+    private static Pending combine(Pending a, Pending b) {
+        Pending merged = new Pending();
+        merged.count = a.count + b.count;
+        merged.firstObserved = a.firstObserved.isBefore(b.firstObserved) ? a.firstObserved : b.firstObserved;
+        merged.lastObserved = a.lastObserved.isAfter(b.lastObserved) ? a.lastObserved : b.lastObserved;
+        return merged;
+    }
+}
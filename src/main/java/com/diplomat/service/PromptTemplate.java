@@ -0,0 +1,85 @@
+package com.diplomat.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A prompt template pre-split into literal and {{placeholder}} segments, so rendering
+ * is a single pass of appends into a builder sized up front. Values are inserted
+ * verbatim and never re-parsed.
+ */
+public final class PromptTemplate {
+
+    private final String name;
+    private final String[] literals;      // literals.length == placeholders.length + 1
+    private final String[] placeholders;
+    private final int literalLength;
+
+    private PromptTemplate(String name, String[] literals, String[] placeholders) {
+        this.name = name;
+        this.literals = literals;
+        this.placeholders = placeholders;
+        int length = 0;
+        for (String literal : literals) length += literal.length();
+        this.literalLength = length;
+    }
+
+    /**
+     * Parse template source. A single trailing newline is dropped so templates
+     * compose without doubled blank lines.
+     */
+    public static PromptTemplate parse(String name, String source) {
+        if (source.endsWith("\n")) source = source.substring(0, source.length() - 1);
+
+        List<String> literals = new ArrayList<>();
+        List<String> placeholders = new ArrayList<>();
+        int pos = 0;
+        while (true) {
+            int open = source.indexOf("{{", pos);
+            int close = open < 0 ? -1 : source.indexOf("}}", open + 2);
+            if (close < 0) {
+                literals.add(source.substring(pos));
+                break;
+            }
+            literals.add(source.substring(pos, open));
+            placeholders.add(source.substring(open + 2, close).trim());
+            pos = close + 2;
+        }
+        return new PromptTemplate(name, literals.toArray(String[]::new), placeholders.toArray(String[]::new));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The template text, for templates without placeholders.
+     */
+    public String text() {
+        if (placeholders.length > 0) {
+            throw new IllegalStateException("Prompt template '" + name + "' has placeholders; use render()");
+        }
+        return literals[0];
+    }
+
+    public String render(Map<String, ?> values) {
+        String[] resolved = new String[placeholders.length];
+        int capacity = literalLength;
+        for (int i = 0; i < placeholders.length; i++) {
+            Object value = values.get(placeholders[i]);
+            if (value == null) {
+                throw new IllegalArgumentException(
+                        "Missing value for {{" + placeholders[i] + "}} in prompt template '" + name + "'");
+            }
+            resolved[i] = value.toString();
+            capacity += resolved[i].length();
+        }
+
+        StringBuilder sb = new StringBuilder(capacity);
+        for (int i = 0; i < placeholders.length; i++) {
+            sb.append(literals[i]).append(resolved[i]);
+        }
+        return sb.append(literals[placeholders.length]).toString();
+    }
+}
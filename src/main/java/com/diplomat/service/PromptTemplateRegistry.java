@@ -0,0 +1,118 @@
+package com.diplomat.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Loads every prompts/*.txt template once at startup and serves pre-parsed
+ * {@link PromptTemplate}s by name (file name without extension).
+ *
+ * <p>If {@code diplomat.prompts.watch-dir} points at a directory, templates found there
+ * override the classpath copies and are reloaded whenever a file changes — handy
+ * for prompt tuning without a restart.
+ */
+@Service
+@Slf4j
+public class PromptTemplateRegistry {
+
+    private static final String SUFFIX = ".txt";
+
+    @Value("${diplomat.prompts.watch-dir:}")
+    private String watchDir;
+
+    private final Map<String, PromptTemplate> templates = new ConcurrentHashMap<>();
+    private WatchService watchService;
+
+    @PostConstruct
+    void load() throws IOException {
+        Resource[] resources = new PathMatchingResourcePatternResolver().getResources("classpath:prompts/*" + SUFFIX);
+        for (Resource resource : resources) {
+            String filename = resource.getFilename();
+            if (filename == null) continue;
+            register(filename, new String(resource.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        if (!watchDir.isBlank()) {
+            Path dir = Path.of(watchDir);
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path file : files.filter(f -> f.toString().endsWith(SUFFIX)).toList()) {
+                    reload(file);
+                }
+            }
+            startWatching(dir);
+        }
+        log.info("Loaded {} prompt templates", templates.size());
+    }
+
+    @PreDestroy
+    void stopWatching() throws IOException {
+        if (watchService != null) watchService.close();
+    }
+
+    public PromptTemplate get(String name) {
+        PromptTemplate template = templates.get(name);
+        if (template == null) {
+            throw new IllegalArgumentException("Unknown prompt template: " + name);
+        }
+        return template;
+    }
+
+    public String render(String name, Map<String, ?> values) {
+        return get(name).render(values);
+    }
+
+    private void register(String filename, String source) {
+        String name = filename.substring(0, filename.length() - SUFFIX.length());
+        templates.put(name, PromptTemplate.parse(name, source));
+    }
+
+    private void reload(Path file) {
+        try {
+            register(file.getFileName().toString(), Files.readString(file, StandardCharsets.UTF_8));
+            log.debug("Loaded prompt template from {}", file);
+        } catch (IOException e) {
+            log.warn("Could not reload prompt template {}: {}", file, e.getMessage());
+        }
+    }
+
+    private void startWatching(Path dir) throws IOException {
+        watchService = dir.getFileSystem().newWatchService();
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        Thread.ofPlatform().name("prompt-watcher").daemon().start(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watchService.take();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.context() instanceof Path changed && changed.toString().endsWith(SUFFIX)) {
+                            reload(dir.resolve(changed));
+                            log.info("Reloaded prompt template {}", changed);
+                        }
+                    }
+                    key.reset();
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // shutting down
+            }
+        });
+        log.info("Watching {} for prompt template changes", dir);
+    }
+}
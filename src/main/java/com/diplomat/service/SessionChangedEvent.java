@@ -0,0 +1,7 @@
+package com.diplomat.service;
+
+/**
+ * Published after a session's stored settings (participants, mode, levels, status) changed.
+ */
+public record SessionChangedEvent(String sessionCode) {
+}
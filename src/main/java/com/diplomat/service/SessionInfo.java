@@ -0,0 +1,70 @@
+package com.diplomat.service;
+
+import com.diplomat.model.Conversation;
+import com.diplomat.model.ConversationMode;
+import com.diplomat.model.ConversationStatus;
+import com.diplomat.model.ParticipantRole;
+
+/**
+ * Immutable snapshot of the session metadata the chat path needs, cached by {@link SessionRegistry}.
+ * {@code constitutionText} is null when no constitution is attached.
+ */
+public record SessionInfo(Long id, String sessionCode, String participantA, String participantB,
+                          ConversationStatus status, ConversationMode mode, int interactionLevelA, int interactionLevelB,
+                          Long constitutionId, String constitutionText) {
+
+    public static SessionInfo of(Conversation conv) {
+        return new SessionInfo(conv.getId(), conv.getSessionCode(), conv.getParticipantA(), conv.getParticipantB(),
+                conv.getStatus(), conv.getMode(), conv.getInteractionLevelA(), conv.getInteractionLevelB(),
+                conv.getConstitution() != null ? conv.getConstitution().getId() : null,
+                conv.getConstitution() != null ? conv.getConstitution().getContent() : null);
+    }
+
+    /**
+     * The higher of the two interaction levels (if either person wants help, they get it).
+     */
+    public int effectiveLevel() {
+        return Math.max(interactionLevelA, interactionLevelB);
+    }
+
+    public boolean isEnded() {
+        return status == ConversationStatus.ENDED;
+    }
+
+    /**
+     * True if {@code name} is participant A or B (not the Diplomat or the system).
+     */
+    public boolean isParticipant(String name) {
+        return name != null && !name.isEmpty() && (name.equals(participantA) || name.equals(participantB));
+    }
+
+    /**
+     * Role of a sender or recipient name in this session; null stays null (public message).
+     *
+     * @throws UnknownParticipantException if the name is not part of the session
+     */
+    public ParticipantRole roleOf(String name) {
+        if (name == null) return null;
+        if (name.equals(participantA)) return ParticipantRole.PARTICIPANT_A;
+        if (name.equals(participantB)) return ParticipantRole.PARTICIPANT_B;
+        if (name.equals(ParticipantRole.DIPLOMAT.name())) return ParticipantRole.DIPLOMAT;
+        if (name.equals(ParticipantRole.SYSTEM.name())) return ParticipantRole.SYSTEM;
+        throw new UnknownParticipantException(sessionCode, name);
+    }
+
+    public String nameOf(ParticipantRole role) {
+        return role != null ? role.nameIn(participantA, participantB) : null;
+    }
+
+    public SessionInfo withMode(ConversationMode mode) {
+        return new SessionInfo(id, sessionCode, participantA, participantB, status, mode,
+                interactionLevelA, interactionLevelB, constitutionId, constitutionText);
+    }
+
+    public SessionInfo withInteractionLevel(ParticipantRole role, int level) {
+        return new SessionInfo(id, sessionCode, participantA, participantB, status, mode,
+                role == ParticipantRole.PARTICIPANT_A ? level : interactionLevelA,
+                role == ParticipantRole.PARTICIPANT_B ? level : interactionLevelB,
+                constitutionId, constitutionText);
+    }
+}
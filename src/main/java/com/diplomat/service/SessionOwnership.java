@@ -0,0 +1,372 @@
+package com.diplomat.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which node handles a session when several nodes share the database, so each
+ * message is stored, triaged and analyzed once, by the node that holds the session's
+ * in-memory state and spends the LLM budget for it.
+ *
+ * <p>Nodes heartbeat into {@code cluster_nodes}; those seen within {@code node-ttl-seconds}
+ * are live and form a consistent-hash ring over session codes. The node a session hashes to
+ * takes a lease in {@code session_leases} and renews it while the session is in use. A lease
+ * whose holder stopped heartbeating, or that ran out, is taken over by the session's node on
+ * the current ring. When membership changes, a node releases the sessions that now hash
+ * elsewhere; releasing (or losing) a lease drops the session's local state, which the new
+ * owner rebuilds from the database. A release first lets the session's queued work run and
+ * be stored, turning new frames away meanwhile, so the new owner numbers on from the last
+ * stored message. A frame is only ever handled by the lease holder.
+ *
+ * <p>With {@code diplomat.cluster.enabled=false} (the default) every session is local and
+ * no tables are touched.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class SessionOwnership {
+
+    public record Node(String id, String url) {
+    }
+
+    private record Lease(String nodeId, long expiresAt) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SessionRegistry sessionRegistry;
+    private final MessageSequencer messageSequencer;
+    private final MessageTriage messageTriage;
+    private final ConversationHistoryBuffer historyBuffer;
+    private final SessionPipeline sessionPipeline;
+    private final MessageDeduplicator messageDeduplicator;
+    private final MessageWriter messageWriter;
+
+    @Value("${diplomat.cluster.enabled:false}")
+    private boolean enabled;
+
+    @Value("${diplomat.cluster.node-id:}")
+    private String configuredNodeId;
+
+    @Value("${diplomat.cluster.advertise-url:http://localhost:${server.port:8080}}")
+    private String advertiseUrl;
+
+    @Value("${diplomat.cluster.heartbeat-seconds:5}")
+    private long heartbeatSeconds;
+
+    @Value("${diplomat.cluster.node-ttl-seconds:15}")
+    private long nodeTtlSeconds;
+
+    @Value("${diplomat.cluster.lease-seconds:30}")
+    private long leaseSeconds;
+
+    @Value("${diplomat.cluster.idle-release-minutes:10}")
+    private long idleReleaseMinutes;
+
+    @Value("${diplomat.cluster.virtual-nodes:64}")
+    private int virtualNodes;
+
+    @Value("${diplomat.cluster.release-drain-seconds:30}")
+    private long releaseDrainSeconds;
+
+    private String nodeId;
+    private volatile Map<String, Node> liveNodes = Map.of();
+    private volatile ConsistentHashRing ring = new ConsistentHashRing(List.of(), 0);
+    /** Leases as last read or written, any holder. */
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+    /** Sessions this node holds, with when they were last used. */
+    private final Map<String, Long> owned = new ConcurrentHashMap<>();
+    /** Sessions this node is handing back: still leased, but taking no new frames. */
+    private final Set<String> releasing = ConcurrentHashMap.newKeySet();
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong released = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+    private final AtomicLong membershipChanges = new AtomicLong();
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("cluster-heartbeat").daemon().factory());
+    private final ExecutorService releases = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("cluster-release-", 0).factory());
+
+    @PostConstruct
+    void start() {
+        nodeId = configuredNodeId.isBlank() ? UUID.randomUUID().toString() : configuredNodeId;
+        if (!enabled) return;
+        jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS cluster_nodes (
+                    node_id varchar(64) primary key,
+                    url varchar(255) not null,
+                    heartbeat_at bigint not null
+                )""");
+        jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS session_leases (
+                    session_code varchar(16) primary key,
+                    node_id varchar(64) not null,
+                    expires_at bigint not null
+                )""");
+        beat();
+        heartbeat.scheduleWithFixedDelay(this::beatQuietly, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+        log.info("Cluster node {} started at {}", nodeId, advertiseUrl);
+    }
+
+    /**
+     * Leave the ring and hand back every lease at once, rather than waiting for them to expire.
+     */
+    @PreDestroy
+    void stop() {
+        heartbeat.shutdownNow();
+        releases.shutdownNow();
+        if (!enabled) return;
+        try {
+            jdbcTemplate.update("DELETE FROM session_leases WHERE node_id = ?", nodeId);
+            jdbcTemplate.update("DELETE FROM cluster_nodes WHERE node_id = ?", nodeId);
+        } catch (RuntimeException e) {
+            log.warn("Could not leave the cluster cleanly: {}", e.getMessage());
+        }
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    /**
+     * The node to hand the session's frames to, or empty if no other live node is in line for
+     * them. Empty does not make this node the owner; {@link #claim} decides that.
+     */
+    public Optional<Node> remoteOwner(String sessionCode) {
+        if (!enabled) return Optional.empty();
+        String owner = ownerOf(sessionCode);
+        if (owner == null || owner.equals(nodeId)) return Optional.empty();
+        return Optional.ofNullable(liveNodes.get(owner));
+    }
+
+    /**
+     * Every live node but this one.
+     */
+    public List<Node> otherNodes() {
+        if (!enabled) return List.of();
+        return liveNodes.values().stream().filter(node -> !node.id().equals(nodeId)).toList();
+    }
+
+    /**
+     * Take the lease before handling a frame here, unless another live node holds it or this
+     * node is handing the session back. Returns false in that case; the frame must not be
+     * handled here.
+     */
+    public boolean claim(String sessionCode) {
+        if (!enabled) return true;
+        if (releasing.contains(sessionCode)) return false;
+        long now = System.currentTimeMillis();
+        Lease stored = readLease(sessionCode);
+        if (stored == null || !valid(stored, now)) tryAcquire(sessionCode, stored, now);
+        if (!nodeId.equals(currentHolder(sessionCode))) return false;
+        owned.put(sessionCode, now);
+        return true;
+    }
+
+    /**
+     * Forwarding to the owner failed or was turned down; look the lease up again next time.
+     */
+    public void forgetOwner(String sessionCode) {
+        leases.remove(sessionCode);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("nodeId", nodeId);
+        stats.put("liveNodes", liveNodes.size());
+        stats.put("ownedSessions", owned.size());
+        stats.put("releasingSessions", releasing.size());
+        stats.put("leasesAcquired", acquired.get());
+        stats.put("leasesReleased", released.get());
+        stats.put("leasesLost", lost.get());
+        stats.put("membershipChanges", membershipChanges.get());
+        return stats;
+    }
+
+    private String ownerOf(String sessionCode) {
+        long now = System.currentTimeMillis();
+        Lease known = leases.get(sessionCode);
+        if (known != null && valid(known, now)) return known.nodeId();
+
+        Lease stored = readLease(sessionCode);
+        if (stored != null && valid(stored, now)) return stored.nodeId();
+
+        String preferred = ring.nodeFor(sessionCode);
+        if (preferred != null && !preferred.equals(nodeId)) {
+            return preferred; // it takes the lease when the forwarded frame arrives
+        }
+        return tryAcquire(sessionCode, stored, now);
+    }
+
+    private boolean valid(Lease lease, long now) {
+        return lease.expiresAt() > now && liveNodes.containsKey(lease.nodeId());
+    }
+
+    /**
+     * Compare-and-set on the lease row, so of several nodes racing for a session one wins.
+     * Returns the holder afterwards, or null if the row was deleted in between.
+     */
+    private String tryAcquire(String sessionCode, Lease stored, long now) {
+        long expiresAt = now + TimeUnit.SECONDS.toMillis(leaseSeconds);
+        int updated = stored == null
+                ? jdbcTemplate.update("""
+                        INSERT INTO session_leases (session_code, node_id, expires_at) VALUES (?, ?, ?)
+                        ON CONFLICT (session_code) DO NOTHING""", sessionCode, nodeId, expiresAt)
+                : jdbcTemplate.update("""
+                        UPDATE session_leases SET node_id = ?, expires_at = ?
+                        WHERE session_code = ? AND node_id = ? AND expires_at = ?""",
+                        nodeId, expiresAt, sessionCode, stored.nodeId(), stored.expiresAt());
+        if (updated == 1) {
+            messageWriter.startNewIdBlock(); // keep the session's ids above the previous owner's
+            leases.put(sessionCode, new Lease(nodeId, expiresAt));
+            owned.put(sessionCode, now);
+            acquired.incrementAndGet();
+            log.info("[{}] Now owned by node {}", sessionCode, nodeId);
+            return nodeId;
+        }
+        return currentHolder(sessionCode);
+    }
+
+    private String currentHolder(String sessionCode) {
+        Lease lease = readLease(sessionCode);
+        return lease != null ? lease.nodeId() : null;
+    }
+
+    private Lease readLease(String sessionCode) {
+        List<Lease> rows = jdbcTemplate.query(
+                "SELECT node_id, expires_at FROM session_leases WHERE session_code = ?",
+                (rs, i) -> new Lease(rs.getString(1), rs.getLong(2)), sessionCode);
+        if (rows.isEmpty()) {
+            leases.remove(sessionCode);
+            return null;
+        }
+        leases.put(sessionCode, rows.get(0));
+        return rows.get(0);
+    }
+
+    private void beatQuietly() {
+        try {
+            beat();
+        } catch (Exception e) {
+            log.warn("Cluster heartbeat failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Announce this node, refresh the ring, renew the leases of sessions in use and let go of
+     * idle ones and of those that now hash to another node.
+     */
+    private void beat() {
+        long now = System.currentTimeMillis();
+        jdbcTemplate.update("""
+                INSERT INTO cluster_nodes (node_id, url, heartbeat_at) VALUES (?, ?, ?)
+                ON CONFLICT (node_id) DO UPDATE SET url = excluded.url, heartbeat_at = excluded.heartbeat_at""",
+                nodeId, advertiseUrl, now);
+        long staleBefore = now - TimeUnit.SECONDS.toMillis(nodeTtlSeconds);
+        jdbcTemplate.update("DELETE FROM cluster_nodes WHERE heartbeat_at < ?", staleBefore - TimeUnit.HOURS.toMillis(1));
+
+        Map<String, Node> live = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT node_id, url FROM cluster_nodes WHERE heartbeat_at >= ? ORDER BY node_id",
+                rs -> {
+                    live.put(rs.getString(1), new Node(rs.getString(1), rs.getString(2)));
+                }, staleBefore);
+        boolean membershipChanged = !live.keySet().equals(liveNodes.keySet());
+        if (membershipChanged) {
+            ring = new ConsistentHashRing(live.keySet(), virtualNodes);
+            membershipChanges.incrementAndGet();
+            log.info("Cluster membership: {}", live.keySet());
+        }
+        liveNodes = Map.copyOf(live);
+
+        long idleBefore = now - TimeUnit.MINUTES.toMillis(idleReleaseMinutes);
+        for (Map.Entry<String, Long> session : owned.entrySet()) {
+            String sessionCode = session.getKey();
+            boolean idle = session.getValue() < idleBefore;
+            boolean moved = membershipChanged && !nodeId.equals(ring.nodeFor(sessionCode));
+            if (idle || moved) release(sessionCode, idle ? "idle" : "moved");
+        }
+
+        long expiresAt = now + TimeUnit.SECONDS.toMillis(leaseSeconds);
+        jdbcTemplate.update("UPDATE session_leases SET expires_at = ? WHERE node_id = ?", expiresAt, nodeId);
+        Set<String> held = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT session_code FROM session_leases WHERE node_id = ?", String.class, nodeId));
+        for (String sessionCode : owned.keySet()) {
+            if (held.contains(sessionCode)) {
+                leases.put(sessionCode, new Lease(nodeId, expiresAt));
+            } else {
+                lost.incrementAndGet();
+                log.warn("[{}] Lease taken over by another node", sessionCode);
+                drop(sessionCode);
+            }
+        }
+        leases.values().removeIf(lease -> lease.expiresAt() <= now);
+    }
+
+    /**
+     * Hand the session back off the heartbeat thread. Frames are turned away from now on; once
+     * its queued work has run and the writer has stored everything, the lease row is deleted.
+     * Until then the heartbeat keeps renewing it, so no other node reads the session's latest
+     * seq before the last message is in the database.
+     */
+    private void release(String sessionCode, String reason) {
+        if (!releasing.add(sessionCode)) return;
+        owned.remove(sessionCode);
+        releases.execute(() -> {
+            try {
+                if (!sessionPipeline.awaitIdle(sessionCode, releaseDrainSeconds, TimeUnit.SECONDS)) {
+                    log.warn("[{}] Work still queued after {} s, releasing anyway", sessionCode, releaseDrainSeconds);
+                }
+                messageWriter.awaitPersisted();
+                jdbcTemplate.update("DELETE FROM session_leases WHERE session_code = ? AND node_id = ?", sessionCode, nodeId);
+                released.incrementAndGet();
+                log.info("[{}] Released by node {} ({})", sessionCode, nodeId, reason);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                // The lease stays ours and is renewed; the next frame claims the session again
+                log.warn("[{}] Could not release the session: {}", sessionCode, e.getMessage());
+            } finally {
+                drop(sessionCode);
+                releasing.remove(sessionCode);
+            }
+        });
+    }
+
+    /**
+     * Forget everything this node keeps in memory for the session. Jobs still queued for it
+     * run; the next owner reloads sequence numbers and history from the database.
+     */
+    private void drop(String sessionCode) {
+        owned.remove(sessionCode);
+        leases.remove(sessionCode);
+        try {
+            messageSequencer.forget(sessionRegistry.get(sessionCode).id());
+        } catch (RuntimeException e) {
+            log.debug("[{}] No session to forget: {}", sessionCode, e.getMessage());
+        }
+        sessionRegistry.evict(sessionCode);
+        messageTriage.forget(sessionCode);
+        historyBuffer.evict(sessionCode);
+        sessionPipeline.forget(sessionCode);
+        messageDeduplicator.forget(sessionCode);
+    }
+}
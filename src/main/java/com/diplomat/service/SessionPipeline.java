@@ -0,0 +1,303 @@
+package com.diplomat.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ordered, bounded processing of chat work. Every session has one mailbox per {@link Stage};
+ * a mailbox is drained by at most one virtual thread at a time, so jobs of a session run in
+ * submission order within each stage while different sessions (and different stages of one
+ * session) run in parallel. Nothing here holds a thread while a session is idle.
+ *
+ * <p>Work enters from the STOMP inbound threads with {@link #submit}, which never blocks and
+ * rejects the job when the mailbox is full. Stages hand work downstream with {@link #handOff},
+ * which waits for room instead. Hand-offs only go ANALYZE/INTERACTIVE → PERSIST → DISPATCH, so waiting
+ * can never form a cycle; ROUTE and PERSIST start later stages with {@link #submit}.
+ */
+@Service
+@Slf4j
+public class SessionPipeline {
+
+    public enum Stage {
+        /**
+         * With clustering on, find the node that owns the session and forward frames to it, so
+         * lease lookups and node-to-node calls never hold an inbound thread.
+         */
+        ROUTE,
+        /** Store messages; assigns the ids that fix their order. */
+        PERSIST,
+        /** Background chat analysis, one model call at a time per session. */
+        ANALYZE,
+        /**
+         * Model calls a participant asked for (translate, private coaching), one at a time per
+         * session. Kept apart from ANALYZE so they never wait behind a streaming analysis.
+         */
+        INTERACTIVE,
+        /** Send frames to clients. */
+        DISPATCH
+    }
+
+    /** The order work moves through the stages, upstream first. */
+    private static final List<Stage> FLOW = List.of(Stage.ROUTE, Stage.INTERACTIVE, Stage.ANALYZE, Stage.PERSIST, Stage.DISPATCH);
+
+    private record Job(Runnable work, long enqueuedNanos) {
+    }
+
+    private static class StageStats {
+        final AtomicLong submitted = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong waitNanos = new AtomicLong();
+        final AtomicLong runNanos = new AtomicLong();
+        final AtomicLong maxRunNanos = new AtomicLong();
+        final AtomicLong maxDepth = new AtomicLong();
+    }
+
+    @Value("${diplomat.pipeline.mailbox-capacity:256}")
+    private int mailboxCapacity;
+
+    @Value("${diplomat.pipeline.idle-evict-minutes:10}")
+    private long idleEvictMinutes;
+
+    private final Map<String, Map<Stage, Mailbox>> sessions = new ConcurrentHashMap<>();
+    private final Map<Stage, StageStats> stageStats = new EnumMap<>(Stage.class);
+    private final ExecutorService workers = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("session-pipeline-", 0).factory());
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("pipeline-sweeper").daemon().factory());
+
+    @PostConstruct
+    void start() {
+        for (Stage stage : Stage.values()) {
+            stageStats.put(stage, new StageStats());
+        }
+        sweeper.scheduleWithFixedDelay(this::evictIdle, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        sweeper.shutdownNow();
+        workers.shutdown();
+        workers.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Queue a job without blocking. Returns false (and drops the job) if the session's
+     * mailbox for this stage is full.
+     */
+    public boolean submit(String sessionCode, Stage stage, Runnable work) {
+        if (!tryEnqueue(sessionCode, stage, new Job(work, System.nanoTime()), new Mailbox[1])) {
+            stageStats.get(stage).rejected.incrementAndGet();
+            log.warn("[{}] {} mailbox is full ({} jobs); dropping work", sessionCode, stage, mailboxCapacity);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Queue a job from an earlier stage, waiting for room if the mailbox is full.
+     */
+    public void handOff(String sessionCode, Stage stage, Runnable work) {
+        Job job = new Job(work, System.nanoTime());
+        Mailbox[] full = new Mailbox[1];
+        while (!tryEnqueue(sessionCode, stage, job, full)) {
+            try {
+                // A full mailbox is never idle, so it can't be dropped while we wait on it
+                full[0].awaitRoom();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while handing work to " + stage, e);
+            }
+        }
+    }
+
+    /**
+     * Drop the mailboxes of an ended session once they are empty; jobs already queued still run.
+     */
+    public void forget(String sessionCode) {
+        sessions.computeIfPresent(sessionCode, (code, mailboxes) ->
+                mailboxes.values().stream().allMatch(Mailbox::idle) ? null : mailboxes);
+    }
+
+    /**
+     * Wait until every mailbox of the session is idle, so its work is done before another node
+     * takes it over. Returns false if work was still queued or running when the timeout ran out.
+     * Stages are checked upstream first: a job hands its result on before it finishes, so work
+     * moving downstream during the check is still seen.
+     */
+    public boolean awaitIdle(String sessionCode, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            Map<Stage, Mailbox> mailboxes = sessions.get(sessionCode);
+            if (mailboxes == null || FLOW.stream().allMatch(stage -> mailboxes.get(stage).idle())) return true;
+            if (System.nanoTime() >= deadline) return false;
+            Thread.sleep(20);
+        }
+    }
+
+    /**
+     * Per stage: jobs queued right now, the deepest single mailbox seen, and how long jobs
+     * waited in the mailbox and took to run.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sessions", sessions.size());
+        for (Stage stage : Stage.values()) {
+            StageStats s = stageStats.get(stage);
+            long done = s.completed.get() + s.failed.get();
+            Map<String, Object> stageMap = new LinkedHashMap<>();
+            stageMap.put("queued", sessions.values().stream().mapToInt(m -> m.get(stage).queue.size()).sum());
+            stageMap.put("maxDepth", s.maxDepth.get());
+            stageMap.put("submitted", s.submitted.get());
+            stageMap.put("rejected", s.rejected.get());
+            stageMap.put("completed", s.completed.get());
+            stageMap.put("failed", s.failed.get());
+            stageMap.put("avgWaitMs", done == 0 ? 0.0 : s.waitNanos.get() / 1e6 / done);
+            stageMap.put("avgRunMs", done == 0 ? 0.0 : s.runNanos.get() / 1e6 / done);
+            stageMap.put("maxRunMs", s.maxRunNanos.get() / 1e6);
+            stats.put(stage.name().toLowerCase(), stageMap);
+        }
+        return stats;
+    }
+
+    /**
+     * Find (or create) the mailbox and queue the job in one step, under the same map lock that
+     * {@link #forget} and the idle sweep take, so the job can't land in a mailbox that was just
+     * dropped. Returns false if the mailbox is full; {@code target[0]} is the mailbox either way.
+     */
+    private boolean tryEnqueue(String sessionCode, Stage stage, Job job, Mailbox[] target) {
+        boolean[] queued = new boolean[1];
+        sessions.compute(sessionCode, (code, mailboxes) -> {
+            if (mailboxes == null) {
+                mailboxes = new EnumMap<>(Stage.class);
+                for (Stage s : Stage.values()) {
+                    mailboxes.put(s, new Mailbox(code, s));
+                }
+            }
+            target[0] = mailboxes.get(stage);
+            queued[0] = target[0].queue.offer(job);
+            return mailboxes;
+        });
+        // Outside the lock; the queued job already keeps the mailbox from looking idle
+        if (queued[0]) target[0].enqueued();
+        return queued[0];
+    }
+
+    private void evictIdle() {
+        long cutoff = System.nanoTime() - TimeUnit.MINUTES.toNanos(idleEvictMinutes);
+        for (String sessionCode : sessions.keySet()) {
+            sessions.computeIfPresent(sessionCode, (code, mailboxes) -> mailboxes.values().stream()
+                    .allMatch(m -> m.idle() && m.lastActive < cutoff) ? null : mailboxes);
+        }
+    }
+
+    /**
+     * One session's queue for one stage. {@code scheduled} is set while a virtual thread
+     * owns the mailbox; whoever enqueues into an unowned mailbox starts the drain.
+     */
+    private final class Mailbox {
+        final String sessionCode;
+        final Stage stage;
+        final BlockingQueue<Job> queue = new ArrayBlockingQueue<>(mailboxCapacity);
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        final ReentrantLock roomLock = new ReentrantLock();
+        final Condition room = roomLock.newCondition();
+        final AtomicInteger waitingForRoom = new AtomicInteger();
+        volatile long lastActive = System.nanoTime();
+
+        Mailbox(String sessionCode, Stage stage) {
+            this.sessionCode = sessionCode;
+            this.stage = stage;
+        }
+
+        boolean idle() {
+            return !scheduled.get() && queue.isEmpty();
+        }
+
+        void enqueued() {
+            StageStats s = stageStats.get(stage);
+            s.submitted.incrementAndGet();
+            s.maxDepth.accumulateAndGet(queue.size(), Math::max);
+            lastActive = System.nanoTime();
+            if (scheduled.compareAndSet(false, true)) {
+                workers.execute(this::drain);
+            }
+        }
+
+        /**
+         * Wait until the queue has room (or a short while has passed; the caller retries).
+         */
+        void awaitRoom() throws InterruptedException {
+            waitingForRoom.incrementAndGet();
+            roomLock.lock();
+            try {
+                if (queue.remainingCapacity() == 0) room.await(100, TimeUnit.MILLISECONDS);
+            } finally {
+                roomLock.unlock();
+                waitingForRoom.decrementAndGet();
+            }
+        }
+
+        private void signalRoom() {
+            if (waitingForRoom.get() == 0) return;
+            roomLock.lock();
+            try {
+                room.signalAll();
+            } finally {
+                roomLock.unlock();
+            }
+        }
+
+        private void drain() {
+            do {
+                Job job;
+                while ((job = queue.poll()) != null) {
+                    signalRoom();
+                    run(job);
+                }
+                scheduled.set(false);
+                // A job queued after the last poll but before the flag was cleared saw the
+                // mailbox as owned; take it back unless its submitter already started a drain
+            } while (!queue.isEmpty() && scheduled.compareAndSet(false, true));
+        }
+
+        private void run(Job job) {
+            StageStats s = stageStats.get(stage);
+            long start = System.nanoTime();
+            s.waitNanos.addAndGet(start - job.enqueuedNanos());
+            try {
+                job.work().run();
+                s.completed.incrementAndGet();
+            } catch (RuntimeException e) {
+                s.failed.incrementAndGet();
+                log.error("[{}] {} job failed: {}", sessionCode, stage, e.getMessage(), e);
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                s.runNanos.addAndGet(elapsed);
+                s.maxRunNanos.accumulateAndGet(elapsed, Math::max);
+                lastActive = System.nanoTime();
+            }
+        }
+    }
+}
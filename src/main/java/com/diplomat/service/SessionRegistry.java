@@ -0,0 +1,139 @@
+package com.diplomat.service;
+
+import com.diplomat.model.Conversation;
+import com.diplomat.repository.ConversationRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * Write-through cache of {@link SessionInfo} for live sessions, so the chat path reads
+ * participants, mode, levels and constitution text without touching the database.
+ * Every write to a conversation or its constitution refreshes the entry after commit;
+ * ended sessions are never cached.
+ */
+@Service
+@RequiredArgsConstructor
+public class SessionRegistry {
+
+    private record Cached(SessionInfo info, long lastAccess) {
+    }
+
+    private final ConversationRepository conversationRepository;
+
+    @Value("${diplomat.sessions.idle-evict-minutes:60}")
+    private long idleEvictMinutes;
+
+    private final Map<String, Cached> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("session-sweeper").daemon().factory());
+
+    @PostConstruct
+    void startSweeper() {
+        sweeper.scheduleWithFixedDelay(this::evictIdle, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    void stopSweeper() {
+        sweeper.shutdownNow();
+    }
+
+    public SessionInfo get(String sessionCode) {
+        return find(sessionCode).orElseThrow(() -> new RuntimeException("Session not found: " + sessionCode));
+    }
+
+    public Optional<SessionInfo> find(String sessionCode) {
+        long now = System.currentTimeMillis();
+        Cached cached = sessions.computeIfPresent(sessionCode, (k, c) -> new Cached(c.info(), now));
+        if (cached != null) {
+            hits.incrementAndGet();
+            return Optional.of(cached.info());
+        }
+
+        misses.incrementAndGet();
+        Optional<SessionInfo> info = conversationRepository.findWithConstitutionBySessionCode(sessionCode)
+                .map(SessionInfo::of);
+        info.filter(i -> !i.isEnded()).ifPresent(i -> sessions.putIfAbsent(sessionCode, new Cached(i, now)));
+        return info;
+    }
+
+    /**
+     * Replace the cached entry with the saved state of a conversation once the current
+     * transaction commits (immediately if there is none).
+     */
+    public void refresh(Conversation conv) {
+        SessionInfo info = SessionInfo.of(conv);
+        afterCommit(() -> {
+            if (info.isEnded()) {
+                sessions.remove(info.sessionCode());
+            } else {
+                sessions.put(info.sessionCode(), new Cached(info, System.currentTimeMillis()));
+            }
+        });
+    }
+
+    /**
+     * Apply a change to the cached entry, if any, once the current transaction commits
+     * (immediately if there is none). Atomic per session, so concurrent changes to different
+     * fields all survive.
+     */
+    public void update(String sessionCode, UnaryOperator<SessionInfo> change) {
+        afterCommit(() -> sessions.computeIfPresent(sessionCode,
+                (k, c) -> new Cached(change.apply(c.info()), System.currentTimeMillis())));
+    }
+
+    /**
+     * Drop every cached session that uses this constitution; they reload on next access.
+     */
+    public void constitutionChanged(Long constitutionId) {
+        afterCommit(() -> sessions.values().removeIf(c -> constitutionId.equals(c.info().constitutionId())));
+    }
+
+    public void evict(String sessionCode) {
+        afterCommit(() -> sessions.remove(sessionCode));
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long lookups = hits.get() + misses.get();
+        stats.put("cached", sessions.size());
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("hitRate", lookups == 0 ? 0.0 : (double) hits.get() / lookups);
+        return stats;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(idleEvictMinutes);
+        sessions.values().removeIf(c -> c.lastAccess() < cutoff);
+    }
+}
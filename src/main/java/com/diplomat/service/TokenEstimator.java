@@ -0,0 +1,88 @@
+package com.diplomat.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Locale;
+
+/**
+ * Cheap token count estimate for the configured model, good enough for budgeting
+ * prompts without shipping a tokenizer. ASCII text is counted at a per-model
+ * chars-per-token ratio; every other code point counts as a full token.
+ */
+@Service
+@Slf4j
+public class TokenEstimator {
+
+    /**
+     * Role markers and separators the chat format adds around each message.
+     */
+    public static final int MESSAGE_OVERHEAD = 4;
+
+    @Value("${diplomat.llm.provider:ollama}")
+    private String provider;
+
+    @Value("${diplomat.llm.ollama.model:llama3.1:8b}")
+    private String ollamaModel;
+
+    @Value("${diplomat.llm.openai.model:gpt-4o}")
+    private String openaiModel;
+
+    @Value("${diplomat.llm.context.chars-per-token:0}")
+    private double configuredCharsPerToken;
+
+    private String model;
+    private double charsPerToken;
+
+    @PostConstruct
+    void init() {
+        model = "openai".equalsIgnoreCase(provider) ? openaiModel : ollamaModel;
+        charsPerToken = configuredCharsPerToken > 0 ? configuredCharsPerToken : defaultCharsPerToken(model);
+        log.info("Token estimator: model={}, charsPerToken={}", model, charsPerToken);
+    }
+
+    /**
+     * Typical English chars-per-token for common model families; larger vocabularies
+     * pack more characters into each token.
+     */
+    static double defaultCharsPerToken(String model) {
+        String m = model.toLowerCase(Locale.ROOT);
+        if (m.startsWith("gpt-4o") || m.startsWith("gpt-4.1") || m.startsWith("o1") || m.startsWith("o3")) return 4.2;
+        if (m.startsWith("gpt-")) return 3.9;
+        if (m.startsWith("llama3") || m.startsWith("llama-3") || m.startsWith("gemma") || m.startsWith("qwen")) return 3.8;
+        if (m.startsWith("mistral") || m.startsWith("mixtral") || m.startsWith("llama2")) return 3.2;
+        return 3.5;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public int estimate(String text) {
+        if (text == null || text.isEmpty()) return 0;
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); ) {
+            int cp = text.codePointAt(i);
+            if (cp < 0x80) ascii++;
+            else other++;
+            i += Character.charCount(cp);
+        }
+        return (int) Math.ceil(ascii / charsPerToken) + other;
+    }
+
+    /**
+     * Cut text down to roughly {@code maxTokens}, marking the cut.
+     */
+    public String truncate(String text, int maxTokens) {
+        if (estimate(text) <= maxTokens) return text;
+        if (maxTokens <= 0) return "";
+        int end = Math.min(text.length(), (int) (maxTokens * charsPerToken));
+        while (end > 0 && estimate(text.substring(0, end)) > maxTokens - 2) {
+            end = end * 9 / 10;
+        }
+        return text.substring(0, end) + " …(truncated)";
+    }
+}
@@ -0,0 +1,11 @@
+package com.diplomat.service;
+
+/**
+ * Thrown when a sender or recipient name is not one of the session's participants.
+ */
+public class UnknownParticipantException extends RuntimeException {
+
+    public UnknownParticipantException(String sessionCode, String name) {
+        super("Participant not found in session " + sessionCode + ": " + name);
+    }
+}
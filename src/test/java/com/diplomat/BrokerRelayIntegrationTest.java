@@ -0,0 +1,234 @@
+package com.diplomat;
+
+import com.diplomat.dto.ChatMessage;
+import com.diplomat.service.ConversationService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Two nodes in relay broker mode: node 1 runs the embedded Artemis broker (profile
+ * {@code embedded-broker}), node 2 relays to it. A frame sent by a client of one node
+ * reaches the subscribers connected to the other. A stub Ollama streams the Diplomat's replies.
+ */
+class BrokerRelayIntegrationTest {
+
+    private static final String SESSION_CODE = "RELAY001";
+    private static final List<String> COACHING_TOKENS = List.of("Take ", "a ", "breath.");
+    private static final ObjectMapper json = new ObjectMapper();
+
+    @TempDir
+    static Path dir;
+
+    private static ConfigurableApplicationContext brokerNode;
+    private static ConfigurableApplicationContext relayNode;
+    private static WebSocketStompClient stompClient;
+    private static HttpServer ollama;
+    private static int stompPort;
+
+    @BeforeAll
+    static void startNodes() throws IOException {
+        ollama = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        ollama.createContext("/api/chat", BrokerRelayIntegrationTest::chat);
+        ollama.start();
+
+        stompPort = freePort();
+        brokerNode = node().profiles("embedded-broker").run(args("node1"));
+        relayNode = node().run(args("node2", "--diplomat.broker.mode=relay",
+                "--diplomat.broker.relay.client-login=guest", "--diplomat.broker.relay.client-passcode=guest",
+                "--diplomat.broker.relay.system-login=guest", "--diplomat.broker.relay.system-passcode=guest"));
+
+        stompClient = new WebSocketStompClient(new SockJsClient(List.of(new WebSocketTransport(new StandardWebSocketClient()))));
+        stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+    }
+
+    @AfterAll
+    static void stopNodes() {
+        if (relayNode != null) relayNode.close();
+        if (brokerNode != null) brokerNode.close();
+        if (ollama != null) ollama.stop(0);
+    }
+
+    @Test
+    void framesReachClientsOfTheOtherNode() throws Exception {
+        StompSession onBrokerNode = connect(brokerNode);
+        StompSession onRelayNode = connect(relayNode);
+        BlockingQueue<ChatMessage> seenOnBrokerNode = subscribe(onBrokerNode, "/topic/chat/" + SESSION_CODE);
+        BlockingQueue<ChatMessage> seenOnRelayNode = subscribe(onRelayNode, "/topic/chat/" + SESSION_CODE);
+        Thread.sleep(500); // let both subscriptions reach the broker
+
+        onRelayNode.send("/app/join/" + SESSION_CODE, ChatMessage.builder().sender("Bob").type("JOIN").build());
+        assertJoinOf("Bob", seenOnBrokerNode.poll(10, TimeUnit.SECONDS));
+        assertJoinOf("Bob", seenOnRelayNode.poll(10, TimeUnit.SECONDS));
+
+        onBrokerNode.send("/app/join/" + SESSION_CODE, ChatMessage.builder().sender("Alice").type("JOIN").build());
+        assertJoinOf("Alice", seenOnRelayNode.poll(10, TimeUnit.SECONDS));
+        assertJoinOf("Alice", seenOnBrokerNode.poll(10, TimeUnit.SECONDS));
+
+        onBrokerNode.disconnect();
+        onRelayNode.disconnect();
+    }
+
+    @Test
+    void privateAndStreamedFramesReachOnlyTheirParticipantOnTheOtherNode() throws Exception {
+        ConversationService conversations = relayNode.getBean(ConversationService.class);
+        String code = conversations.createSession("Alice").getSessionCode();
+        conversations.joinSession(code, "Bob");
+
+        StompSession onBrokerNode = connect(brokerNode);
+        StompSession onRelayNode = connect(relayNode);
+        BlockingQueue<ChatMessage> bobsPrivate = subscribe(onBrokerNode, "/topic/private/" + code + "/Bob");
+        BlockingQueue<ChatMessage> alicesPrivate = subscribe(onBrokerNode, "/topic/private/" + code + "/Alice");
+        Thread.sleep(500); // let the subscriptions reach the broker
+
+        // Bob's client on the relay node asks for coaching; the node with the session handles it
+        onRelayNode.send("/app/private/" + code, ChatMessage.builder()
+                .sender("Bob").content("I'm getting angry").type("PRIVATE").recipient("Bob").clientMessageId("c1").build());
+
+        ChatMessage echo = bobsPrivate.poll(10, TimeUnit.SECONDS);
+        assertThat(echo).isNotNull();
+        assertThat(echo.getType()).isEqualTo("PRIVATE");
+        assertThat(echo.getClientMessageId()).isEqualTo("c1");
+
+        StringBuilder streamed = new StringBuilder();
+        String responseId = null;
+        ChatMessage frame;
+        while ((frame = bobsPrivate.poll(10, TimeUnit.SECONDS)) != null && frame.getType().equals("DIPLOMAT_STREAM")) {
+            assertThat(frame.getRecipient()).isEqualTo("Bob");
+            responseId = frame.getResponseId();
+            streamed.append(frame.getContent());
+        }
+        assertThat(streamed).hasToString(String.join("", COACHING_TOKENS));
+        assertThat(frame).isNotNull();
+        assertThat(frame.getType()).isEqualTo("PRIVATE_COACHING");
+        assertThat(frame.getContent()).isEqualTo(String.join("", COACHING_TOKENS));
+        assertThat(frame.getResponseId()).isEqualTo(responseId);
+        assertThat(frame.getSeq()).isNotNull();
+
+        assertThat(alicesPrivate.poll(500, TimeUnit.MILLISECONDS)).isNull();
+        onBrokerNode.disconnect();
+        onRelayNode.disconnect();
+    }
+
+    @Test
+    void relayModeWithoutCredentialsDoesNotStart() {
+        assertThatThrownBy(() -> node().run(args("node3", "--diplomat.broker.mode=relay")))
+                .hasRootCauseInstanceOf(IllegalStateException.class)
+                .rootCause().hasMessageContaining("must be set in relay mode");
+    }
+
+    private static void assertJoinOf(String participant, ChatMessage frame) {
+        assertThat(frame).isNotNull();
+        assertThat(frame.getType()).isEqualTo("JOIN");
+        assertThat(frame.getContent()).startsWith(participant + " has joined");
+    }
+
+    private static SpringApplicationBuilder node() {
+        return new SpringApplicationBuilder(DiplomatApplication.class);
+    }
+
+    // As command-line arguments, so they win over application.yml and the profile
+    private static String[] args(String name, String... more) {
+        return Stream.concat(Stream.of(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:sqlite:" + dir.resolve(name + ".db"),
+                "--diplomat.archive.dir=" + dir.resolve(name + "-archive"),
+                "--diplomat.broker.relay.port=" + stompPort,
+                "--diplomat.llm.ollama.base-url=http://127.0.0.1:" + ollama.getAddress().getPort()), Stream.of(more))
+                .toArray(String[]::new);
+    }
+
+    /**
+     * Ollama's streaming /api/chat: one JSON object per line, the last one marked done.
+     */
+    private static void chat(HttpExchange exchange) throws IOException {
+        String model = json.readTree(exchange.getRequestBody()).get("model").asText();
+        exchange.getResponseHeaders().add("Content-Type", "application/x-ndjson");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (String token : COACHING_TOKENS) {
+                line(out, json.createObjectNode().put("model", model).put("created_at", "2024-01-01T00:00:00Z").put("done", false)
+                        .set("message", json.createObjectNode().put("role", "assistant").put("content", token)));
+            }
+            line(out, json.createObjectNode().put("model", model).put("created_at", "2024-01-01T00:00:00Z").put("done", true)
+                    .put("prompt_eval_count", 10).put("eval_count", COACHING_TOKENS.size())
+                    .set("message", json.createObjectNode().put("role", "assistant").put("content", "")));
+        }
+    }
+
+    private static void line(OutputStream out, Object node) throws IOException {
+        out.write((json.writeValueAsString(node) + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    /**
+     * Connect a client, retrying while the node's relay is still connecting to the broker.
+     */
+    private static StompSession connect(ConfigurableApplicationContext node) throws Exception {
+        int port = ((WebServerApplicationContext) node).getWebServer().getPort();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (true) {
+            try {
+                return stompClient.connectAsync("http://localhost:" + port + "/ws", new StompSessionHandlerAdapter() {
+                }).get(10, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                if (System.nanoTime() > deadline) throw e;
+                Thread.sleep(500);
+            }
+        }
+    }
+
+    private static BlockingQueue<ChatMessage> subscribe(StompSession session, String destination) {
+        BlockingQueue<ChatMessage> frames = new LinkedBlockingQueue<>();
+        session.subscribe(destination, new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return ChatMessage.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                frames.add((ChatMessage) payload);
+            }
+        });
+        return frames;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.diplomat;
+
+import com.diplomat.model.Message;
+import com.diplomat.repository.MessageRepository;
+import com.diplomat.service.ConversationService;
+import com.diplomat.service.MessageWriter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Context loads (the last 60 messages, as the history buffer seeds them) in sessions of
+ * growing length, against loading the whole session as the code did before. Also reports
+ * how fast the batching writer stores the sessions. Run with
+ * {@code mvn test -Pbenchmarks -Dtest=ContextLoadBenchmark}.
+ */
+@Tag("benchmark")
+class ContextLoadBenchmark {
+
+    private static final int WINDOW = 60;
+    private static final int RUNS = 200;
+
+    @TempDir
+    static Path dir;
+
+    private static ConfigurableApplicationContext app;
+
+    @BeforeAll
+    static void start() {
+        app = new SpringApplicationBuilder(DiplomatApplication.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:sqlite:" + dir.resolve("bench.db"),
+                "--diplomat.archive.dir=" + dir.resolve("archive"));
+    }
+
+    @AfterAll
+    static void stop() {
+        if (app != null) app.close();
+    }
+
+    @Test
+    void recentMessagesLoadInConstantTime() {
+        ConversationService conversations = app.getBean(ConversationService.class);
+        MessageRepository messages = app.getBean(MessageRepository.class);
+        MessageWriter writer = app.getBean(MessageWriter.class);
+
+        System.out.printf("%n%9s %12s %12s %14s %16s%n", "messages", "write msg/s", "recent ms", "visible-to ms", "load-all ms");
+        int[] sizes = {100, 100, 1_000, 10_000}; // the first round only warms up
+        for (int round = 0; round < sizes.length; round++) {
+            int size = sizes[round];
+            String code = conversations.createSession("Alice").getSessionCode();
+            conversations.joinSession(code, "Bob");
+
+            long start = System.nanoTime();
+            for (int i = 1; i <= size; i++) {
+                String sender = i % 2 == 1 ? "Alice" : "Bob";
+                if (i % 10 == 0) {
+                    conversations.saveDiplomatMessage(code, "A private note " + i, "PRIVATE_COACHING", null, sender);
+                } else {
+                    conversations.saveMessage(code, sender, "Message " + i + " about the budget", "CHAT");
+                }
+            }
+            writer.awaitPersisted();
+            double perSecond = size * 1e9 / (System.nanoTime() - start);
+
+            double recent = p50(() -> conversations.getRecentMessages(code, WINDOW));
+            double visible = p50(() -> conversations.getRecentMessagesForParticipant(code, "Alice", WINDOW));
+            double loadAll = p50(() -> {
+                List<Message> all = messages.findByConversationSessionCodeOrderByTimestampAsc(code);
+                return all.subList(Math.max(0, all.size() - WINDOW), all.size());
+            });
+            if (round == 0) continue;
+            System.out.printf("%9d %12.0f %12.3f %14.3f %16.3f%n", size, perSecond, recent, visible, loadAll);
+        }
+
+        // Both context queries walk an index from the newest row and stop at the limit
+        JdbcTemplate jdbc = app.getBean(JdbcTemplate.class);
+        assertThat(plan(jdbc, "SELECT * FROM messages WHERE conversation_id = 1 ORDER BY timestamp DESC, id DESC LIMIT 60"))
+                .contains("idx_messages_conversation_timestamp").doesNotContain("TEMP B-TREE");
+        assertThat(plan(jdbc, """
+                SELECT * FROM messages WHERE conversation_id = 1
+                AND (recipient_role IS NULL OR recipient_role = 0 OR sender_role = 0)
+                ORDER BY timestamp DESC, id DESC LIMIT 60"""))
+                .contains("idx_messages_conversation_timestamp").doesNotContain("TEMP B-TREE");
+    }
+
+    private static String plan(JdbcTemplate jdbc, String sql) {
+        return String.join("\n", jdbc.query("EXPLAIN QUERY PLAN " + sql, (rs, i) -> rs.getString("detail")));
+    }
+
+    private static double p50(Supplier<List<?>> load) {
+        for (int i = 0; i < RUNS; i++) assertThat(load.get()).hasSize(WINDOW); // warm up
+        long[] nanos = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            load.get();
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos[RUNS / 2] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
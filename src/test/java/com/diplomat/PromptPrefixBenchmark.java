@@ -0,0 +1,144 @@
+package com.diplomat;
+
+import com.diplomat.service.ConversationService;
+import com.diplomat.service.DiplomatService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Prompt evaluation per analysis call in the two prompt modes, against a stub Ollama.
+ * Run with {@code mvn test -Pbenchmarks -Dtest=PromptPrefixBenchmark}.
+ *
+ * <p>The stub behaves like a llama.cpp slot: it keeps the previous prompt, reuses the
+ * longest common prefix and evaluates only the rest, at {@link #MICROS_PER_TOKEN}. The
+ * token counts are exact for that model of the cache; the times follow from the assumed
+ * eval rate, so compare them with each other, not with a real GPU.
+ */
+@Tag("benchmark")
+class PromptPrefixBenchmark {
+
+    private static final int MESSAGES = 40; // stays inside the 60-line history window
+    private static final int CHARS_PER_TOKEN = 4;
+    private static final long MICROS_PER_TOKEN = 200; // 5k tokens/s prompt eval
+
+    @TempDir
+    static Path dir;
+
+    private static HttpServer ollama;
+    private static ConfigurableApplicationContext app;
+    private static final ObjectMapper json = new ObjectMapper();
+    private static final AtomicLong promptTokens = new AtomicLong();
+    private static final AtomicLong evaluatedTokens = new AtomicLong();
+    private static String cachedPrompt = "";
+
+    @BeforeAll
+    static void start() throws IOException {
+        ollama = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        ollama.createContext("/api/chat", PromptPrefixBenchmark::chat);
+        ollama.start();
+        app = new SpringApplicationBuilder(DiplomatApplication.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:sqlite:" + dir.resolve("bench.db"),
+                "--diplomat.archive.dir=" + dir.resolve("archive"),
+                "--diplomat.llm.ollama.base-url=http://127.0.0.1:" + ollama.getAddress().getPort());
+    }
+
+    @AfterAll
+    static void stop() {
+        if (app != null) app.close();
+        ollama.stop(0);
+    }
+
+    @Test
+    void stablePrefixCutsPromptEvaluation() {
+        Result flat = run("flat");
+        Result chat = run("chat");
+
+        System.out.printf("%n%-5s %14s %16s %12s %14s%n", "mode", "prompt tokens", "evaluated tokens", "reused", "eval ms/call");
+        for (Result r : new Result[]{flat, chat}) {
+            System.out.printf("%-5s %14d %16d %11.1f%% %14.1f%n", r.mode, r.promptTokens, r.evaluatedTokens,
+                    100.0 * (r.promptTokens - r.evaluatedTokens) / r.promptTokens, r.millisPerCall);
+        }
+        assertThat(chat.evaluatedTokens).isLessThan(flat.evaluatedTokens);
+    }
+
+    private static Result run(String mode) {
+        ConversationService conversations = app.getBean(ConversationService.class);
+        DiplomatService diplomat = app.getBean(DiplomatService.class);
+        Object target = AopTestUtils.getUltimateTargetObject(diplomat);
+        ReflectionTestUtils.setField(target, "promptMode", mode);
+
+        String code = conversations.createSession("Alice").getSessionCode();
+        conversations.joinSession(code, "Bob");
+        cachedPrompt = "";
+        promptTokens.set(0);
+        evaluatedTokens.set(0);
+
+        long start = System.nanoTime();
+        for (int i = 1; i <= MESSAGES; i++) {
+            String sender = i % 2 == 1 ? "Alice" : "Bob";
+            String content = "Message " + i + ": I feel like we keep coming back to the budget and the holidays.";
+            conversations.saveMessage(code, sender, content, "CHAT");
+            diplomat.analyzeAndRespond(code, sender, content);
+        }
+        double millisPerCall = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / 1000.0 / MESSAGES;
+        return new Result(mode, promptTokens.get(), evaluatedTokens.get(), millisPerCall);
+    }
+
+    private static synchronized void chat(HttpExchange exchange) throws IOException {
+        JsonNode request = json.readTree(exchange.getRequestBody());
+        StringBuilder prompt = new StringBuilder();
+        for (JsonNode message : request.get("messages")) {
+            prompt.append('<').append(message.get("role").asText()).append(">\n")
+                    .append(message.get("content").asText()).append('\n');
+        }
+        int reused = 0;
+        int max = Math.min(prompt.length(), cachedPrompt.length());
+        while (reused < max && prompt.charAt(reused) == cachedPrompt.charAt(reused)) reused++;
+        cachedPrompt = prompt.toString();
+
+        long total = prompt.length() / CHARS_PER_TOKEN;
+        long evaluated = (prompt.length() - reused) / CHARS_PER_TOKEN;
+        promptTokens.addAndGet(total);
+        evaluatedTokens.addAndGet(evaluated);
+        try {
+            TimeUnit.MICROSECONDS.sleep(evaluated * MICROS_PER_TOKEN);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        byte[] body = json.writeValueAsBytes(json.createObjectNode()
+                .put("model", request.get("model").asText())
+                .put("created_at", "2024-01-01T00:00:00Z")
+                .put("done", true)
+                .put("prompt_eval_count", evaluated)
+                .put("eval_count", 3)
+                .set("message", json.createObjectNode().put("role", "assistant").put("content", "[NO_INTERVENTION]")));
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+
+    private record Result(String mode, long promptTokens, long evaluatedTokens, double millisPerCall) {
+    }
+}
@@ -0,0 +1,83 @@
+package com.diplomat.config;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Migration time and file size on a legacy database of a million messages. Run with
+ * {@code mvn test -Pbenchmarks -Dtest=SchemaMigrationBenchmark}; {@code -Dbenchmark.messages=}
+ * changes the size.
+ */
+@Tag("benchmark")
+class SchemaMigrationBenchmark {
+
+    private static final int MESSAGES = Integer.getInteger("benchmark.messages", 1_000_000);
+    private static final int SESSIONS = 1_000;
+    private static final String[] TYPES = {"CHAT", "CHAT", "CHAT", "DIPLOMAT_OBSERVATION", "DIPLOMAT_REFRAME", "FALLACY_ALERT"};
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void legacyDatabaseMigration() throws SQLException, IOException {
+        Path file = dir.resolve("legacy.db");
+        SingleConnectionDataSource dataSource = new SingleConnectionDataSource("jdbc:sqlite:" + file, true);
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute(SchemaMigrationTest.LEGACY_CONVERSATIONS_DDL);
+        jdbc.execute(SchemaMigrationTest.LEGACY_MESSAGES_DDL);
+        List<Object[]> sessions = new ArrayList<>();
+        for (int s = 1; s <= SESSIONS; s++) {
+            sessions.add(new Object[]{s, "S" + s, "Alice" + s, "Bob" + s, "ENDED", "FREE_TALK"});
+        }
+        jdbc.batchUpdate("INSERT INTO conversations VALUES (?, ?, ?, ?, ?, ?)", sessions);
+        fill(jdbc);
+        jdbc.execute("VACUUM");
+        long before = Files.size(file);
+
+        long start = System.nanoTime();
+        new SchemaMigration(dataSource).migrate();
+        long took = System.nanoTime() - start;
+        jdbc.execute("VACUUM");
+        long after = Files.size(file);
+
+        System.out.printf("%nMigrated %,d messages in %.1f s; vacuumed size %.1f MB -> %.1f MB%n",
+                MESSAGES, took / 1e9, before / 1e6, after / 1e6);
+        assertThat(jdbc.queryForObject("SELECT MAX(seq) FROM messages", Long.class)).isEqualTo((long) MESSAGES / SESSIONS);
+        dataSource.destroy();
+    }
+
+    private static void fill(JdbcTemplate jdbc) {
+        List<Object[]> batch = new ArrayList<>(10_000);
+        long start = TimeUnit.DAYS.toMillis(19_700);
+        for (int id = 1; id <= MESSAGES; id++) {
+            int session = (id - 1) % SESSIONS + 1; // sessions interleave, as live ones do
+            String sender = switch (id % 5) {
+                case 0 -> "DIPLOMAT";
+                case 1, 3 -> "Alice" + session;
+                default -> "Bob" + session;
+            };
+            String recipient = id % 50 == 0 ? "Alice" + session : null;
+            batch.add(new Object[]{id, session, sender, "Message " + id + " about the budget and the holidays",
+                    TYPES[id % TYPES.length], recipient, start + id * 1000L});
+            if (batch.size() == 10_000 || id == MESSAGES) {
+                jdbc.execute("BEGIN");
+                jdbc.batchUpdate("INSERT INTO messages VALUES (?, ?, ?, ?, ?, NULL, ?, ?)", batch);
+                jdbc.execute("COMMIT");
+                batch.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.diplomat.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SchemaMigrationTest {
+
+    static final String LEGACY_CONVERSATIONS_DDL = """
+            CREATE TABLE conversations (
+                id integer primary key, session_code varchar(255), participanta varchar(255),
+                participantb varchar(255), status varchar(255), mode varchar(255))""";
+    static final String LEGACY_MESSAGES_DDL = """
+            CREATE TABLE messages (
+                id integer primary key, conversation_id bigint not null, sender varchar(255) not null,
+                content varchar(4000) not null, message_type varchar(255) not null, fallacy_type varchar(255),
+                recipient varchar(255), timestamp timestamp not null)""";
+
+    @TempDir
+    Path dir;
+
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new DriverManagerDataSource("jdbc:sqlite:" + dir.resolve("legacy.db"));
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute(LEGACY_CONVERSATIONS_DDL);
+        jdbcTemplate.execute(LEGACY_MESSAGES_DDL);
+        jdbcTemplate.execute("""
+                CREATE VIRTUAL TABLE messages_fts USING fts5(
+                    content, sender UNINDEXED, conversation_id UNINDEXED, timestamp UNINDEXED)""");
+        jdbcTemplate.update("INSERT INTO conversations VALUES (1, 'S1', 'Alice', 'Bob', 'ENDED', 'GUIDED'), "
+                + "(2, 'S2', 'Carol', 'Dan', 'SOMETHING_OLD', 'FREE_TALK')");
+    }
+
+    @Test
+    void namesAndEnumStringsBecomeCodes() throws SQLException {
+        message(1, 1, "Alice", "CHAT", null);
+        message(2, 1, "DIPLOMAT", "DIPLOMAT_REFRAME", null);
+        message(3, 1, "DIPLOMAT", "PRIVATE_COACHING_OLD", "Bob");
+        message(4, 1, "Mallory", "CHAT", null);
+        jdbcTemplate.update("INSERT INTO messages_fts (rowid, content, sender, conversation_id, timestamp) "
+                + "VALUES (1, 'hello', 'Alice', 1, 0)");
+
+        new SchemaMigration(dataSource).migrate();
+
+        assertThat(jdbcTemplate.queryForList("SELECT sender_role, message_type, recipient_role FROM messages ORDER BY id"))
+                .containsExactly(
+                        row(0, 0, null),  // Alice: participant A, CHAT
+                        row(2, 4, null),  // DIPLOMAT, legacy prefix dropped: REFRAME
+                        row(2, 3, 1),     // unknown type: OBSERVATION, to participant B
+                        row(3, 0, null)); // not in the session: SYSTEM
+        assertThat(jdbcTemplate.queryForObject("SELECT sender_role FROM messages_fts WHERE rowid = 1", Integer.class)).isZero();
+        assertThat(jdbcTemplate.queryForList("SELECT status, mode FROM conversations ORDER BY id"))
+                .containsExactly(Map.of("status", 3, "mode", 1), Map.of("status", 1, "mode", 0));
+    }
+
+    @Test
+    void messagesAreNumberedPerSessionAfterWhatIsArchived() throws SQLException {
+        jdbcTemplate.execute("CREATE TABLE archived_sessions (conversation_id integer primary key, message_count integer not null)");
+        jdbcTemplate.update("INSERT INTO archived_sessions VALUES (1, 3)");
+        message(10, 1, "Alice", "CHAT", null);
+        message(11, 2, "Carol", "CHAT", null);
+        message(12, 1, "Bob", "CHAT", null);
+        message(13, 2, "Dan", "CHAT", null);
+        message(14, 1, "Alice", "CHAT", null);
+
+        new SchemaMigration(dataSource).migrate();
+
+        assertThat(jdbcTemplate.queryForList("SELECT seq FROM messages WHERE conversation_id = 1 ORDER BY id", Long.class))
+                .containsExactly(4L, 5L, 6L);
+        assertThat(jdbcTemplate.queryForList("SELECT seq FROM messages WHERE conversation_id = 2 ORDER BY id", Long.class))
+                .containsExactly(1L, 2L);
+    }
+
+    @Test
+    void sessionNumberedTwiceIsRenumberedFromItsFirstSeq() throws SQLException {
+        for (int id = 1; id <= 4; id++) message(id, 1, "Alice", "CHAT", null);
+        message(5, 2, "Carol", "CHAT", null);
+        new SchemaMigration(dataSource).migrate();
+        jdbcTemplate.execute("CREATE INDEX idx_messages_conversation_seq ON messages (conversation_id, seq)");
+        // Two nodes numbered session 1 on from 10 at once; ids follow each node's id block
+        jdbcTemplate.update("UPDATE messages SET seq = CASE id WHEN 1 THEN 10 WHEN 2 THEN 11 WHEN 3 THEN 11 ELSE 10 END "
+                + "WHERE conversation_id = 1");
+
+        new SchemaMigration(dataSource).migrate();
+
+        assertThat(jdbcTemplate.queryForList("SELECT id FROM messages WHERE conversation_id = 1 ORDER BY seq", Long.class))
+                .containsExactly(1L, 4L, 2L, 3L);
+        assertThat(jdbcTemplate.queryForList("SELECT seq FROM messages WHERE conversation_id = 1 ORDER BY seq", Long.class))
+                .containsExactly(10L, 11L, 12L, 13L);
+        assertThat(jdbcTemplate.queryForObject("SELECT seq FROM messages WHERE conversation_id = 2", Long.class)).isEqualTo(1L);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM sqlite_master WHERE name = 'idx_messages_conversation_seq'", Long.class)).isZero();
+    }
+
+    @Test
+    void migratedDatabaseIsLeftAlone() throws SQLException {
+        message(1, 1, "Alice", "CHAT", null);
+        new SchemaMigration(dataSource).migrate();
+        jdbcTemplate.update("UPDATE messages SET seq = 42");
+
+        new SchemaMigration(dataSource).migrate();
+
+        assertThat(jdbcTemplate.queryForObject("SELECT seq FROM messages", Long.class)).isEqualTo(42L);
+    }
+
+    private void message(long id, long conversationId, String sender, String type, String recipient) {
+        jdbcTemplate.update("INSERT INTO messages VALUES (?, ?, ?, 'text', ?, NULL, ?, CURRENT_TIMESTAMP)",
+                id, conversationId, sender, type, recipient);
+    }
+
+    private static Map<String, Object> row(Integer sender, Integer type, Integer recipient) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("sender_role", sender);
+        row.put("message_type", type);
+        row.put("recipient_role", recipient);
+        return row;
+    }
+}
@@ -0,0 +1,150 @@
+package com.diplomat.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.sqlite.SQLiteDataSource;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Concurrent history reads and single-row writes against one pool on the default rollback
+ * journal (the setup before the split) and against {@link DataSourceConfig}'s WAL writer
+ * plus read-only pool. Run with {@code mvn test -Pbenchmarks -Dtest=SqliteConcurrencyBenchmark}.
+ */
+@Tag("benchmark")
+class SqliteConcurrencyBenchmark {
+
+    private static final int READERS = 8;
+    private static final int WRITERS = 4;
+    private static final int CONVERSATIONS = 50;
+    private static final int PREFILL = 50_000;
+    private static final long SECONDS = 5;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void splitPoolsServeMoreReadsAndWritesWithoutBusyErrors() throws Exception {
+        Result single;
+        String singleUrl = "jdbc:sqlite:" + dir.resolve("single.db");
+        try (HikariDataSource pool = singlePool(singleUrl)) {
+            single = run("single pool", pool, pool);
+        }
+
+        Result split;
+        DataSourceConfig config = new DataSourceConfig();
+        ReflectionTestUtils.setField(config, "url", "jdbc:sqlite:" + dir.resolve("split.db"));
+        ReflectionTestUtils.setField(config, "readPoolSize", 4);
+        ReflectionTestUtils.setField(config, "synchronous", "NORMAL");
+        ReflectionTestUtils.setField(config, "cacheSizeKb", 16384);
+        ReflectionTestUtils.setField(config, "mmapSizeMb", 256L);
+        ReflectionTestUtils.setField(config, "busyTimeoutMs", 5000);
+        ReflectionTestUtils.setField(config, "archiveDir", dir.resolve("archive").toString());
+        try (HikariDataSource writer = config.sqliteWriterDataSource();
+             HikariDataSource reader = config.sqliteReaderDataSource(writer)) {
+            split = run("split", writer, reader);
+        }
+
+        System.out.printf("%n%-12s %10s %10s %12s %14s%n", "setup", "reads/s", "writes/s", "busy errors", "read p99 ms");
+        for (Result r : List.of(single, split)) {
+            System.out.printf("%-12s %10.0f %10.0f %12d %14.2f%n", r.name, r.reads / (double) SECONDS,
+                    r.writes / (double) SECONDS, r.errors, r.readP99Ms);
+        }
+        assertThat(split.errors).isZero();
+        assertThat(split.reads).isGreaterThan(single.reads);
+    }
+
+    private static HikariDataSource singlePool(String url) {
+        SQLiteDataSource sqlite = new SQLiteDataSource();
+        sqlite.setUrl(url);
+        HikariConfig config = new HikariConfig();
+        config.setDataSource(sqlite);
+        config.setMaximumPoolSize(READERS + WRITERS);
+        return new HikariDataSource(config);
+    }
+
+    private static Result run(String name, DataSource writes, DataSource reads) throws Exception {
+        JdbcTemplate writer = new JdbcTemplate(writes);
+        writer.execute("""
+                CREATE TABLE messages (id integer primary key, conversation_id bigint not null,
+                    content varchar(4000) not null, timestamp bigint not null)""");
+        writer.execute("CREATE INDEX idx_messages_conversation_timestamp ON messages (conversation_id, timestamp)");
+        writer.batchUpdate("INSERT INTO messages (conversation_id, content, timestamp) VALUES (?, ?, ?)",
+                IntStream.range(0, PREFILL)
+                        .mapToObj(i -> new Object[]{(long) i % CONVERSATIONS, "Message " + i + " about the budget", (long) i})
+                        .toList());
+
+        TransactionTemplate writeTx = new TransactionTemplate(new DataSourceTransactionManager(writes));
+        TransactionTemplate readTx = new TransactionTemplate(new DataSourceTransactionManager(reads));
+        readTx.setReadOnly(true);
+        JdbcTemplate reader = new JdbcTemplate(reads);
+
+        AtomicLong readCount = new AtomicLong();
+        AtomicLong writeCount = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        List<Long> readNanos = Collections.synchronizedList(new ArrayList<>());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SECONDS);
+        ExecutorService threads = Executors.newFixedThreadPool(READERS + WRITERS);
+        List<Future<?>> done = new ArrayList<>();
+        for (int t = 0; t < READERS; t++) {
+            done.add(threads.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    long conversation = ThreadLocalRandom.current().nextLong(CONVERSATIONS);
+                    long start = System.nanoTime();
+                    try {
+                        readTx.execute(status -> reader.queryForList(
+                                "SELECT * FROM messages WHERE conversation_id = ? ORDER BY timestamp DESC LIMIT 60", conversation));
+                        readCount.incrementAndGet();
+                        readNanos.add(System.nanoTime() - start);
+                    } catch (RuntimeException e) {
+                        errors.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (int t = 0; t < WRITERS; t++) {
+            done.add(threads.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    long conversation = ThreadLocalRandom.current().nextLong(CONVERSATIONS);
+                    try {
+                        writeTx.executeWithoutResult(status -> writer.update(
+                                "INSERT INTO messages (conversation_id, content, timestamp) VALUES (?, 'new message', ?)",
+                                conversation, System.currentTimeMillis()));
+                        writeCount.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        errors.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Future<?> f : done) f.get();
+        threads.shutdown();
+
+        long[] sorted = readNanos.stream().mapToLong(Long::longValue).sorted().toArray();
+        double p99 = sorted.length == 0 ? 0 : sorted[(int) (sorted.length * 0.99)] / 1e6;
+        return new Result(name, readCount.get(), writeCount.get(), errors.get(), p99);
+    }
+
+    private record Result(String name, long reads, long writes, long errors, double readP99Ms) {
+    }
+}
@@ -0,0 +1,113 @@
+package com.diplomat.controller;
+
+import com.diplomat.dto.ChatMessage;
+import com.diplomat.model.ConversationMode;
+import com.diplomat.model.ConversationStatus;
+import com.diplomat.service.AnalysisCoordinator;
+import com.diplomat.service.ClusterForwarder;
+import com.diplomat.service.ConversationService;
+import com.diplomat.service.DiplomatService;
+import com.diplomat.service.MessageDeduplicator;
+import com.diplomat.service.SessionInfo;
+import com.diplomat.service.SessionPipeline;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class ChatWebSocketControllerTest {
+
+    private final ConversationService conversationService = mock(ConversationService.class);
+    private final ClusterForwarder clusterForwarder = mock(ClusterForwarder.class);
+    private final MessageDeduplicator messageDeduplicator = mock(MessageDeduplicator.class);
+    private SessionPipeline pipeline;
+    private ChatWebSocketController controller;
+
+    @BeforeEach
+    void setUp() {
+        pipeline = new SessionPipeline();
+        ReflectionTestUtils.setField(pipeline, "mailboxCapacity", 16);
+        ReflectionTestUtils.setField(pipeline, "idleEvictMinutes", 10L);
+        ReflectionTestUtils.invokeMethod(pipeline, "start");
+        controller = new ChatWebSocketController(conversationService, mock(DiplomatService.class),
+                mock(AnalysisCoordinator.class), mock(SimpMessagingTemplate.class), pipeline,
+                messageDeduplicator, clusterForwarder);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(pipeline, "stop");
+    }
+
+    @Test
+    void framesFromSomeoneOutsideTheSessionAreDroppedBeforeDeduplication() {
+        when(conversationService.findSession("ABC123")).thenReturn(Optional.of(new SessionInfo(1L, "ABC123",
+                "Alice", "Bob", ConversationStatus.ACTIVE, ConversationMode.FREE_TALK, 5, 5, null, null)));
+
+        controller.handleMessage("ABC123", ChatMessage.builder().sender("Mallory").content("hi").clientMessageId("c1").build());
+        controller.handlePrivateMessage("ABC123", ChatMessage.builder().sender("Mallory").content("psst").clientMessageId("c2").build());
+        controller.handleMessage("NOSUCH", ChatMessage.builder().sender("Alice").content("hi").clientMessageId("c3").build());
+
+        verifyNoInteractions(messageDeduplicator);
+        assertThat(pipeline.stats().get("sessions")).isEqualTo(0);
+    }
+
+    @Test
+    void storedIdIsLookedUpInThePersistStageNotOnTheInboundThread() {
+        when(conversationService.findSession("ABC123")).thenReturn(Optional.of(new SessionInfo(1L, "ABC123",
+                "Alice", "Bob", ConversationStatus.ACTIVE, ConversationMode.FREE_TALK, 5, 5, null, null)));
+        when(messageDeduplicator.firstDelivery("ABC123", "c1")).thenReturn(true);
+        List<Thread> lookups = new CopyOnWriteArrayList<>();
+        when(messageDeduplicator.stored("ABC123", "c1")).thenAnswer(inv -> {
+            lookups.add(Thread.currentThread());
+            return true;
+        });
+
+        controller.handleMessage("ABC123", ChatMessage.builder().sender("Alice").content("hi").clientMessageId("c1").build());
+
+        verify(messageDeduplicator, timeout(5000)).stored("ABC123", "c1");
+        assertThat(lookups).doesNotContain(Thread.currentThread());
+        verify(conversationService, never()).saveMessage(anyString(), anyString(), anyString(), anyString(), any(), anyString());
+    }
+
+    @Test
+    void slowForwardDoesNotHoldTheInboundThreadAndKeepsFrameOrder() throws InterruptedException {
+        CountDownLatch ownerSlow = new CountDownLatch(1);
+        List<String> forwarded = new CopyOnWriteArrayList<>();
+        when(clusterForwarder.enabled()).thenReturn(true);
+        when(clusterForwarder.forward(eq("chat"), anyString(), any(ChatMessage.class))).thenAnswer(inv -> {
+            ownerSlow.await(5, TimeUnit.SECONDS);
+            forwarded.add(inv.<ChatMessage>getArgument(2).getContent());
+            return true;
+        });
+
+        long start = System.nanoTime();
+        for (int i = 1; i <= 3; i++) {
+            controller.handleMessage("ABC123", ChatMessage.builder().sender("Alice").content("m" + i).build());
+        }
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1000);
+
+        ownerSlow.countDown();
+        verify(clusterForwarder, timeout(5000).times(3)).forward(eq("chat"), eq("ABC123"), any(ChatMessage.class));
+        assertThat(forwarded).containsExactly("m1", "m2", "m3");
+        verifyNoInteractions(conversationService); // the owner stores them
+    }
+}
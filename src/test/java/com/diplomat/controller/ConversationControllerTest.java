@@ -0,0 +1,150 @@
+package com.diplomat.controller;
+
+import com.diplomat.DiplomatApplication;
+import com.diplomat.model.Message;
+import com.diplomat.service.ConversationService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * History paging and the reconnect resync, against a running app with its own database.
+ */
+class ConversationControllerTest {
+
+    @TempDir
+    static Path dir;
+
+    private static ConfigurableApplicationContext app;
+    private static MockMvc mvc;
+    private static ConversationService conversationService;
+
+    private String sessionCode;
+    private final List<Message> saved = new ArrayList<>();
+
+    @BeforeAll
+    static void startApp() {
+        // As command-line arguments, so they win over application.yml
+        app = new SpringApplicationBuilder(DiplomatApplication.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:sqlite:" + dir.resolve("test.db"),
+                "--diplomat.archive.dir=" + dir.resolve("archive"));
+        mvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) app).build();
+        conversationService = app.getBean(ConversationService.class);
+    }
+
+    @AfterAll
+    static void stopApp() {
+        if (app != null) app.close();
+    }
+
+    @BeforeEach
+    void createSession() throws Exception {
+        String created = mvc.perform(post("/api/conversations/create")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"participantName\": \"Alice\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        sessionCode = created.replaceAll(".*\"sessionCode\":\"([^\"]+)\".*", "$1");
+        mvc.perform(post("/api/conversations/join")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"sessionCode\": \"" + sessionCode + "\", \"participantName\": \"Bob\"}"))
+                .andExpect(status().isOk());
+        for (int i = 1; i <= 5; i++) say(i % 2 == 1 ? "Alice" : "Bob", "message " + i);
+    }
+
+    @Test
+    void pagesForwardFromTheAfterCursor() throws Exception {
+        mvc.perform(get("/api/conversations/{code}/messages", sessionCode).param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages[*].content", contains("message 4", "message 5")))
+                .andExpect(jsonPath("$.hasMore").value(true))
+                .andExpect(jsonPath("$.latestId").value(id(5)));
+
+        mvc.perform(get("/api/conversations/{code}/messages", sessionCode)
+                        .param("after", String.valueOf(id(1))).param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages[*].content", contains("message 2", "message 3")))
+                .andExpect(jsonPath("$.hasMore").value(true));
+
+        mvc.perform(get("/api/conversations/{code}/messages", sessionCode)
+                        .param("after", String.valueOf(id(3))).param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages[*].content", contains("message 4", "message 5")))
+                .andExpect(jsonPath("$.hasMore").value(false));
+    }
+
+    @Test
+    void unchangedHistoryIsNotModifiedUntilAMessageArrives() throws Exception {
+        String etag = "\"" + id(5) + "\"";
+        mvc.perform(get("/api/conversations/{code}/messages", sessionCode))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", etag));
+
+        mvc.perform(get("/api/conversations/{code}/messages", sessionCode).header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        say("Alice", "message 6");
+        mvc.perform(get("/api/conversations/{code}/messages", sessionCode)
+                        .header("If-None-Match", etag).param("after", String.valueOf(id(5))))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"" + id(6) + "\""))
+                .andExpect(jsonPath("$.messages[*].content", contains("message 6")));
+    }
+
+    @Test
+    void resyncAfterASeqGapReturnsTheMissedFramesTheParticipantMaySee() throws Exception {
+        // Alice saw seq 2 live, then lost the connection while these were sent
+        saved.add(conversationService.saveMessage(sessionCode, "Bob", "only for Bob", "PRIVATE", "Bob"));
+        say("Bob", "message 7");
+
+        mvc.perform(get("/api/conversations/{code}/resync", sessionCode)
+                        .param("participant", "Alice").param("after", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.frames[*].seq", contains(3, 4, 5, 7)))
+                .andExpect(jsonPath("$.frames[*].content", contains("message 3", "message 4", "message 5", "message 7")))
+                .andExpect(jsonPath("$.hasMore").value(false))
+                .andExpect(jsonPath("$.latestSeq").value(7));
+
+        // Paged like history: the client asks again after the last seq it got
+        mvc.perform(get("/api/conversations/{code}/resync", sessionCode)
+                        .param("participant", "Bob").param("after", "2").param("limit", "2"))
+                .andExpect(jsonPath("$.frames[*].seq", contains(3, 4)))
+                .andExpect(jsonPath("$.hasMore").value(true));
+
+        // A fresh connection gets no frames, only where to start counting
+        mvc.perform(get("/api/conversations/{code}/resync", sessionCode).param("participant", "Alice"))
+                .andExpect(jsonPath("$.frames").isEmpty())
+                .andExpect(jsonPath("$.latestSeq").value(7));
+    }
+
+    private void say(String sender, String content) {
+        saved.add(conversationService.saveMessage(sessionCode, sender, content, "CHAT"));
+    }
+
+    // Id of the n-th message saved in this test, counting from 1
+    private long id(int n) {
+        return saved.get(n - 1).getId();
+    }
+}
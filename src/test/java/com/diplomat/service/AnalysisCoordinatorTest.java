@@ -0,0 +1,203 @@
+package com.diplomat.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AnalysisCoordinatorTest {
+
+    private SessionPipeline pipeline;
+    private AnalysisCoordinator coordinator;
+
+    @BeforeEach
+    void setUp() {
+        pipeline = new SessionPipeline();
+        ReflectionTestUtils.setField(pipeline, "mailboxCapacity", 16);
+        ReflectionTestUtils.setField(pipeline, "idleEvictMinutes", 10L);
+        pipeline.start();
+        coordinator = new AnalysisCoordinator(pipeline);
+        ReflectionTestUtils.setField(coordinator, "quietWindowMs", 10L);
+    }
+
+    /**
+     * Stands in for the debounce scheduler: quiet windows end only when the test says so.
+     */
+    private static class ManualTimer {
+        private final List<Runnable> due = new ArrayList<>();
+
+        void install(AnalysisCoordinator coordinator) {
+            ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+            when(scheduler.schedule(any(Runnable.class), anyLong(), any())).thenAnswer(inv -> {
+                Runnable command = inv.getArgument(0);
+                synchronized (due) {
+                    due.add(command);
+                }
+                ScheduledFuture<?> future = mock(ScheduledFuture.class);
+                when(future.cancel(anyBoolean())).thenAnswer(c -> {
+                    synchronized (due) {
+                        return due.remove(command);
+                    }
+                });
+                return future;
+            });
+            ReflectionTestUtils.setField(coordinator, "scheduler", scheduler);
+        }
+
+        int pending() {
+            synchronized (due) {
+                return due.size();
+            }
+        }
+
+        void endQuietWindows() {
+            List<Runnable> fire;
+            synchronized (due) {
+                fire = new ArrayList<>(due);
+                due.clear();
+            }
+            fire.forEach(Runnable::run);
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        coordinator.shutdown();
+        pipeline.stop();
+    }
+
+    @Test
+    void abandonedRunIsSupersededAndLetsTheNextAnalysisStart() throws InterruptedException {
+        List<AnalysisCoordinator.Ticket> tickets = new CopyOnWriteArrayList<>();
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch secondStarted = new CountDownLatch(1);
+
+        // First run never calls done(), like a stream that hangs
+        coordinator.submit("S1", "Alice", "one", ticket -> {
+            tickets.add(ticket);
+            firstStarted.countDown();
+        });
+        assertThat(firstStarted.await(2, TimeUnit.SECONDS)).isTrue();
+
+        coordinator.submit("S1", "Alice", "two", ticket -> {
+            tickets.add(ticket);
+            secondStarted.countDown();
+            ticket.done();
+        });
+        // Still blocked behind the hung run
+        assertThat(secondStarted.await(200, TimeUnit.MILLISECONDS)).isFalse();
+
+        tickets.get(0).abandon();
+
+        assertThat(secondStarted.await(2, TimeUnit.SECONDS)).isTrue();
+        assertThat(tickets.get(0).isCurrent()).isFalse();
+        assertThat(tickets.get(1).getContent()).isEqualTo("two");
+    }
+
+    @Test
+    void burstIsCoalescedIntoOneRunOnTheLatestMessage() throws InterruptedException {
+        ManualTimer timer = new ManualTimer();
+        timer.install(coordinator);
+        BlockingQueue<AnalysisCoordinator.Ticket> runs = new LinkedBlockingQueue<>();
+
+        for (int i = 1; i <= 5; i++) {
+            coordinator.submit("S1", "Alice", "message " + i, ticket -> {
+                runs.add(ticket);
+                ticket.done();
+            });
+        }
+
+        // Nothing runs while the quiet window is open, and only the last timer is left
+        assertThat(timer.pending()).isEqualTo(1);
+        assertThat(coordinator.stats()).containsEntry("executed", 0L);
+
+        timer.endQuietWindows();
+
+        AnalysisCoordinator.Ticket run = runs.poll(2, TimeUnit.SECONDS);
+        assertThat(run).isNotNull();
+        assertThat(run.getContent()).isEqualTo("message 5");
+        assertThat(run.isCurrent()).isTrue();
+        assertThat(coordinator.stats())
+                .containsEntry("requested", 5L)
+                .containsEntry("coalesced", 4L)
+                .containsEntry("superseded", 0L)
+                .containsEntry("executed", 1L);
+        assertThat(runs.poll(100, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    void messagesDuringARunMakeItStaleAndAreAnalyzedOnceItFinishes() throws InterruptedException {
+        ManualTimer timer = new ManualTimer();
+        timer.install(coordinator);
+        BlockingQueue<AnalysisCoordinator.Ticket> runs = new LinkedBlockingQueue<>();
+        AnalysisCoordinator.AnalysisTask holdOpen = runs::add; // finishes only when the test calls done()
+
+        coordinator.submit("S1", "Alice", "one", holdOpen);
+        timer.endQuietWindows();
+        AnalysisCoordinator.Ticket first = runs.poll(2, TimeUnit.SECONDS);
+        assertThat(first).isNotNull();
+
+        coordinator.submit("S1", "Bob", "two", holdOpen);
+        coordinator.submit("S1", "Alice", "three", holdOpen);
+        assertThat(first.isCurrent()).isFalse();
+
+        // The quiet window ends while the first run is still going: nothing new starts yet
+        timer.endQuietWindows();
+        assertThat(runs.poll(100, TimeUnit.MILLISECONDS)).isNull();
+
+        first.done();
+        AnalysisCoordinator.Ticket second = runs.poll(2, TimeUnit.SECONDS);
+        assertThat(second).isNotNull();
+        assertThat(second.getSender()).isEqualTo("Alice");
+        assertThat(second.getContent()).isEqualTo("three");
+        assertThat(second.isCurrent()).isTrue();
+
+        second.done();
+        assertThat(coordinator.stats())
+                .containsEntry("requested", 3L)
+                .containsEntry("coalesced", 1L)
+                .containsEntry("superseded", 1L)
+                .containsEntry("executed", 2L)
+                .containsEntry("activeSessions", 0L);
+    }
+
+    @Test
+    void sessionsAreDebouncedIndependently() throws InterruptedException {
+        ManualTimer timer = new ManualTimer();
+        timer.install(coordinator);
+        List<String> analyzed = new CopyOnWriteArrayList<>();
+        CountDownLatch bothRan = new CountDownLatch(2);
+
+        for (String session : List.of("S1", "S2")) {
+            coordinator.submit(session, "Alice", "hi from " + session, ticket -> {
+                analyzed.add(ticket.getContent());
+                ticket.done();
+                bothRan.countDown();
+            });
+        }
+        assertThat(timer.pending()).isEqualTo(2);
+
+        timer.endQuietWindows();
+
+        assertThat(bothRan.await(2, TimeUnit.SECONDS)).isTrue();
+        assertThat(analyzed).containsExactlyInAnyOrder("hi from S1", "hi from S2");
+        assertThat(coordinator.stats()).containsEntry("coalesced", 0L).containsEntry("executed", 2L);
+    }
+}
@@ -0,0 +1,138 @@
+package com.diplomat.service;
+
+import com.diplomat.dto.ChatMessage;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ClusterForwarderTest {
+
+    private final SessionOwnership sessionOwnership = mock(SessionOwnership.class);
+
+    @Test
+    void clusteringWithoutASecretFailsAtStartup() {
+        ClusterForwarder forwarder = forwarder(true, " ");
+
+        assertThatThrownBy(forwarder::start).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void onlyTheConfiguredSecretIsAccepted() {
+        ClusterForwarder forwarder = forwarder(true, "s3cret");
+        forwarder.start();
+
+        assertThat(forwarder.acceptsSecret("s3cret")).isTrue();
+        assertThat(forwarder.acceptsSecret("other")).isFalse();
+        assertThat(forwarder.acceptsSecret(null)).isFalse();
+    }
+
+    @Test
+    void aBlankSecretMatchesNothing() {
+        ClusterForwarder forwarder = forwarder(false, "");
+        forwarder.start();
+
+        assertThat(forwarder.acceptsSecret(null)).isFalse();
+        assertThat(forwarder.acceptsSecret("")).isFalse();
+    }
+
+    @Test
+    void frameTurnedDownByANodeWithoutTheLeaseGoesToTheOwnerLookedUpAgain() throws IOException {
+        List<String> hits = new CopyOnWriteArrayList<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/stale", exchange -> respond(exchange, hits, "stale", 409));
+        server.createContext("/owner", exchange -> respond(exchange, hits, "owner", 202));
+        server.start();
+        try {
+            String base = "http://127.0.0.1:" + server.getAddress().getPort();
+            when(sessionOwnership.remoteOwner("ABC123")).thenReturn(
+                    Optional.of(new SessionOwnership.Node("n1", base + "/stale")),
+                    Optional.of(new SessionOwnership.Node("n2", base + "/owner")));
+            ClusterForwarder forwarder = forwarder(true, "s3cret");
+            forwarder.start();
+
+            assertThat(forwarder.forward("chat", "ABC123", ChatMessage.builder().content("hi").build()))
+                    .isEqualTo(ClusterForwarder.Route.FORWARDED);
+            assertThat(hits).containsExactly("stale", "owner");
+            verify(sessionOwnership).forgetOwner("ABC123");
+            assertThat(forwarder.stats()).containsEntry("forwarded", 1L).containsEntry("forwardRedirects", 1L);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void frameIsHandledHereOnlyWithTheLease() {
+        when(sessionOwnership.remoteOwner("ABC123")).thenReturn(Optional.empty());
+        when(sessionOwnership.claim("ABC123")).thenReturn(true, false);
+        ClusterForwarder forwarder = forwarder(true, "s3cret");
+        forwarder.start();
+
+        ChatMessage message = ChatMessage.builder().content("hi").build();
+        assertThat(forwarder.forward("chat", "ABC123", message)).isEqualTo(ClusterForwarder.Route.LOCAL);
+        assertThat(forwarder.forward("chat", "ABC123", message)).isEqualTo(ClusterForwarder.Route.REJECTED);
+        assertThat(forwarder.stats()).containsEntry("forwardRejected", 1L);
+    }
+
+    @Test
+    void settingsChangeIsAnnouncedToTheOtherNodes() throws Exception {
+        List<String> hits = new CopyOnWriteArrayList<>();
+        CountDownLatch received = new CountDownLatch(4);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            String secret = exchange.getRequestHeaders().getFirst(ClusterForwarder.SECRET_HEADER);
+            respond(exchange, hits, exchange.getRequestURI().getPath() + " " + secret, 204);
+            received.countDown();
+        });
+        server.start();
+        try {
+            String base = "http://127.0.0.1:" + server.getAddress().getPort();
+            when(sessionOwnership.otherNodes()).thenReturn(List.of(
+                    new SessionOwnership.Node("n1", base + "/n1"), new SessionOwnership.Node("n2", base + "/n2")));
+            ClusterForwarder forwarder = forwarder(true, "s3cret");
+            forwarder.start();
+
+            forwarder.onSessionChanged(new SessionChangedEvent("ABC123"));
+            forwarder.onConstitutionChanged(new ConstitutionChangedEvent(7L));
+
+            assertThat(received.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(hits).containsExactlyInAnyOrder(
+                    "/n1/internal/cluster/sessions/ABC123/changed s3cret",
+                    "/n2/internal/cluster/sessions/ABC123/changed s3cret",
+                    "/n1/internal/cluster/constitutions/7/changed s3cret",
+                    "/n2/internal/cluster/constitutions/7/changed s3cret");
+            forwarder.stop();
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, List<String> hits, String name, int status) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        hits.add(name);
+        exchange.sendResponseHeaders(status, -1);
+        exchange.close();
+    }
+
+    private ClusterForwarder forwarder(boolean enabled, String secret) {
+        ClusterForwarder forwarder = new ClusterForwarder(sessionOwnership);
+        ReflectionTestUtils.setField(forwarder, "enabled", enabled);
+        ReflectionTestUtils.setField(forwarder, "secret", secret);
+        ReflectionTestUtils.setField(forwarder, "timeoutMs", 2000L);
+        return forwarder;
+    }
+}
@@ -0,0 +1,133 @@
+package com.diplomat.service;
+
+import com.diplomat.model.Message;
+import com.diplomat.model.MessageType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ConversationHistoryBufferTest {
+
+    private final ConversationService conversationService = mock(ConversationService.class);
+    private final LlmScheduler llmScheduler = mock(LlmScheduler.class);
+    private final PromptTemplateRegistry prompts = mock(PromptTemplateRegistry.class);
+    private final List<String> attempts = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean llmUp = new AtomicBoolean();
+    private ConversationHistoryBuffer buffer;
+    private long nextId;
+
+    @BeforeEach
+    void setUp() {
+        buffer = new ConversationHistoryBuffer(conversationService, llmScheduler, prompts);
+        ReflectionTestUtils.setField(buffer, "windowSize", 2);
+        ReflectionTestUtils.setField(buffer, "summaryBatch", 2);
+        ReflectionTestUtils.setField(buffer, "summaryMaxAttempts", 3);
+        when(conversationService.getRecentMessages("S1", 2)).thenReturn(List.of());
+        // The prompt is just the turns, so each LLM call shows which turns it was given
+        when(prompts.render(eq("history-summary"), anyMap()))
+                .thenAnswer(inv -> (String) ((Map<?, ?>) inv.getArgument(1)).get("turns"));
+        when(llmScheduler.generate(eq(LlmScheduler.Lane.BACKGROUND), anyString())).thenAnswer(inv -> {
+            attempts.add(inv.getArgument(1));
+            if (!llmUp.get()) throw new LlmOverloadedException("LLM BACKGROUND queue is full");
+            return "they talked";
+        });
+        buffer.analysisView("S1");
+    }
+
+    @AfterEach
+    void tearDown() {
+        buffer.stopSweeper();
+    }
+
+    @Test
+    void failedSummaryWaitsForTheBackOffInsteadOfRetryingAtOnce() throws InterruptedException {
+        ReflectionTestUtils.setField(buffer, "summaryRetryMs", 60_000L);
+
+        appendUntilAttempts(1);
+        for (int i = 0; i < 20; i++) {
+            append();
+            Thread.sleep(5);
+        }
+
+        assertThat(attempts).hasSize(1);
+    }
+
+    @Test
+    void batchIsDroppedAfterTheLastAttemptAndLaterTurnsStillGetSummarized() throws InterruptedException {
+        ReflectionTestUtils.setField(buffer, "summaryRetryMs", 0L);
+
+        appendUntilAttempts(3);
+        String firstTurn = attempts.get(0).lines().findFirst().orElseThrow();
+        assertThat(attempts).allMatch(turns -> turns.lines().findFirst().orElseThrow().equals(firstTurn));
+
+        llmUp.set(true);
+        appendUntilAttempts(4);
+
+        assertThat(attempts.get(3).lines()).doesNotContain(firstTurn);
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (buffer.analysisView("S1").summary() == null && System.nanoTime() < until) Thread.sleep(5);
+        assertThat(buffer.analysisView("S1").summary()).isEqualTo("they talked");
+    }
+
+    @Test
+    void viewsHoldMessagesTheWriterHasNotStoredYet() {
+        ReflectionTestUtils.setField(buffer, "windowSize", 3);
+        Message stored = message(1, "Alice", "stored", null);
+        Message alsoStored = message(2, "Bob", "also stored", null);
+        buffer.onMessageSaved(new MessageSavedEvent("S2", alsoStored));
+        buffer.onMessageSaved(new MessageSavedEvent("S2", message(3, "DIPLOMAT", "just for Bob", "Bob")));
+        buffer.onMessageSaved(new MessageSavedEvent("S2", message(4, "Alice", "still queued", null)));
+        // The database has only caught up to message 2
+        when(conversationService.getRecentMessages("S2", 3)).thenReturn(List.of(stored, alsoStored));
+        when(conversationService.getRecentMessagesForParticipant("S2", "Alice", 3)).thenReturn(List.of(stored, alsoStored));
+
+        assertThat(buffer.analysisView("S2").lines()).containsExactly(
+                "Bob [CHAT]: also stored",
+                "[CONFIDENTIAL — PRIVATE TO Bob] DIPLOMAT [CHAT]: just for Bob",
+                "Alice [CHAT]: still queued");
+        assertThat(buffer.participantView("S2", "Alice").lines()).containsExactly(
+                "Alice [CHAT]: stored",
+                "Bob [CHAT]: also stored",
+                "Alice [CHAT]: still queued");
+    }
+
+    // Each append after the first two pushes one public line out of the window
+    private void appendUntilAttempts(int count) throws InterruptedException {
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (attempts.size() < count && System.nanoTime() < until) {
+            append();
+            Thread.sleep(5);
+        }
+        assertThat(attempts).hasSize(count);
+    }
+
+    private void append() {
+        long id = ++nextId;
+        buffer.onMessageSaved(new MessageSavedEvent("S1", message(id, "Alice", "turn " + id, null)));
+    }
+
+    private static Message message(long id, String sender, String content, String recipient) {
+        return Message.builder()
+                .id(id)
+                .seq(id)
+                .sender(sender)
+                .content(content)
+                .messageType(MessageType.CHAT)
+                .recipient(recipient)
+                .build();
+    }
+}
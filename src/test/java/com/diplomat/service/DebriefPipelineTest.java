@@ -0,0 +1,67 @@
+package com.diplomat.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DebriefPipelineTest {
+
+    private final LlmScheduler llmScheduler = mock(LlmScheduler.class);
+    private final PromptTemplateRegistry prompts = mock(PromptTemplateRegistry.class);
+    private final TokenEstimator tokenEstimator = mock(TokenEstimator.class);
+    private DebriefPipeline pipeline;
+
+    // 12 lines of 100 tokens with 250-token segments: 6 segments, so the map step runs
+    private final List<String> transcript = IntStream.range(0, 12).mapToObj(i -> "line " + i).toList();
+
+    @BeforeEach
+    void setUp() {
+        pipeline = new DebriefPipeline(llmScheduler, prompts, tokenEstimator);
+        ReflectionTestUtils.setField(pipeline, "segmentTokens", 250);
+        ReflectionTestUtils.setField(pipeline, "parallelism", 3);
+        ReflectionTestUtils.setField(pipeline, "cacheSize", 100);
+        ReflectionTestUtils.setField(pipeline, "overloadRetries", 3);
+        ReflectionTestUtils.setField(pipeline, "overloadBackoffMs", 1L);
+        when(tokenEstimator.estimate(anyString())).thenReturn(100);
+        when(prompts.render(anyString(), anyMap())).thenAnswer(inv ->
+                inv.getArgument(0) + ":" + ((Map<?, ?>) inv.getArgument(1)).values());
+        when(llmScheduler.queueCapacity(LlmScheduler.Lane.BACKGROUND)).thenReturn(4);
+    }
+
+    @Test
+    void overloadedCallsAreRetriedInsteadOfFailingTheDebrief() {
+        // Concurrent segment calls share the alternation, so one call may be unlucky more than once
+        ReflectionTestUtils.setField(pipeline, "overloadRetries", 20);
+        AtomicInteger calls = new AtomicInteger();
+        when(llmScheduler.generate(eq(LlmScheduler.Lane.BACKGROUND), any(String.class))).thenAnswer(inv -> {
+            // Every other call finds the lane full
+            if (calls.incrementAndGet() % 2 == 1) throw new LlmOverloadedException("LLM BACKGROUND queue is full");
+            return "notes";
+        });
+
+        assertThat(pipeline.debrief(transcript)).isEqualTo("notes");
+        assertThat(pipeline.stats().get("overloadRetries")).isEqualTo(7L); // 6 segments + reduce
+    }
+
+    @Test
+    void givesUpAfterTheConfiguredRetries() {
+        when(llmScheduler.generate(eq(LlmScheduler.Lane.BACKGROUND), any(String.class)))
+                .thenThrow(new LlmOverloadedException("LLM BACKGROUND queue is full"));
+
+        assertThatThrownBy(() -> pipeline.debrief(transcript)).isInstanceOf(LlmOverloadedException.class);
+    }
+}
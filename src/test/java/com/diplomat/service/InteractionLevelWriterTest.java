@@ -0,0 +1,71 @@
+package com.diplomat.service;
+
+import com.diplomat.model.ParticipantRole;
+import com.diplomat.repository.ConversationRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class InteractionLevelWriterTest {
+
+    private final ConversationRepository conversationRepository = mock(ConversationRepository.class);
+    private InteractionLevelWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        writer = new InteractionLevelWriter(conversationRepository, mock(ApplicationEventPublisher.class));
+        ReflectionTestUtils.setField(writer, "debounceMs", 100L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        writer.stop();
+    }
+
+    @Test
+    void twoSlidersDraggedTogetherAreEachWrittenOnceWithTheirLastValue() {
+        CompletableFuture<Void> a = CompletableFuture.runAsync(() -> drag(ParticipantRole.PARTICIPANT_A, 1));
+        CompletableFuture<Void> b = CompletableFuture.runAsync(() -> drag(ParticipantRole.PARTICIPANT_B, 10));
+        CompletableFuture.allOf(a, b).join();
+
+        verify(conversationRepository, timeout(2000)).updateInteractionLevelA("ABC123", 31);
+        verify(conversationRepository, timeout(2000)).updateInteractionLevelB("ABC123", 40);
+        verify(conversationRepository, after(300).times(1)).updateInteractionLevelA(anyString(), anyInt());
+        verify(conversationRepository, times(1)).updateInteractionLevelB(anyString(), anyInt());
+        assertThat(writer.stats()).containsEntry("submitted", 62L).containsEntry("written", 2L);
+    }
+
+    @Test
+    void flushWritesAPendingLevelAtOnce() {
+        writer.submit("ABC123", ParticipantRole.PARTICIPANT_A, 7);
+        writer.flush("ABC123");
+
+        verify(conversationRepository).updateInteractionLevelA("ABC123", 7);
+        verify(conversationRepository, after(300).times(1)).updateInteractionLevelA(anyString(), anyInt());
+    }
+
+    // 31 steps, a few ms apart, as a slider drag sends them
+    private void drag(ParticipantRole role, int from) {
+        for (int level = from; level < from + 31; level++) {
+            writer.submit("ABC123", role, level);
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.diplomat.service;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LlmSchedulerTest {
+
+    private final ChatLanguageModel chatModel = mock(ChatLanguageModel.class);
+    private final StreamingChatLanguageModel streamingChatModel = mock(StreamingChatLanguageModel.class);
+    private LlmScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = new LlmScheduler(chatModel, streamingChatModel);
+        ReflectionTestUtils.setField(scheduler, "provider", "ollama");
+        ReflectionTestUtils.setField(scheduler, "ollamaMaxConcurrent", 1);
+        ReflectionTestUtils.setField(scheduler, "interactiveCapacity", 4);
+        ReflectionTestUtils.setField(scheduler, "analysisCapacity", 4);
+        ReflectionTestUtils.setField(scheduler, "backgroundCapacity", 4);
+        ReflectionTestUtils.setField(scheduler, "admissionTimeoutSeconds", 30L);
+        when(chatModel.generate(anyList())).thenReturn(Response.from(AiMessage.from("ok")));
+    }
+
+    @Test
+    void queueCapacityBelowOneFailsAtStartup() {
+        ReflectionTestUtils.setField(scheduler, "analysisCapacity", 0);
+
+        assertThatThrownBy(scheduler::init)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("queue-capacity.analysis");
+    }
+
+    @Test
+    void releasingAHungStreamAdmitsTheNextCall() throws Exception {
+        scheduler.init();
+        // The model never calls back, like a stream that hangs
+        LlmScheduler.StreamSlot slot = scheduler.stream(LlmScheduler.Lane.ANALYSIS, "analyze", noopHandler());
+
+        CompletableFuture<String> queued = CompletableFuture.supplyAsync(
+                () -> scheduler.generate(LlmScheduler.Lane.INTERACTIVE, "coach"));
+        awaitQueued(LlmScheduler.Lane.INTERACTIVE, 1);
+        assertThat(queued).isNotDone();
+
+        slot.release();
+        slot.release(); // a second release, or a late onComplete, must not free another slot
+
+        assertThat(queued.get(2, TimeUnit.SECONDS)).isEqualTo("ok");
+        assertThat(scheduler.stats()).containsEntry("inFlight", 0);
+    }
+
+    @Test
+    void interruptedWaitLeavesTheQueueAndTheSlotStaysUsable() throws Exception {
+        scheduler.init();
+        LlmScheduler.StreamSlot slot = scheduler.stream(LlmScheduler.Lane.ANALYSIS, "analyze", noopHandler());
+
+        CompletableFuture<Throwable> failure = new CompletableFuture<>();
+        Thread waiter = Thread.ofPlatform().start(() -> {
+            try {
+                scheduler.generate(LlmScheduler.Lane.BACKGROUND, "debrief");
+                failure.complete(null);
+            } catch (RuntimeException e) {
+                failure.complete(e);
+            }
+        });
+        awaitQueued(LlmScheduler.Lane.BACKGROUND, 1);
+        waiter.interrupt();
+
+        assertThat(failure.get(2, TimeUnit.SECONDS)).isInstanceOf(LlmOverloadedException.class);
+        assertThat(lane(LlmScheduler.Lane.BACKGROUND)).containsEntry("queued", 0).containsEntry("rejected", 1L);
+
+        slot.release();
+        assertThat(scheduler.generate(LlmScheduler.Lane.BACKGROUND, "debrief")).isEqualTo("ok");
+    }
+
+    @Test
+    void callNotAdmittedInTimeIsRejected() {
+        ReflectionTestUtils.setField(scheduler, "admissionTimeoutSeconds", 1L);
+        scheduler.init();
+        scheduler.stream(LlmScheduler.Lane.ANALYSIS, "analyze", noopHandler());
+
+        assertThatThrownBy(() -> scheduler.generate(LlmScheduler.Lane.INTERACTIVE, "coach"))
+                .isInstanceOf(LlmOverloadedException.class)
+                .hasMessageContaining("not admitted");
+        assertThat(lane(LlmScheduler.Lane.INTERACTIVE)).containsEntry("queued", 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> lane(LlmScheduler.Lane lane) {
+        return (Map<String, Object>) scheduler.stats().get(lane.name().toLowerCase());
+    }
+
+    private void awaitQueued(LlmScheduler.Lane lane, int count) throws InterruptedException {
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (!lane(lane).get("queued").equals(count) && System.nanoTime() < until) {
+            Thread.sleep(5);
+        }
+        assertThat(lane(lane)).containsEntry("queued", count);
+    }
+
+    private static StreamingResponseHandler<AiMessage> noopHandler() {
+        return new StreamingResponseHandler<>() {
+            @Override
+            public void onNext(String token) {
+            }
+
+            @Override
+            public void onError(Throwable error) {
+            }
+        };
+    }
+}
@@ -0,0 +1,148 @@
+package com.diplomat.service;
+
+import com.diplomat.dto.MessageSearchHit;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Search latency over a million messages, half of them in archived sessions. Run with
+ * {@code mvn test -Pbenchmarks -Dtest=MessageSearchBenchmark}; {@code -Dbenchmark.messages=}
+ * changes the size.
+ *
+ * <p>Messages are twelve words drawn from a skewed 5,000-word vocabulary; "money" is in
+ * 1% of them and "holiday" in 0.1%.
+ */
+@Tag("benchmark")
+class MessageSearchBenchmark {
+
+    private static final int MESSAGES = Integer.getInteger("benchmark.messages", 1_000_000);
+    private static final int COUPLES = 100;
+    private static final int SESSIONS = 1_000;
+    private static final int RUNS = 50;
+    private static final LocalDateTime FIRST = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final long SPAN_MILLIS = TimeUnit.DAYS.toMillis(730);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void searchLatencyAcrossHotAndArchivedSessions() {
+        SingleConnectionDataSource dataSource = new SingleConnectionDataSource("jdbc:sqlite:" + dir.resolve("bench.db"), true);
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("PRAGMA journal_mode = WAL");
+        jdbc.execute("ATTACH DATABASE '" + dir.resolve("search.db") + "' AS archive_search");
+        jdbc.execute("CREATE TABLE conversations (id integer primary key, session_code varchar(16), "
+                + "participanta varchar(255), participantb varchar(255))");
+        jdbc.execute("CREATE TABLE messages (id integer primary key, conversation_id bigint not null, "
+                + "sender_role integer not null, content varchar(4000) not null, recipient_role integer, timestamp bigint not null)");
+        jdbc.execute("CREATE INDEX idx_messages_conversation_timestamp ON messages (conversation_id, timestamp)");
+        List<Object[]> sessions = new ArrayList<>();
+        for (int s = 1; s <= SESSIONS; s++) {
+            int couple = s % COUPLES;
+            sessions.add(new Object[]{s, "S" + s, "Alice" + couple, "Bob" + couple});
+        }
+        jdbc.batchUpdate("INSERT INTO conversations VALUES (?, ?, ?, ?)", sessions);
+
+        MessageSearchIndex index = new MessageSearchIndex(jdbc);
+        ReflectionTestUtils.setField(index, "maxResults", 100);
+        index.init();
+
+        long start = System.nanoTime();
+        fill(jdbc);
+        long filled = System.nanoTime();
+        // Older half of the sessions is archived, as MessageArchive would
+        for (long s = 1; s <= SESSIONS / 2; s++) {
+            index.copyToArchive(s, Long.MAX_VALUE);
+            index.removeArchived(s, Long.MAX_VALUE);
+            jdbc.update("DELETE FROM messages WHERE conversation_id = ?", s);
+        }
+        long archived = System.nanoTime();
+        System.out.printf("%nIndexed %,d messages in %d s, archived half the sessions in %d s%n", MESSAGES,
+                TimeUnit.NANOSECONDS.toSeconds(filled - start), TimeUnit.NANOSECONDS.toSeconds(archived - filled));
+
+        LocalDateTime from = FIRST.plusDays(300);
+        LocalDateTime to = from.plusDays(30);
+        System.out.printf("%-34s %8s %8s %6s%n", "query", "p50 ms", "p95 ms", "hits");
+        measure("money, newest first", () -> index.search("money", List.of(), null, null, false, 50));
+        measure("money, one couple", () -> index.search("money", List.of("Alice7", "Bob7"), null, null, false, 50));
+        measure("money, 30 days", () -> index.search("money", List.of(), from, to, false, 50));
+        measure("money, by relevance", () -> index.search("money", List.of(), null, null, true, 50));
+        measure("holiday money, newest first", () -> index.search("holiday money", List.of(), null, null, false, 50));
+        measure("mon* prefix, newest first", () -> index.search("mon*", List.of(), null, null, false, 50));
+
+        // Archived sessions are found, and only the archive index holds their entries
+        List<Integer> sessionsHit = index.search("money", List.of("Alice7"), null, null, false, 100).stream()
+                .map(hit -> Integer.parseInt(hit.getSessionCode().substring(1)))
+                .toList();
+        assertThat(sessionsHit).anyMatch(s -> s <= SESSIONS / 2).anyMatch(s -> s > SESSIONS / 2);
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM messages_fts WHERE rowid NOT IN (SELECT id FROM messages)", Long.class))
+                .isZero();
+        dataSource.destroy();
+    }
+
+    private static void fill(JdbcTemplate jdbc) {
+        Random random = new Random(42);
+        int perSession = MESSAGES / SESSIONS;
+        List<Object[]> batch = new ArrayList<>(10_000);
+        long id = 0;
+        // Sessions in time order, so archiving the first half archives the oldest
+        for (int s = 1; s <= SESSIONS; s++) {
+            long sessionStart = FIRST.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() + SPAN_MILLIS * (s - 1) / SESSIONS;
+            for (int i = 0; i < perSession; i++) {
+                batch.add(new Object[]{++id, s, i % 2, sentence(random), sessionStart + i * 1000L});
+                if (batch.size() == 10_000) {
+                    insert(jdbc, batch);
+                }
+            }
+        }
+        insert(jdbc, batch);
+    }
+
+    private static void insert(JdbcTemplate jdbc, List<Object[]> batch) {
+        jdbc.execute("BEGIN");
+        jdbc.batchUpdate("INSERT INTO messages VALUES (?, ?, ?, ?, NULL, ?)", batch);
+        jdbc.execute("COMMIT");
+        batch.clear();
+    }
+
+    private static String sentence(Random random) {
+        StringBuilder words = new StringBuilder();
+        for (int w = 0; w < 12; w++) {
+            if (w > 0) words.append(' ');
+            double r = random.nextDouble();
+            words.append("w").append((int) (5_000 * r * r * r));
+        }
+        if (random.nextInt(100) == 0) words.append(" money");
+        if (random.nextInt(1_000) == 0) words.append(" holiday");
+        return words.toString();
+    }
+
+    private static void measure(String name, Supplier<List<MessageSearchHit>> search) {
+        for (int i = 0; i < 5; i++) search.get(); // warm up
+        long[] nanos = new long[RUNS];
+        int hits = 0;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            hits = search.get().size();
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        System.out.printf("%-34s %8.2f %8.2f %6d%n", name, nanos[RUNS / 2] / 1e6, nanos[RUNS * 95 / 100] / 1e6, hits);
+    }
+}
@@ -0,0 +1,103 @@
+package com.diplomat.service;
+
+import com.diplomat.dto.MessageSearchHit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageSearchIndexTest {
+
+    @TempDir
+    Path dir;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private MessageSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new SingleConnectionDataSource("jdbc:sqlite:" + dir.resolve("test.db"), true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("ATTACH DATABASE '" + dir.resolve("search.db") + "' AS archive_search");
+        jdbcTemplate.execute("CREATE TABLE conversations (id integer primary key, session_code varchar(16), "
+                + "participanta varchar(255), participantb varchar(255))");
+        jdbcTemplate.execute("CREATE TABLE messages (id integer primary key, conversation_id bigint not null, "
+                + "sender_role integer not null, content varchar(4000) not null, recipient_role integer, timestamp bigint not null)");
+        jdbcTemplate.update("INSERT INTO conversations VALUES (1, 'OLD001', 'Alice', 'Bob'), (2, 'NEW002', 'Alice', 'Bob')");
+        index = new MessageSearchIndex(jdbcTemplate);
+        ReflectionTestUtils.setField(index, "maxResults", 100);
+        index.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.destroy();
+    }
+
+    @Test
+    void archivedEntriesLeaveTheHotIndexAndAreStillFound() {
+        message(1, 1, "we argued about the budget");
+        message(2, 1, "the budget again");
+        message(3, 2, "budget for the holidays");
+        message(4, 2, "private budget tip", 0);
+
+        index.copyToArchive(1L, 2);
+        index.removeArchived(1L, 2);
+        jdbcTemplate.update("DELETE FROM messages WHERE conversation_id = 1");
+
+        assertThat(jdbcTemplate.queryForList("SELECT rowid FROM messages_fts", Long.class)).containsExactly(3L);
+        assertThat(jdbcTemplate.queryForList("SELECT rowid FROM archive_search.archived_messages_fts ORDER BY rowid", Long.class))
+                .containsExactly(1L, 2L);
+        assertThat(search(false)).extracting(MessageSearchHit::getMessageId).containsExactly(3L, 2L, 1L);
+        assertThat(search(true)).extracting(MessageSearchHit::getMessageId).containsExactlyInAnyOrder(1L, 2L, 3L);
+        assertThat(search(false)).extracting(MessageSearchHit::getSessionCode).containsExactly("NEW002", "OLD001", "OLD001");
+    }
+
+    @Test
+    void copyingASessionAgainAfterACrashDoesNotDuplicateIt() {
+        message(1, 1, "budget talk");
+        index.copyToArchive(1L, 1);
+        // Crashed before the hot entries and messages were removed; archiving runs again
+        index.copyToArchive(1L, 1);
+        index.removeArchived(1L, 1);
+        jdbcTemplate.update("DELETE FROM messages WHERE conversation_id = 1");
+
+        assertThat(search(false)).extracting(MessageSearchHit::getMessageId).containsExactly(1L);
+    }
+
+    @Test
+    void entriesOfSessionsArchivedBeforeTheArchiveIndexExistedAreMovedAtStartup() {
+        message(1, 1, "budget talk");
+        message(2, 2, "budget plans");
+        jdbcTemplate.update("DELETE FROM messages WHERE conversation_id = 1"); // archived, entry left behind
+        jdbcTemplate.execute("DROP TABLE archive_search.archived_messages_fts");
+
+        index.init();
+
+        assertThat(jdbcTemplate.queryForList("SELECT rowid FROM messages_fts", Long.class)).containsExactly(2L);
+        assertThat(jdbcTemplate.queryForList("SELECT rowid FROM archive_search.archived_messages_fts", Long.class))
+                .containsExactly(1L);
+    }
+
+    private List<MessageSearchHit> search(boolean byRelevance) {
+        return index.search("budget", List.of("Alice"), null, null, byRelevance, 10);
+    }
+
+    private void message(long id, long conversationId, String content) {
+        message(id, conversationId, content, null);
+    }
+
+    private void message(long id, long conversationId, String content, Integer recipientRole) {
+        jdbcTemplate.update("INSERT INTO messages VALUES (?, ?, 0, ?, ?, ?)",
+                id, conversationId, content, recipientRole, 1_700_000_000_000L + id);
+    }
+}
@@ -0,0 +1,159 @@
+package com.diplomat.service;
+
+import com.diplomat.model.Conversation;
+import com.diplomat.model.Message;
+import com.diplomat.model.MessageType;
+import com.diplomat.model.ParticipantRole;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageWriterTest {
+
+    private static final String MESSAGES_DDL = """
+            CREATE TABLE messages (
+                id integer primary key, conversation_id bigint not null, seq bigint not null,
+                sender_role integer not null, content varchar(4000) not null, message_type integer not null,
+                fallacy_type varchar(255), recipient_role integer, timestamp timestamp not null,
+                client_message_id varchar(64))""";
+
+    @TempDir
+    Path dir;
+
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private MessageWriter writer;
+    private final Conversation conversation = Conversation.builder().id(1L).build();
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new DriverManagerDataSource("jdbc:sqlite:" + dir.resolve("test.db"));
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute(MESSAGES_DDL);
+        writer = new MessageWriter(jdbcTemplate, new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+        ReflectionTestUtils.setField(writer, "batchSize", 200);
+        ReflectionTestUtils.setField(writer, "flushIntervalMs", 20L);
+        ReflectionTestUtils.setField(writer, "queueCapacity", 1000);
+        ReflectionTestUtils.setField(writer, "maxRetries", 2);
+        ReflectionTestUtils.setField(writer, "idBlockSize", 10);
+        writer.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        writer.stop();
+    }
+
+    @Test
+    void rowThatViolatesAConstraintIsDeadLetteredAndTheRestOfTheBatchWritten() {
+        // Another writer took the id the second message will get
+        jdbcTemplate.update("INSERT INTO messages (id, conversation_id, seq, sender_role, content, message_type, timestamp) "
+                + "VALUES (2, 1, 99, 0, 'elsewhere', 0, CURRENT_TIMESTAMP)");
+
+        for (int i = 1; i <= 3; i++) writer.enqueue(message(i));
+        writer.awaitPersisted();
+
+        assertThat(writer.stats()).containsEntry("persisted", 2L).containsEntry("deadLettered", 1L);
+        assertThat(jdbcTemplate.queryForList("SELECT seq FROM messages WHERE seq < 99 ORDER BY seq", Long.class))
+                .containsExactly(1L, 3L);
+        assertThat(jdbcTemplate.queryForObject("SELECT seq FROM messages_dead_letter", Long.class)).isEqualTo(2L);
+    }
+
+    @Test
+    void seqAnotherNodeAlreadyStoredIsDeadLetteredNotStoredTwice() {
+        jdbcTemplate.update("INSERT INTO messages (id, conversation_id, seq, sender_role, content, message_type, timestamp) "
+                + "VALUES (500, 1, 2, 1, 'from the other node', 0, CURRENT_TIMESTAMP)");
+
+        for (int i = 1; i <= 3; i++) writer.enqueue(message(i));
+        writer.awaitPersisted();
+
+        assertThat(writer.stats()).containsEntry("persisted", 2L).containsEntry("deadLettered", 1L);
+        assertThat(jdbcTemplate.queryForList("SELECT content FROM messages WHERE seq = 2", String.class))
+                .containsExactly("from the other node");
+    }
+
+    @Test
+    void batchIsRetriedUntilTheDatabaseRecoversAndNotCountedBeforeThen() throws Exception {
+        jdbcTemplate.execute("ALTER TABLE messages RENAME TO messages_away");
+        for (int i = 1; i <= 3; i++) writer.enqueue(message(i));
+        CompletableFuture<Void> reader = CompletableFuture.runAsync(writer::awaitPersisted);
+
+        // Several rounds of max-retries go by; nothing is counted as persisted or given up on
+        Thread.sleep(1000);
+        assertThat(reader).isNotDone();
+        assertThat(writer.stats()).containsEntry("persisted", 0L).containsEntry("deadLettered", 0L);
+
+        jdbcTemplate.execute("ALTER TABLE messages_away RENAME TO messages");
+        reader.get(10, TimeUnit.SECONDS);
+        assertThat(writer.stats()).containsEntry("persisted", 3L);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM messages", Long.class)).isEqualTo(3L);
+    }
+
+    @Test
+    void messagesQueuedRightBeforeShutdownAreAllWritten() throws InterruptedException {
+        for (int i = 1; i <= 200; i++) writer.enqueue(message(i));
+        writer.stop();
+
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM messages", Long.class)).isEqualTo(200L);
+        assertThat(writer.stats()).containsEntry("persisted", 200L).containsEntry("lostAtShutdown", 0L);
+    }
+
+    @Test
+    void writersSharingTheDatabaseHandOutDisjointIds() throws InterruptedException {
+        MessageWriter other = new MessageWriter(jdbcTemplate, new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+        ReflectionTestUtils.setField(other, "batchSize", 200);
+        ReflectionTestUtils.setField(other, "flushIntervalMs", 20L);
+        ReflectionTestUtils.setField(other, "queueCapacity", 1000);
+        ReflectionTestUtils.setField(other, "maxRetries", 2);
+        ReflectionTestUtils.setField(other, "idBlockSize", 10);
+        other.start();
+        try {
+            Set<Long> ids = new HashSet<>();
+            for (int i = 1; i <= 25; i++) {
+                ids.add(writer.enqueue(message(i)).getId());
+                ids.add(other.enqueue(message(100 + i)).getId());
+            }
+            assertThat(ids).hasSize(50);
+
+            // Taking a session over: the next id is above everything the other writer used
+            long othersLatest = other.enqueue(message(200)).getId();
+            writer.startNewIdBlock();
+            assertThat(writer.enqueue(message(201)).getId()).isGreaterThan(othersLatest);
+
+            writer.awaitPersisted();
+            other.awaitPersisted();
+            assertThat(writer.stats().get("deadLettered")).isEqualTo(0L);
+            assertThat(other.stats().get("deadLettered")).isEqualTo(0L);
+            assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM messages", Long.class)).isEqualTo(52L);
+        } finally {
+            other.stop();
+        }
+    }
+
+    private Message message(int seq) {
+        return Message.builder()
+                .conversation(conversation)
+                .seq(seq)
+                .senderRole(ParticipantRole.PARTICIPANT_A)
+                .content("message " + seq)
+                .messageType(MessageType.CHAT)
+                .timestamp(LocalDateTime.now())
+                .clientMessageId("c-" + seq)
+                .build();
+    }
+}
@@ -0,0 +1,189 @@
+package com.diplomat.service;
+
+import com.diplomat.dto.ChatMessage;
+import com.diplomat.service.SessionPipeline.Stage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Two nodes sharing one database file, each with its own ownership state.
+ */
+class SessionOwnershipTest {
+
+    @TempDir
+    Path dir;
+
+    private JdbcTemplate jdbcTemplate;
+    private final List<SessionOwnership> nodes = new ArrayList<>();
+    private final List<SessionPipeline> pipelines = new ArrayList<>();
+    private final List<MessageWriter> writers = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setBusyTimeout(10_000);
+        config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        SQLiteDataSource dataSource = new SQLiteDataSource(config);
+        dataSource.setUrl("jdbc:sqlite:" + dir.resolve("cluster.db"));
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        for (SessionOwnership node : nodes) node.stop();
+        for (SessionPipeline pipeline : pipelines) pipeline.stop();
+    }
+
+    @Test
+    void twoNodesRacingForTheSameSessionsEachLeaveOneHolder() throws Exception {
+        SessionOwnership a = node("a", 60);
+        SessionOwnership b = node("b", 60);
+        seeEachOther(a, b);
+
+        int sessions = 50;
+        CyclicBarrier start = new CyclicBarrier(2);
+        CompletableFuture<List<Boolean>> aClaims = CompletableFuture.supplyAsync(() -> claimAll(a, sessions, start));
+        CompletableFuture<List<Boolean>> bClaims = CompletableFuture.supplyAsync(() -> claimAll(b, sessions, start));
+
+        List<Boolean> aWon = aClaims.get(30, TimeUnit.SECONDS);
+        List<Boolean> bWon = bClaims.get(30, TimeUnit.SECONDS);
+        for (int s = 0; s < sessions; s++) {
+            String sessionCode = "S" + s;
+            assertThat(aWon.get(s) ^ bWon.get(s)).as(sessionCode + " has exactly one holder").isTrue();
+            String winner = aWon.get(s) ? "a" : "b";
+            assertThat(leaseHolder(sessionCode)).isEqualTo(winner);
+            // The loser keeps turning the session's frames away and sends them to the winner
+            SessionOwnership loser = aWon.get(s) ? b : a;
+            assertThat(loser.claim(sessionCode)).isFalse();
+            assertThat(loser.remoteOwner(sessionCode)).map(SessionOwnership.Node::id).contains(winner);
+        }
+    }
+
+    @Test
+    void frameForAnUnreachableHolderIsRejectedRatherThanHandledOnTheOtherNode() throws IOException {
+        SessionOwnership a = node("a", 60);
+        SessionOwnership b = node("b", 60);
+        try (ServerSocket closed = new ServerSocket(0)) {
+            // a advertises a port nothing answers on once the socket is closed
+            ReflectionTestUtils.setField(a, "advertiseUrl", "http://127.0.0.1:" + closed.getLocalPort());
+        }
+        seeEachOther(a, b);
+        assertThat(a.claim("ABC123")).isTrue();
+
+        ClusterForwarder forwarder = new ClusterForwarder(b);
+        ReflectionTestUtils.setField(forwarder, "enabled", true);
+        ReflectionTestUtils.setField(forwarder, "secret", "s3cret");
+        ReflectionTestUtils.setField(forwarder, "timeoutMs", 500L);
+        forwarder.start();
+
+        assertThat(forwarder.forward("chat", "ABC123", ChatMessage.builder().content("hi").build()))
+                .isEqualTo(ClusterForwarder.Route.REJECTED);
+        assertThat(leaseHolder("ABC123")).isEqualTo("a");
+        assertThat(forwarder.stats()).containsEntry("forwardFailures", 1L).containsEntry("forwardRejected", 1L);
+        forwarder.stop();
+    }
+
+    @Test
+    void leaseIsHandedBackOnlyAfterQueuedWorkRanAndWasStored() throws Exception {
+        SessionOwnership a = node("a", 0); // every session is idle at the next heartbeat
+        SessionOwnership b = node("b", 60);
+        seeEachOther(a, b);
+        assertThat(a.claim("ABC123")).isTrue();
+
+        CountDownLatch release = new CountDownLatch(1);
+        pipelines.get(0).submit("ABC123", Stage.PERSIST, () -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Thread.sleep(5);
+        ReflectionTestUtils.invokeMethod(a, "beat");
+
+        // Still leased while a's work is queued; neither node takes new frames for it
+        Thread.sleep(300);
+        assertThat(leaseHolder("ABC123")).isEqualTo("a");
+        assertThat(a.claim("ABC123")).isFalse();
+        assertThat(b.claim("ABC123")).isFalse();
+        assertThat(a.stats()).containsEntry("releasingSessions", 1);
+
+        release.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!a.stats().get("releasingSessions").equals(0) && System.nanoTime() < deadline) Thread.sleep(20);
+        assertThat(a.stats()).containsEntry("releasingSessions", 0).containsEntry("leasesReleased", 1L);
+        assertThat(leaseHolder("ABC123")).isNull();
+        verify(writers.get(0)).awaitPersisted();
+
+        assertThat(b.claim("ABC123")).isTrue();
+        assertThat(leaseHolder("ABC123")).isEqualTo("b");
+    }
+
+    private SessionOwnership node(String nodeId, long idleReleaseMinutes) {
+        SessionPipeline pipeline = new SessionPipeline();
+        ReflectionTestUtils.setField(pipeline, "mailboxCapacity", 16);
+        ReflectionTestUtils.setField(pipeline, "idleEvictMinutes", 10L);
+        pipeline.start();
+        pipelines.add(pipeline);
+        MessageWriter writer = mock(MessageWriter.class);
+        writers.add(writer);
+
+        SessionOwnership node = new SessionOwnership(jdbcTemplate, mock(SessionRegistry.class), mock(MessageSequencer.class),
+                mock(MessageTriage.class), mock(ConversationHistoryBuffer.class), pipeline, mock(MessageDeduplicator.class), writer);
+        ReflectionTestUtils.setField(node, "enabled", true);
+        ReflectionTestUtils.setField(node, "configuredNodeId", nodeId);
+        ReflectionTestUtils.setField(node, "advertiseUrl", "http://" + nodeId);
+        ReflectionTestUtils.setField(node, "heartbeatSeconds", 3600L); // beats only when the test says so
+        ReflectionTestUtils.setField(node, "nodeTtlSeconds", 60L);
+        ReflectionTestUtils.setField(node, "leaseSeconds", 60L);
+        ReflectionTestUtils.setField(node, "idleReleaseMinutes", idleReleaseMinutes);
+        ReflectionTestUtils.setField(node, "virtualNodes", 16);
+        ReflectionTestUtils.setField(node, "releaseDrainSeconds", 10L);
+        nodes.add(node);
+        return node;
+    }
+
+    private void seeEachOther(SessionOwnership... cluster) {
+        for (SessionOwnership node : cluster) node.start();
+        for (SessionOwnership node : cluster) ReflectionTestUtils.invokeMethod(node, "beat");
+    }
+
+    private static List<Boolean> claimAll(SessionOwnership node, int sessions, CyclicBarrier start) {
+        List<Boolean> won = new ArrayList<>();
+        for (int s = 0; s < sessions; s++) {
+            try {
+                start.await(10, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            won.add(node.claim("S" + s));
+        }
+        return won;
+    }
+
+    private String leaseHolder(String sessionCode) {
+        List<String> holders = jdbcTemplate.queryForList(
+                "SELECT node_id FROM session_leases WHERE session_code = ?", String.class, sessionCode);
+        return holders.isEmpty() ? null : holders.get(0);
+    }
+}
@@ -0,0 +1,123 @@
+package com.diplomat.service;
+
+import com.diplomat.service.SessionPipeline.Stage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SessionPipelineTest {
+
+    private SessionPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        pipeline = new SessionPipeline();
+        ReflectionTestUtils.setField(pipeline, "mailboxCapacity", 16);
+        ReflectionTestUtils.setField(pipeline, "idleEvictMinutes", 10L);
+        pipeline.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        pipeline.stop();
+    }
+
+    @Test
+    void interactiveWorkDoesNotWaitBehindAnalysis() throws InterruptedException {
+        CountDownLatch analysisRunning = new CountDownLatch(1);
+        CountDownLatch releaseAnalysis = new CountDownLatch(1);
+        CountDownLatch translated = new CountDownLatch(1);
+
+        pipeline.submit("S1", Stage.ANALYZE, () -> {
+            analysisRunning.countDown();
+            awaitQuietly(releaseAnalysis);
+        });
+        assertThat(analysisRunning.await(2, TimeUnit.SECONDS)).isTrue();
+
+        pipeline.submit("S1", Stage.INTERACTIVE, translated::countDown);
+
+        assertThat(translated.await(2, TimeUnit.SECONDS)).isTrue();
+        releaseAnalysis.countDown();
+    }
+
+    @Test
+    void jobsSubmittedWhileTheSessionIsForgottenStillRunInOrder() throws InterruptedException {
+        int jobs = 5_000;
+        List<Integer> ran = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch allRan = new CountDownLatch(jobs);
+        AtomicBoolean submitting = new AtomicBoolean(true);
+
+        Thread forgetter = Thread.ofPlatform().start(() -> {
+            while (submitting.get()) pipeline.forget("S1");
+        });
+        for (int i = 0; i < jobs; i++) {
+            int n = i;
+            pipeline.handOff("S1", Stage.DISPATCH, () -> {
+                // Long enough that a job stranded in a dropped mailbox would overlap the next one
+                long until = System.nanoTime() + 20_000;
+                while (System.nanoTime() < until) Thread.onSpinWait();
+                ran.add(n);
+                allRan.countDown();
+            });
+            if (n % 50 == 0) allRan.await(1, TimeUnit.MILLISECONDS); // let the mailbox go idle now and then
+        }
+        submitting.set(false);
+        forgetter.join();
+
+        assertThat(allRan.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(ran).isSorted().hasSize(jobs);
+    }
+
+    @Test
+    void twoSendersKeepTheirOrderAndBroadcastsFollowTheStoredOrder() throws InterruptedException {
+        int perSender = 500;
+        AtomicLong ids = new AtomicLong();
+        Map<String, List<Integer>> stored = new ConcurrentHashMap<>();
+        List<Long> dispatched = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch allDispatched = new CountDownLatch(2 * perSender);
+
+        List<Thread> senders = new ArrayList<>();
+        for (String sender : List.of("Alice", "Bob")) {
+            senders.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < perSender; i++) {
+                    int n = i;
+                    pipeline.handOff("S1", Stage.PERSIST, () -> {
+                        long id = ids.incrementAndGet(); // stands in for the stored message id
+                        stored.computeIfAbsent(sender, s -> Collections.synchronizedList(new ArrayList<>())).add(n);
+                        pipeline.handOff("S1", Stage.DISPATCH, () -> {
+                            dispatched.add(id);
+                            allDispatched.countDown();
+                        });
+                    });
+                }
+            }));
+        }
+        for (Thread sender : senders) sender.join();
+
+        assertThat(allDispatched.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(dispatched).hasSize(2 * perSender).isSorted();
+        assertThat(stored.get("Alice")).hasSize(perSender).isSorted();
+        assertThat(stored.get("Bob")).hasSize(perSender).isSorted();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}